@@ -0,0 +1,113 @@
+package org.example.logmatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded synthetic log and query corpus for the benchmarks.
+ *
+ * Words are drawn from a Zipfian vocabulary, as in real logs a few tokens dominate
+ * while most are rare. Query terms come from the rare tail so lines almost never
+ * match by accident; the target match rate is then reached by planting one query's
+ * terms, as a contiguous phrase, into that fraction of lines. The same seed always
+ * yields the same corpus.
+ */
+final class LogCorpus {
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ne", "ru", "sa", "to", "vi", "de", "po", "gu", "xe", "zo", "fa", "hi", "bu"};
+    // Query terms are drawn from ranks at or above this one
+    private static final int RARE_RANK_START = 200;
+
+    final List<String> lines;
+    final List<List<String>> queries;
+
+    private LogCorpus(List<String> lines, List<List<String>> queries) {
+        this.lines = lines;
+        this.queries = queries;
+    }
+
+    /**
+     * @param vocabularySize distinct words; must exceed the rare-tail start (200)
+     * @param zipfExponent   skew of word frequencies, ~1.0 for natural text
+     * @param queryCount     number of queries
+     * @param termsPerQuery  words per query
+     * @param lineWords      words per line after the timestamp and level
+     * @param matchRate      fraction of lines that contain some query's terms, 0..1
+     * @param lineCount      number of lines
+     */
+    static LogCorpus generate(long seed, int vocabularySize, double zipfExponent, int queryCount, int termsPerQuery,
+                              int lineWords, double matchRate, int lineCount) {
+        if (vocabularySize <= RARE_RANK_START) {
+            throw new IllegalArgumentException("vocabularySize must exceed " + RARE_RANK_START);
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] vocabulary = new String[vocabularySize];
+        for (int i = 0; i < vocabularySize; i++) {
+            vocabulary[i] = word(i);
+        }
+        double[] cdf = zipfCdf(vocabularySize, zipfExponent);
+
+        List<List<String>> queries = new ArrayList<>(queryCount);
+        for (int q = 0; q < queryCount; q++) {
+            List<String> terms = new ArrayList<>(termsPerQuery);
+            while (terms.size() < termsPerQuery) {
+                String term = vocabulary[RARE_RANK_START + random.nextInt(vocabularySize - RARE_RANK_START)];
+                if (!terms.contains(term)) terms.add(term);
+            }
+            queries.add(List.copyOf(terms));
+        }
+
+        List<String> lines = new ArrayList<>(lineCount);
+        StringBuilder line = new StringBuilder();
+        long millis = 1_745_020_800_000L;
+        for (int l = 0; l < lineCount; l++) {
+            line.setLength(0);
+            millis += random.nextInt(50);
+            line.append(millis).append(' ').append(LEVELS[random.nextInt(LEVELS.length)]);
+            int plantAt = queryCount > 0 && random.nextDouble() < matchRate ? random.nextInt(lineWords + 1) : -1;
+            for (int w = 0; w <= lineWords; w++) {
+                if (w == plantAt) {
+                    for (String term : queries.get(random.nextInt(queryCount))) line.append(' ').append(term);
+                }
+                if (w < lineWords) line.append(' ').append(vocabulary[sample(cdf, random.nextDouble())]);
+            }
+            lines.add(line.toString());
+        }
+        return new LogCorpus(List.copyOf(lines), List.copyOf(queries));
+    }
+
+    // Distinct, pronounceable word for every rank: base-16 digits of rank + 16 as syllables
+    static String word(int rank) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = rank + SYLLABLES.length; n > 0; n /= SYLLABLES.length) {
+            sb.append(SYLLABLES[n % SYLLABLES.length]);
+        }
+        return sb.toString();
+    }
+
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+        }
+        return cdf;
+    }
+
+    // Smallest rank whose cumulative probability reaches u
+    private static int sample(double[] cdf, double u) {
+        int lo = 0, hi = cdf.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cdf[mid] < u) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,128 @@
+package org.example.logmatcher;
+
+import org.example.logmatcher.StreamingLogMatcher.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One log line per operation through each matching engine, over the same corpus
+ * and queries. Throughput and SampleTime modes give lines/us and latency
+ * percentiles; run with {@code -prof gc} (the default of the jmh task) for
+ * allocation per line.
+ *
+ * Query semantics differ slightly between engines (phrase, word set, substring);
+ * the corpus plants query terms as contiguous phrases so every engine sees about
+ * the same match rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+    // Power of two so the line cursor can wrap with a mask
+    private static final int LINE_COUNT = 16 * 1024;
+    private static final long SEED = 42;
+
+    @Param({"100", "10000"})
+    public int queryCount;
+
+    @Param({"12", "40"})
+    public int lineWords;
+
+    @Param({"0.01", "0.1"})
+    public double matchRate;
+
+    @Param({"50000"})
+    public int vocabularySize;
+
+    @Param({"1.0"})
+    public double zipfExponent;
+
+    @Param({"2"})
+    public int termsPerQuery;
+
+    private List<String> lines;
+    private List<List<String>> singletonLines;
+    private int cursor;
+
+    private LogMatcher logMatcher;
+    private StreamMatcher streamMatcher;
+    private StreamingLogMatcher streamingLogMatcher;
+    // Index behind LiveTailProcessor; its processStream only works on whole streams
+    private DynamicAhoCorasick liveTail;
+    private long streamingMatches;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LogCorpus corpus = LogCorpus.generate(SEED, vocabularySize, zipfExponent, queryCount, termsPerQuery,
+                lineWords, matchRate, LINE_COUNT);
+        lines = corpus.lines;
+        singletonLines = new ArrayList<>(LINE_COUNT);
+        for (String line : lines) {
+            singletonLines.add(List.of(line));
+        }
+
+        logMatcher = new LogMatcher(LogMatcher.MatchMode.AUTOMATON, (line, ids) -> { });
+        streamMatcher = new StreamMatcher();
+        List<String> subscriptions = new ArrayList<>(queryCount);
+        streamingLogMatcher = new StreamingLogMatcher((q, l) -> streamingMatches++,
+                RetentionPolicy.maxLogs(4 * LINE_COUNT), 1024, Clock.systemUTC());
+        liveTail = new DynamicAhoCorasick(false);
+        for (int q = 0; q < corpus.queries.size(); q++) {
+            List<String> terms = corpus.queries.get(q);
+            String phrase = String.join(" ", terms);
+            logMatcher.addSearchQuery(phrase);
+            subscriptions.add("Q: " + phrase);
+            streamingLogMatcher.acceptQuery(new Query("Q" + q, Set.copyOf(terms)));
+            liveTail.add(q + 1, phrase);
+        }
+        streamMatcher.processStream(subscriptions);
+        // Build the automaton outside the measurement
+        logMatcher.matchingQueries(lines.get(0));
+    }
+
+    private int nextLine() {
+        return cursor++ & (LINE_COUNT - 1);
+    }
+
+    @Benchmark
+    public int[] logMatcherAutomaton() {
+        return logMatcher.matchingQueries(lines.get(nextLine()));
+    }
+
+    @Benchmark
+    public StreamMatcher.MatchBatch streamMatcher() {
+        return streamMatcher.matchBatch(singletonLines.get(nextLine()));
+    }
+
+    @Benchmark
+    public long streamingLogMatcher() {
+        streamingLogMatcher.acceptLog(lines.get(nextLine()));
+        return streamingMatches;
+    }
+
+    @Benchmark
+    public int[] liveTailProcessor() {
+        // LiveTailProcessor lowercases every line before the lookup
+        return liveTail.findAll(lines.get(nextLine()).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,164 @@
+package org.example.logmatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Before/after comparison of posting-list representations used by
+ * {@link StreamingLogMatcher}: boxed {@code HashSet<Integer>} with {@code retainAll}
+ * versus {@link RoaringBitmap} with smallest-first intersection.
+ *
+ * Builds both indexes over the same synthetic log stream (Zipf-distributed
+ * vocabulary), then reports retained heap and query latency.
+ *
+ * A standalone program rather than a JMH benchmark, since it also measures heap;
+ * it lives with the benchmarks so it stays out of the production jar.
+ *
+ * Usage: PostingListComparison [logs] [vocabulary] [wordsPerLog] [queries],
+ * on the classpath of the jmh source set
+ */
+public class PostingListComparison {
+
+    public static void main(String[] args) {
+        int logCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int vocabulary = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int wordsPerLog = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int queryCount = args.length > 3 ? Integer.parseInt(args[3]) : 2_000;
+
+        int[][] logs = generateLogs(new Random(42), logCount, vocabulary, wordsPerLog);
+        List<int[]> queries = generateQueries(new Random(7), queryCount, vocabulary);
+        System.out.printf("logs=%d vocabulary=%d wordsPerLog=%d queries=%d%n",
+                logCount, vocabulary, wordsPerLog, queryCount);
+
+        // Before: HashSet<Integer> postings
+        long base = usedHeap();
+        Map<String, Set<Integer>> hashIndex = new HashMap<>();
+        for (int logId = 0; logId < logs.length; logId++) {
+            for (int w : logs[logId]) {
+                hashIndex.computeIfAbsent(word(w), k -> new HashSet<>()).add(logId);
+            }
+        }
+        long hashBytes = usedHeap() - base;
+        long[] hashLatencies = new long[queries.size()];
+        long hashHits = 0;
+        for (int round = 0; round < 2; round++) { // first round warms up
+            hashHits = 0;
+            for (int q = 0; q < queries.size(); q++) {
+                long t0 = System.nanoTime();
+                hashHits += intersectHashSets(hashIndex, queries.get(q));
+                hashLatencies[q] = System.nanoTime() - t0;
+            }
+        }
+        hashIndex = null;
+
+        // After: RoaringBitmap postings
+        base = usedHeap();
+        Map<String, RoaringBitmap> bitmapIndex = new HashMap<>();
+        for (int logId = 0; logId < logs.length; logId++) {
+            for (int w : logs[logId]) {
+                bitmapIndex.computeIfAbsent(word(w), k -> new RoaringBitmap()).add(logId);
+            }
+        }
+        long bitmapBytes = usedHeap() - base;
+        long estimatedBytes = 0;
+        for (RoaringBitmap b : bitmapIndex.values()) estimatedBytes += b.sizeInBytes();
+        long[] bitmapLatencies = new long[queries.size()];
+        long bitmapHits = 0;
+        for (int round = 0; round < 2; round++) {
+            bitmapHits = 0;
+            for (int q = 0; q < queries.size(); q++) {
+                long t0 = System.nanoTime();
+                bitmapHits += intersectBitmaps(bitmapIndex, queries.get(q));
+                bitmapLatencies[q] = System.nanoTime() - t0;
+            }
+        }
+
+        if (hashHits != bitmapHits) {
+            throw new IllegalStateException("Result mismatch: " + hashHits + " vs " + bitmapHits);
+        }
+        System.out.printf("%-22s %12s %12s %12s %12s%n", "postings", "heap MB", "p50 us", "p99 us", "mean us");
+        report("HashSet<Integer>", hashBytes, hashLatencies);
+        report("RoaringBitmap", bitmapBytes, bitmapLatencies);
+        System.out.printf("RoaringBitmap self-reported size: %.1f MB, total hits: %d%n",
+                estimatedBytes / 1e6, bitmapHits);
+    }
+
+    private static long intersectHashSets(Map<String, Set<Integer>> index, int[] query) {
+        Set<Integer> hits = new HashSet<>(index.getOrDefault(word(query[0]), Collections.emptySet()));
+        for (int i = 1; i < query.length && !hits.isEmpty(); i++) {
+            hits.retainAll(index.getOrDefault(word(query[i]), Collections.emptySet()));
+        }
+        return hits.size();
+    }
+
+    private static long intersectBitmaps(Map<String, RoaringBitmap> index, int[] query) {
+        List<RoaringBitmap> postings = new ArrayList<>(query.length);
+        for (int w : query) {
+            RoaringBitmap p = index.get(word(w));
+            if (p == null) return 0;
+            postings.add(p);
+        }
+        return RoaringBitmap.and(postings).cardinality();
+    }
+
+    // Word ranks drawn from a Zipf(1.0) distribution via inverse CDF over precomputed weights
+    private static int[][] generateLogs(Random random, int logCount, int vocabulary, int wordsPerLog) {
+        double[] cdf = new double[vocabulary];
+        double sum = 0;
+        for (int r = 0; r < vocabulary; r++) {
+            sum += 1.0 / (r + 1);
+            cdf[r] = sum;
+        }
+        int[][] logs = new int[logCount][];
+        for (int i = 0; i < logCount; i++) {
+            int[] words = new int[wordsPerLog];
+            for (int k = 0; k < wordsPerLog; k++) {
+                int idx = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+                words[k] = idx >= 0 ? idx : -idx - 1;
+            }
+            logs[i] = words;
+        }
+        return logs;
+    }
+
+    // Two- and three-keyword queries mixing frequent and rare words
+    private static List<int[]> generateQueries(Random random, int queryCount, int vocabulary) {
+        List<int[]> queries = new ArrayList<>(queryCount);
+        for (int i = 0; i < queryCount; i++) {
+            int[] q = new int[2 + random.nextInt(2)];
+            q[0] = random.nextInt(20);
+            for (int k = 1; k < q.length; k++) {
+                q[k] = random.nextInt(Math.min(vocabulary, 2_000));
+            }
+            queries.add(q);
+        }
+        return queries;
+    }
+
+    private static String word(int rank) {
+        return "w" + rank;
+    }
+
+    private static void report(String name, long bytes, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0);
+        System.out.printf("%-22s %12.1f %12.1f %12.1f %12.1f%n", name, bytes / 1e6,
+                sorted[sorted.length / 2] / 1e3, sorted[(int) (sorted.length * 0.99)] / 1e3, mean / 1e3);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -1,65 +1,724 @@
 package org.example;
 
+import org.example.logmatcher.IntArrayList;
+import org.example.logmatcher.IntObjectMap;
+import org.example.logmatcher.SnapshotFile;
+import org.example.logmatcher.SortedIntLists;
+import org.example.logmatcher.TermDictionary;
+import org.example.logmatcher.TokenBuffer;
+import org.example.logmatcher.Tokenizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
-// addTag:     O(n * k) k = size Of Tag
-//searchTags: O(m * d + l * k)     → worst: O(m * n + n * k)
+// addTag:     O(k) k = size Of Tag line, amortized O(t * log n) more for segment merges
+// searchTags: O(g * m * s * log(d / s) + l * t + h * t * m) g = segments (O(log n)), s = rarest keyword's
+//             lines, d = other keywords' lines, l = matching lines, t = tags per line, h = head lines;
+//             a cached keyword set costs a hash lookup while its result is unchanged
+// topRelatedTags: the same scan plus O(r * log K) r = related tags, K = tags returned; lift and PMI
+//             add O(r * g + h * t) for the tags' overall line counts
+//
+// Thread-safe. Writers take a lock and append to a mutable head; every change publishes a new
+// immutable View through a volatile field. Readers never lock: they search the View's sealed
+// segments plus the head lines it counts, which writers never touch again.
+//
+// Results of recent keyword sets are cached with their related-tag counts (least recently used
+// evicted). addTag counts each new line into the cached sets it matches instead of dropping them.
 public class HighPerformanceFilter {
+    private static final Tokenizer TAGS = Tokenizer.delimited(',');
+    // Head capacity; a full head is sealed into a segment
+    private static final int HEAD_LINES = 1024;
+    private static final int HEAD_TAGS = 8 * 1024;
+    public static final int DEFAULT_CACHE_CAPACITY = 64;
+    // Per-thread search state, so readers share nothing mutable
+    private static final ThreadLocal<SearchScratch> SCRATCH = ThreadLocal.withInitial(SearchScratch::new);
+
+    // How topRelatedTags orders tags
+    public enum Ranking {
+        // Lines the tag shares with the keywords
+        COUNT,
+        // P(tag | keywords) / P(tag): how much likelier the tag is alongside the keywords than overall
+        LIFT,
+        // log2 of lift; the same order, on an additive scale
+        PMI
+    }
 
-    private final Map<String, Set<Integer>> tagIndex = new HashMap<>();
-    private final List<String> stream = new ArrayList<>();
+    // A related tag, the lines it shares with the keywords and its score under the ranking used
+    public record RelatedTag(String tag, int count, double score) {
+    }
+
+    /**
+     * What readers see: sealed segments, oldest first, and the first headDocs lines of head.
+     * Tag ids below tagCount have their names in names.
+     */
+    private record View(Segment[] segments, Head head, int headDocs, String[] names, int tagCount, int docCount) {
+    }
+
+    private volatile View view;
+
+    // Writer state, guarded by writeLock
+    private final Object writeLock = new Object();
+    private final TermDictionary tagIds = new TermDictionary();
+    private final Map<String, Integer> idsByTag = new ConcurrentHashMap<>();
+    private String[] names = new String[16];
+    private int tagCount = 0;
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment[] sealedSegments = new Segment[0];
+    private Head head = new Head(HEAD_TAGS);
+    private int docCount = 0;
+    private final TokenBuffer tokens = new TokenBuffer();
+    private final IntArrayList lineTags = new IntArrayList();
+    private final Marks lineMarks = new Marks();
+
+    // Cached searches by normalized keyword set; the index by first keyword id is writer only
+    private final int cacheCapacity;
+    private final Map<Set<String>, CachedSearch> cache = new ConcurrentHashMap<>();
+    private final IntObjectMap<List<CachedSearch>> cacheByKeyword = new IntObjectMap<>();
+
+    public HighPerformanceFilter() {
+        this(DEFAULT_CACHE_CAPACITY);
+    }
 
-    // Adds a new tag line to the stream and indexes each tag
+    // cacheCapacity: keyword sets whose results are kept up to date; 0 disables the cache
+    public HighPerformanceFilter(int cacheCapacity) {
+        if (cacheCapacity < 0) throw new IllegalArgumentException("cacheCapacity must be >= 0: " + cacheCapacity);
+        this.cacheCapacity = cacheCapacity;
+        view = new View(sealedSegments, head, 0, names, 0, 0);
+    }
+
+    // Adds a new tag line: interns its distinct tags into the head columns and publishes it
     public void addTag(String tagLine) {
-        int index = stream.size();
-        for (String tag : tokenize(tagLine)) {
-            tagIndex.computeIfAbsent(tag, k -> new HashSet<>()).add(index);
+        synchronized (writeLock) {
+            tokens.clear();
+            TAGS.tokenize(tagLine, tokens);
+            lineMarks.next();
+            lineTags.clear();
+            char[] chars = tokens.chars();
+            for (int i = 0; i < tokens.size(); i++) {
+                int tagId = intern(chars, tokens.charOffset(i), tokens.length(i));
+                if (lineMarks.mark(tagId)) lineTags.add(tagId);
+            }
+            appendLine();
         }
-        stream.add(tagLine);
     }
 
-    // Searches for documents that contain all keywords and returns other tags from those
+    // Searches for documents that contain all keywords and returns other tags from those.
+    // The returned set is unmodifiable
     public Set<String> searchTags(List<String> rawKeywords) {
+        View v = view;
+        Set<String> keywords = normalizeAll(rawKeywords);
+        if (keywords.isEmpty()) return Set.of();
+        CachedSearch cached = cache.get(keywords);
+        if (cached != null) return cached.tags();
+        int[] keywordIds = resolve(v, keywords);
+        if (keywordIds == null) return Set.of();
+
+        if (cacheCapacity > 0) {
+            CachedSearch search = new CachedSearch(Set.copyOf(keywords), keywordIds);
+            scan(v, keywordIds, (docStarts, docTags, doc) -> search.add(docStarts, docTags, doc, v.names()));
+            return cache(search, v.docCount()).tags();
+        }
+
+        // Keywords are marked up front, so gathering skips them along with repeats
+        SearchScratch s = SCRATCH.get();
+        s.marks.next();
+        for (int tagId : keywordIds) s.marks.mark(tagId);
+        s.related.clear();
+        scan(v, keywordIds, s::gather);
+        Set<String> relatedTags = new HashSet<>();
+        for (int i = 0; i < s.related.size(); i++) {
+            relatedTags.add(v.names()[s.related.get(i)]);
+        }
+        return Collections.unmodifiableSet(relatedTags);
+    }
+
+    // The k tags co-occurring most with all keywords, best first; ties go to the alphabetically first tag.
+    // A count is kept for each of the r co-occurring tags, so memory is O(r) and ranking them through
+    // a k-entry heap is O(r log k); only the heap and the result are O(k)
+    public List<RelatedTag> topRelatedTags(List<String> rawKeywords, int k, Ranking ranking) {
+        if (k < 0) throw new IllegalArgumentException("k must be >= 0: " + k);
+        View v = view;
+        Set<String> keywords = normalizeAll(rawKeywords);
+        int[] keywordIds = keywords.isEmpty() ? null : resolve(v, keywords);
+        if (keywordIds == null || k == 0) return List.of();
+
+        SearchScratch s = SCRATCH.get();
+        s.marks.next();
+        for (int tagId : keywordIds) s.marks.mark(tagId);
+        s.counts.clear();
+        s.matchedLines = 0;
+        scan(v, keywordIds, (docStarts, docTags, doc) -> {
+            s.matchedLines++;
+            for (int i = docStarts[doc], end = docStarts[doc + 1]; i < end; i++) {
+                if (!s.marks.isMarked(docTags[i])) s.counts.increment(docTags[i]);
+            }
+        });
+        if (ranking != Ranking.COUNT) {
+            // Head lines per tag, so each tag's overall line count needs only segment postings on top
+            s.headCounts.clear();
+            Head h = v.head();
+            for (int i = 0; i < h.docStarts[v.headDocs()]; i++) s.headCounts.increment(h.docTags[i]);
+        }
+
+        // Min-heap of the best k so far: the root is the weakest and is replaced by anything better
+        int size = 0;
+        int[] heapTags = new int[Math.min(k, s.counts.size())];
+        double[] heapScores = new double[heapTags.length];
+        for (int i = 0; i < s.counts.size(); i++) {
+            int tagId = s.counts.tagId(i);
+            double score = score(v, ranking, s, tagId, s.counts.count(i));
+            if (size < heapTags.length) {
+                siftUp(heapTags, heapScores, size++, tagId, score, v.names());
+            } else if (ranksBefore(tagId, score, heapTags[0], heapScores[0], v.names())) {
+                siftDown(heapTags, heapScores, size, tagId, score, v.names());
+            }
+        }
+
+        RelatedTag[] top = new RelatedTag[size];
+        while (size > 0) {
+            // Popping the weakest first fills the result from the back
+            int tagId = heapTags[0];
+            top[--size] = new RelatedTag(v.names()[tagId], s.counts.get(tagId), heapScores[0]);
+            siftDown(heapTags, heapScores, size, heapTags[size], heapScores[size], v.names());
+        }
+        return List.of(top);
+    }
+
+    private static double score(View v, Ranking ranking, SearchScratch s, int tagId, int count) {
+        if (ranking == Ranking.COUNT) return count;
+        long lines = s.headCounts.get(tagId);
+        for (Segment segment : v.segments()) {
+            int[] postings = segment.postings.get(tagId);
+            if (postings != null) lines += postings.length;
+        }
+        double lift = (double) count * v.docCount() / ((double) s.matchedLines * lines);
+        return ranking == Ranking.LIFT ? lift : Math.log(lift) / Math.log(2);
+    }
+
+    // Higher score first, then the alphabetically first name
+    private static boolean ranksBefore(int tagId, double score, int otherTagId, double otherScore, String[] names) {
+        if (score != otherScore) return score > otherScore;
+        return names[tagId].compareTo(names[otherTagId]) < 0;
+    }
+
+    // Places the tag at slot i of the heap, moving weaker parents down
+    private static void siftUp(int[] tags, double[] scores, int i, int tagId, double score, String[] names) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!ranksBefore(tags[parent], scores[parent], tagId, score, names)) break;
+            tags[i] = tags[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        tags[i] = tagId;
+        scores[i] = score;
+    }
+
+    // Replaces the root of a heap of the given size with the tag, moving weaker children up
+    private static void siftDown(int[] tags, double[] scores, int size, int tagId, double score, String[] names) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && ranksBefore(tags[child], scores[child], tags[child + 1], scores[child + 1], names)) {
+                child++;
+            }
+            if (!ranksBefore(tagId, score, tags[child], scores[child], names)) break;
+            tags[i] = tags[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        if (size > 0) {
+            tags[i] = tagId;
+            scores[i] = score;
+        }
+    }
+
+    // Visits the lines of the view that contain all keywords
+    private static void scan(View v, int[] keywordIds, LineVisitor visitor) {
+        SearchScratch s = SCRATCH.get();
+        int count = keywordIds.length;
+        int[][] lists = new int[count][];
+        int[] sizes = new int[count];
+
+        // Sealed segments: rarest-first intersection of their postings
+        segments:
+        for (Segment segment : v.segments()) {
+            for (int i = 0; i < count; i++) {
+                lists[i] = segment.postings.get(keywordIds[i]);
+                if (lists[i] == null) continue segments;
+                sizes[i] = lists[i].length;
+            }
+            SortedIntLists.intersect(lists, sizes, count, s.matches);
+            for (int m = 0; m < s.matches.size(); m++) {
+                visitor.visit(segment.docStarts, segment.docTags, s.matches.get(m));
+            }
+        }
+
+        // Head: at most HEAD_LINES short lines, checked directly
+        Head h = v.head();
+        for (int d = 0; d < v.headDocs(); d++) {
+            if (containsAll(h.docStarts, h.docTags, d, keywordIds)) {
+                visitor.visit(h.docStarts, h.docTags, d);
+            }
+        }
+    }
+
+    // Caches a search counted on a view of countedDocs lines: the lines added since are counted
+    // under writeLock, after which addTag keeps the entry current
+    private CachedSearch cache(CachedSearch search, int countedDocs) {
+        synchronized (writeLock) {
+            CachedSearch cached = cache.get(search.key);
+            if (cached != null) return cached;
+            forEachLine(countedDocs, (docStarts, docTags, doc) -> search.count(docStarts, docTags, doc, names));
+            search.publish();
+            if (cache.size() >= cacheCapacity) evictLeastRecentlyUsed();
+            cache.put(search.key, search);
+            List<CachedSearch> entries = cacheByKeyword.get(search.keywordIds[0]);
+            if (entries == null) {
+                entries = new ArrayList<>(2);
+                cacheByKeyword.put(search.keywordIds[0], entries);
+            }
+            entries.add(search);
+            return search;
+        }
+    }
+
+    // Caller holds writeLock
+    private void evictLeastRecentlyUsed() {
+        CachedSearch oldest = null;
+        for (CachedSearch entry : cache.values()) {
+            if (oldest == null || entry.lastUsed < oldest.lastUsed) oldest = entry;
+        }
+        cache.remove(oldest.key);
+        cacheByKeyword.get(oldest.keywordIds[0]).remove(oldest);
+    }
+
+    // Caller holds writeLock. Counts a new line into the cached searches it matches. Each entry is
+    // indexed under its first keyword, so only entries sharing a tag with the line are checked
+    private void updateCache(int[] docStarts, int[] docTags, int doc) {
+        for (int i = docStarts[doc]; i < docStarts[doc + 1]; i++) {
+            List<CachedSearch> entries = cacheByKeyword.get(docTags[i]);
+            if (entries == null) continue;
+            for (CachedSearch entry : entries) {
+                entry.count(docStarts, docTags, doc, names);
+                entry.publish();
+            }
+        }
+    }
+
+    // Caller holds writeLock. Visits the lines from fromDoc on, oldest first
+    private void forEachLine(int fromDoc, LineVisitor visitor) {
+        int s = segments.size();
+        int base = docCount - head.docs;
+        while (s > 0 && base > fromDoc) base -= segments.get(--s).docCount;
+        for (; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            for (int d = Math.max(0, fromDoc - base); d < segment.docCount; d++) {
+                visitor.visit(segment.docStarts, segment.docTags, d);
+            }
+            base += segment.docCount;
+        }
+        for (int d = Math.max(0, fromDoc - base); d < head.docs; d++) {
+            visitor.visit(head.docStarts, head.docTags, d);
+        }
+    }
+
+    // Number of tag lines added
+    public int size() {
+        return view.docCount();
+    }
+
+    // Writes the tag dictionary and the tag-id columns to a snapshot file in the background.
+    // Everything a View holds is immutable, so nothing is copied up front and addTag carries on meanwhile.
+    public CompletableFuture<Path> snapshot(Path file) {
+        View v = view;
+        return SnapshotFile.writeInBackground(file, SnapshotFile.TAG_FILTER, out -> {
+            out.block(data -> {
+                data.writeInt(v.tagCount());
+                for (int id = 0; id < v.tagCount(); id++) SnapshotFile.writeString(data, v.names()[id]);
+            });
+            IntArrayList starts = new IntArrayList(v.docCount() + 1);
+            IntArrayList columns = new IntArrayList();
+            starts.add(0);
+            for (Segment segment : v.segments()) {
+                appendColumns(segment.docStarts, segment.docTags, segment.docCount, starts, columns);
+            }
+            appendColumns(v.head().docStarts, v.head().docTags, v.headDocs(), starts, columns);
+            out.block(data -> {
+                SnapshotFile.writeInts(data, starts.toArray());
+                SnapshotFile.writeInts(data, columns.toArray());
+            });
+        });
+    }
+
+    // Loads a snapshot written by snapshot(); the postings are rebuilt from the columns without any string work
+    public static HighPerformanceFilter restore(Path file) throws IOException {
+        HighPerformanceFilter filter = new HighPerformanceFilter();
+        synchronized (filter.writeLock) {
+            try (SnapshotFile.Input in = SnapshotFile.open(file, SnapshotFile.TAG_FILTER)) {
+                ByteBuffer tags = in.nextBlock();
+                for (int id = 0, n = tags.getInt(); id < n; id++) {
+                    String tag = SnapshotFile.readString(tags);
+                    if (filter.intern(tag.toCharArray(), 0, tag.length()) != id) {
+                        throw new IOException("Duplicate tag in snapshot: " + file);
+                    }
+                }
+                ByteBuffer columns = in.nextBlock();
+                int[] starts = SnapshotFile.readInts(columns);
+                int[] docTags = SnapshotFile.readInts(columns);
+                for (int d = 0; d + 1 < starts.length; d++) {
+                    filter.lineTags.clear();
+                    for (int i = starts[d]; i < starts[d + 1]; i++) filter.lineTags.add(docTags[i]);
+                    filter.appendLine();
+                }
+            }
+        }
+        return filter;
+    }
+
+    private static void appendColumns(int[] docStarts, int[] docTags, int docs, IntArrayList starts,
+                                      IntArrayList columns) {
+        for (int d = 0; d < docs; d++) {
+            for (int i = docStarts[d]; i < docStarts[d + 1]; i++) columns.add(docTags[i]);
+            starts.add(columns.size());
+        }
+    }
+
+    // Caller holds writeLock. Interns a tag, publishing its name to readers if new
+    private int intern(char[] chars, int offset, int length) {
+        int tagId = tagIds.intern(chars, offset, length);
+        if (tagId == tagCount) {
+            if (tagId == names.length) names = Arrays.copyOf(names, tagId * 2);
+            names[tagId] = tagIds.term(tagId);
+            idsByTag.put(names[tagId], tagId);
+            tagCount++;
+        }
+        return tagId;
+    }
+
+    // Caller holds writeLock. Appends lineTags as the next line and publishes the new view
+    private void appendLine() {
+        if (head.tags + lineTags.size() > head.docTags.length) {
+            if (head.docs > 0) seal();
+            head = new Head(Math.max(HEAD_TAGS, lineTags.size()));
+        }
+        head.append(lineTags);
+        docCount++;
+        if (!cache.isEmpty()) updateCache(head.docStarts, head.docTags, head.docs - 1);
+        if (head.docs == HEAD_LINES) {
+            seal();
+            head = new Head(HEAD_TAGS);
+        }
+        // Lines sealed above move from the head to the segments in this one step
+        view = new View(sealedSegments, head, head.docs, names, tagCount, docCount);
+    }
+
+    // Caller holds writeLock. Turns the head into a segment, merging it with older segments no larger
+    // than it, so there are O(log n) segments and each line is re-indexed O(log n) times.
+    // Readers keep seeing the old head until the next view is published
+    private void seal() {
+        Segment sealed = new Segment(Arrays.copyOf(head.docStarts, head.docs + 1),
+                Arrays.copyOf(head.docTags, head.tags), head.docs);
+        while (!segments.isEmpty() && segments.get(segments.size() - 1).docCount <= sealed.docCount) {
+            sealed = Segment.merge(segments.remove(segments.size() - 1), sealed);
+        }
+        segments.add(sealed);
+        sealedSegments = segments.toArray(new Segment[0]);
+    }
+
+    // Utility: Lowercase and trim, per char and independent of the locale, exactly as TAGS folds tags
+    private String normalize(String s) {
+        String trimmed = s.trim();
+        char[] chars = new char[trimmed.length()];
+        for (int i = 0; i < chars.length; i++) chars[i] = Character.toLowerCase(trimmed.charAt(i));
+        return new String(chars);
+    }
+
+    private Set<String> normalizeAll(List<String> rawKeywords) {
         Set<String> keywords = new HashSet<>();
         for (String k : rawKeywords) {
             keywords.add(normalize(k));
         }
+        return keywords;
+    }
 
-        Map<Integer, Integer> matchCount = new HashMap<>();
+    // Tag ids of the keywords, or null if one is unknown to the view and so matches nothing
+    private int[] resolve(View v, Set<String> keywords) {
+        int[] keywordIds = new int[keywords.size()];
+        int k = 0;
         for (String keyword : keywords) {
-            for (int docId : tagIndex.getOrDefault(keyword, Set.of())) {
-                matchCount.put(docId, matchCount.getOrDefault(docId, 0) + 1);
-            }
+            Integer tagId = idsByTag.get(keyword);
+            if (tagId == null || tagId >= v.tagCount()) return null;
+            keywordIds[k++] = tagId;
         }
+        return keywordIds;
+    }
 
-        System.out.println(matchCount);
+    private static boolean containsAll(int[] docStarts, int[] docTags, int doc, int[] tagIds) {
+        int start = docStarts[doc], end = docStarts[doc + 1];
+        for (int tagId : tagIds) {
+            int i = start;
+            while (i < end && docTags[i] != tagId) i++;
+            if (i == end) return false;
+        }
+        return true;
+    }
 
-        Set<String> relatedTags = new HashSet<>();
-        for (Map.Entry<Integer, Integer> entry : matchCount.entrySet()) {
-            if (entry.getValue() == keywords.size()) {
-                for (String tag : tokenize(stream.get(entry.getKey()))) {
-                    if (!keywords.contains(tag)) {
-                        relatedTags.add(tag);
+    @FunctionalInterface
+    private interface LineVisitor {
+        // Line doc holds the tag ids docTags[docStarts[doc] .. docStarts[doc + 1])
+        void visit(int[] docStarts, int[] docTags, int doc);
+    }
+
+    /**
+     * Newest lines, as append-only columns of fixed capacity. Slots below the counts
+     * of a published View are never written again, so readers need no lock.
+     */
+    private static final class Head {
+        // Line d holds the distinct tag ids docTags[docStarts[d] .. docStarts[d + 1])
+        final int[] docStarts = new int[HEAD_LINES + 1];
+        final int[] docTags;
+        // Writer only
+        int docs;
+        int tags;
+
+        Head(int tagCapacity) {
+            docTags = new int[tagCapacity];
+        }
+
+        void append(IntArrayList lineTags) {
+            for (int i = 0; i < lineTags.size(); i++) docTags[tags++] = lineTags.get(i);
+            docStarts[++docs] = tags;
+        }
+    }
+
+    /**
+     * Immutable block of lines: their tag-id columns and, per tag id, the ascending
+     * segment-local line ids containing it.
+     */
+    private static final class Segment {
+        final int docCount;
+        final int[] docStarts;
+        final int[] docTags;
+        final IntObjectMap<int[]> postings;
+
+        Segment(int[] docStarts, int[] docTags, int docCount) {
+            this.docCount = docCount;
+            this.docStarts = docStarts;
+            this.docTags = docTags;
+            IntObjectMap<IntArrayList> lists = new IntObjectMap<>();
+            for (int d = 0; d < docCount; d++) {
+                for (int i = docStarts[d]; i < docStarts[d + 1]; i++) {
+                    IntArrayList list = lists.get(docTags[i]);
+                    if (list == null) {
+                        list = new IntArrayList(4);
+                        lists.put(docTags[i], list);
                     }
+                    list.add(d);
                 }
             }
+            postings = new IntObjectMap<>(lists.size());
+            lists.forEach((tagId, list) -> postings.put(tagId, list.toArray()));
         }
 
-        return relatedTags;
+        static Segment merge(Segment older, Segment newer) {
+            int[] starts = Arrays.copyOf(older.docStarts, older.docCount + newer.docCount + 1);
+            int base = older.docStarts[older.docCount];
+            for (int d = 1; d <= newer.docCount; d++) {
+                starts[older.docCount + d] = base + newer.docStarts[d];
+            }
+            int[] tags = Arrays.copyOf(older.docTags, base + newer.docStarts[newer.docCount]);
+            System.arraycopy(newer.docTags, 0, tags, base, newer.docStarts[newer.docCount]);
+            return new Segment(starts, tags, older.docCount + newer.docCount);
+        }
     }
 
-    // Utility: Normalize and split tag lines
-    private Set<String> tokenize(String line) {
-        Set<String> tags = new HashSet<>();
-        for (String part : line.split(",\\s*")) {
-            tags.add(normalize(part));
+    /**
+     * Marks tag ids per operation: a tag is marked iff its entry equals the current epoch.
+     */
+    private static final class Marks {
+        private int[] epochs = new int[16];
+        private int epoch = 0;
+
+        void next() {
+            if (++epoch == 0) {
+                Arrays.fill(epochs, 0);
+                epoch = 1;
+            }
+        }
+
+        // Marks the tag for the current epoch; false if it already was
+        boolean mark(int tagId) {
+            if (tagId >= epochs.length) {
+                epochs = Arrays.copyOf(epochs, Math.max(tagId + 1, epochs.length * 2));
+            }
+            if (epochs[tagId] == epoch) return false;
+            epochs[tagId] = epoch;
+            return true;
+        }
+
+        boolean isMarked(int tagId) {
+            return tagId < epochs.length && epochs[tagId] == epoch;
         }
-        return tags;
     }
 
-    // Utility: Lowercase and trim
-    private String normalize(String s) {
-        return s.trim().toLowerCase();
+    /**
+     * A cached search: related-tag counts of one keyword set, kept current by the writer.
+     * Readers see the related tags through {@link #related}, republished whenever a tag is
+     * first seen, and share the set last built from it.
+     */
+    private static final class CachedSearch {
+        final Set<String> key;
+        final int[] keywordIds;
+        // Lines containing each related tag. Filled by the reader that missed, then updated under writeLock
+        final TagCounts counts = new TagCounts();
+        private String[] relatedNames = new String[16];
+        volatile Related related = new Related(relatedNames, 0);
+        private volatile Result result = new Result(Set.of(), 0);
+        volatile long lastUsed = System.nanoTime();
+
+        CachedSearch(Set<String> key, int[] keywordIds) {
+            this.key = key;
+            this.keywordIds = keywordIds;
+        }
+
+        // Counts the line if it contains every keyword
+        void count(int[] docStarts, int[] docTags, int doc, String[] names) {
+            if (containsAll(docStarts, docTags, doc, keywordIds)) add(docStarts, docTags, doc, names);
+        }
+
+        // Counts the tags of a line known to contain every keyword
+        void add(int[] docStarts, int[] docTags, int doc, String[] names) {
+            tags:
+            for (int i = docStarts[doc], end = docStarts[doc + 1]; i < end; i++) {
+                int tagId = docTags[i];
+                for (int keywordId : keywordIds) {
+                    if (tagId == keywordId) continue tags;
+                }
+                if (counts.increment(tagId)) {
+                    int n = counts.size() - 1;
+                    if (n == relatedNames.length) relatedNames = Arrays.copyOf(relatedNames, n * 2);
+                    relatedNames[n] = names[tagId];
+                }
+            }
+        }
+
+        // Makes tags first seen since the last call visible to readers
+        void publish() {
+            if (related.count() != counts.size()) related = new Related(relatedNames, counts.size());
+        }
+
+        // The related tags, extending the last set built if tags were added since
+        Set<String> tags() {
+            lastUsed = System.nanoTime();
+            Related r = related;
+            Result last = result;
+            if (last.count() >= r.count()) return last.tags();
+            Set<String> tags = new HashSet<>(last.tags());
+            for (int i = last.count(); i < r.count(); i++) tags.add(r.names()[i]);
+            // Racing readers may each build a set; any of them is current enough to keep
+            last = new Result(Collections.unmodifiableSet(tags), r.count());
+            result = last;
+            return last.tags();
+        }
+    }
+
+    // Related tag names in first-seen order; slots below count are never written again
+    private record Related(String[] names, int count) {
+    }
+
+    private record Result(Set<String> tags, int count) {
+    }
+
+    /**
+     * Counts per tag id, in first-seen order, with an open-addressing index by tag id.
+     */
+    private static final class TagCounts {
+        private final IntArrayList tagIds = new IntArrayList();
+        private final IntArrayList counts = new IntArrayList();
+        // Position in tagIds + 1; 0 is empty
+        private int[] slots = new int[16];
+
+        int size() {
+            return tagIds.size();
+        }
+
+        int tagId(int i) {
+            return tagIds.get(i);
+        }
+
+        int count(int i) {
+            return counts.get(i);
+        }
+
+        // Count of the tag; 0 if it was not counted
+        int get(int tagId) {
+            int mask = slots.length - 1;
+            for (int i = hash(tagId) & mask; slots[i] != 0; i = (i + 1) & mask) {
+                if (tagIds.get(slots[i] - 1) == tagId) return counts.get(slots[i] - 1);
+            }
+            return 0;
+        }
+
+        void clear() {
+            Arrays.fill(slots, 0);
+            tagIds.clear();
+            counts.clear();
+        }
+
+        // Adds one to the tag's count; true if it was not counted before
+        boolean increment(int tagId) {
+            int mask = slots.length - 1;
+            int i = hash(tagId) & mask;
+            for (; slots[i] != 0; i = (i + 1) & mask) {
+                int pos = slots[i] - 1;
+                if (tagIds.get(pos) == tagId) {
+                    counts.set(pos, counts.get(pos) + 1);
+                    return false;
+                }
+            }
+            tagIds.add(tagId);
+            counts.add(1);
+            if (tagIds.size() * 2 > slots.length) {
+                // Rebuild at twice the size, keeping the load factor at most 1/2
+                slots = new int[slots.length * 2];
+                mask = slots.length - 1;
+                for (int pos = 0; pos < tagIds.size(); pos++) {
+                    int j = hash(tagIds.get(pos)) & mask;
+                    while (slots[j] != 0) j = (j + 1) & mask;
+                    slots[j] = pos + 1;
+                }
+            } else {
+                slots[i] = tagIds.size();
+            }
+            return true;
+        }
+
+        private static int hash(int tagId) {
+            int h = tagId * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private static final class SearchScratch {
+        final Marks marks = new Marks();
+        final IntArrayList matches = new IntArrayList();
+        final IntArrayList related = new IntArrayList();
+        // topRelatedTags: lines matched, their other tags and the head's lines per tag
+        int matchedLines;
+        final TagCounts counts = new TagCounts();
+        final TagCounts headCounts = new TagCounts();
+
+        // Collects the line's tags not marked yet
+        void gather(int[] docStarts, int[] docTags, int doc) {
+            for (int i = docStarts[doc], end = docStarts[doc + 1]; i < end; i++) {
+                if (marks.mark(docTags[i])) related.add(docTags[i]);
+            }
+        }
     }
 
     public static void main(String[] args) {
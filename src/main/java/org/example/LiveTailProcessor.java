@@ -1,5 +1,8 @@
 package org.example;
 
+import org.example.logmatcher.DynamicAhoCorasick;
+import org.example.logmatcher.QueryIdAllocator;
+
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -7,27 +10,30 @@ public class LiveTailProcessor {
 
     public static List<String> processStream(List<String> stream) {
         List<String> result = new ArrayList<>();
-        Map<Integer, String> queries = new LinkedHashMap<>();
-        int id = 1;
+        // All queries compiled into substring automata; each line is scanned once
+        DynamicAhoCorasick queries = new DynamicAhoCorasick(false);
+        QueryIdAllocator queryIds = new QueryIdAllocator(1);
 
         for (String line : stream) {
             String lowerCase = line.substring(3).trim().toLowerCase();
             if (line.startsWith("Q: ")) {
-                queries.put(id, lowerCase);
+                int id = queryIds.allocate();
+                queries.add(id, lowerCase);
                 result.add("ACK: " + lowerCase + "; ID=" + id);
-                id++;
-            } else if (line.startsWith("L: ")) {
-                List<Integer> matched = new ArrayList<>();
-
-                for (Map.Entry<Integer, String> entry : queries.entrySet()) {
-                    if (lowerCase.contains(entry.getValue())) {
-                        matched.add(entry.getKey());
-                    }
+            } else if (line.startsWith("U: ")) {
+                // Unsubscribe; the ID is reused by a later query
+                Integer id = parseId(lowerCase);
+                if (id != null && queries.remove(id)) {
+                    queryIds.release(id);
+                    result.add("UNSUB: ID=" + id);
                 }
+            } else if (line.startsWith("L: ")) {
+                // Ascending IDs of all queries contained in the line
+                int[] matched = queries.findAll(lowerCase);
 
-                if (!matched.isEmpty()) {
-                    String ids = matched.stream()
-                            .map(String::valueOf)
+                if (matched.length > 0) {
+                    String ids = Arrays.stream(matched)
+                            .mapToObj(String::valueOf)
                             .collect(Collectors.joining(","));
                     result.add("M: " + lowerCase + "; Q=" + ids);
                 }
@@ -37,6 +43,14 @@ public class LiveTailProcessor {
         return result;
     }
 
+    private static Integer parseId(String s) {
+        try {
+            return Integer.valueOf(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     public static void main(String[] args) {
         List<String> stream = List.of(
                 "Q: database",
@@ -0,0 +1,341 @@
+package org.example.logmatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Multi-pattern matcher that compiles a set of literal patterns into a single
+ * Aho-Corasick automaton and finds every contained pattern in one pass.
+ *
+ * Matching is ASCII case-insensitive (same as {@code Pattern.CASE_INSENSITIVE}).
+ * In whole-word mode a hit only counts when both ends sit on a word boundary,
+ * mirroring {@code \b} in {@code java.util.regex}.
+ *
+ * ASCII transitions are stored as a dense DFA table so the common case is one
+ * array read per character; other characters fall back to sparse edges plus
+ * failure links. The pattern id is the index in the list passed to the constructor.
+ */
+public class AhoCorasick {
+    private static final int ALPHABET = 128;
+    private static final int[] NO_IDS = new int[0];
+
+    private final boolean wholeWords;
+    private final int patternCount;
+    private final int[] patternLengths;
+    private final int maxPatternLength;
+
+    // Dense DFA over ASCII: asciiNext[state * 128 + c]
+    private final int[] asciiNext;
+    // Sparse non-ASCII edges per state, sorted by char; null when the state has none
+    private final char[][] wideKeys;
+    private final int[][] wideTargets;
+    private final int[] fail;
+
+    // Pattern ids ending exactly at a state, and the nearest suffix state that has outputs
+    private final int[][] outputs;
+    private final int[] dictLink;
+
+    // Empty patterns never reach a trie state, so they are tracked separately
+    private final int[] emptyPatternIds;
+
+    // Scanner backing the convenience methods; not thread-safe
+    private Scanner sharedScanner;
+
+    /**
+     * Compiles the given patterns.
+     *
+     * @param patterns   literal patterns; pattern id = list index
+     * @param wholeWords true to require a word boundary on both ends of each hit
+     */
+    public AhoCorasick(List<String> patterns, boolean wholeWords) {
+        this.wholeWords = wholeWords;
+        this.patternCount = patterns.size();
+        this.patternLengths = new int[patternCount];
+
+        // 1. Build the trie with temporary per-state edge maps
+        List<Map<Character, Integer>> edges = new ArrayList<>();
+        List<int[]> ownOutputs = new ArrayList<>();
+        edges.add(new HashMap<>());
+        ownOutputs.add(NO_IDS);
+        List<Integer> empties = new ArrayList<>();
+        int maxLen = 0;
+
+        for (int id = 0; id < patternCount; id++) {
+            String p = patterns.get(id);
+            patternLengths[id] = p.length();
+            maxLen = Math.max(maxLen, p.length());
+            if (p.isEmpty()) {
+                empties.add(id);
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < p.length(); i++) {
+                char c = fold(p.charAt(i));
+                Integer next = edges.get(state).get(c);
+                if (next == null) {
+                    next = edges.size();
+                    edges.add(new HashMap<>());
+                    ownOutputs.add(NO_IDS);
+                    edges.get(state).put(c, next);
+                }
+                state = next;
+            }
+            int[] prev = ownOutputs.get(state);
+            int[] grown = Arrays.copyOf(prev, prev.length + 1);
+            grown[prev.length] = id;
+            ownOutputs.set(state, grown);
+        }
+        this.maxPatternLength = maxLen;
+        this.emptyPatternIds = empties.stream().mapToInt(Integer::intValue).toArray();
+
+        int states = edges.size();
+        this.asciiNext = new int[states * ALPHABET];
+        this.wideKeys = new char[states][];
+        this.wideTargets = new int[states][];
+        this.fail = new int[states];
+        this.outputs = ownOutputs.toArray(new int[0][]);
+        this.dictLink = new int[states];
+        Arrays.fill(dictLink, -1);
+
+        // 2. Copy sparse edges out of the build maps
+        for (int s = 0; s < states; s++) {
+            Map<Character, Integer> e = edges.get(s);
+            int wide = 0;
+            for (char c : e.keySet()) {
+                if (c >= ALPHABET) wide++;
+            }
+            if (wide == 0) continue;
+            char[] keys = new char[wide];
+            int k = 0;
+            for (char c : e.keySet()) {
+                if (c >= ALPHABET) keys[k++] = c;
+            }
+            Arrays.sort(keys);
+            int[] targets = new int[wide];
+            for (int i = 0; i < wide; i++) targets[i] = e.get(keys[i]);
+            wideKeys[s] = keys;
+            wideTargets[s] = targets;
+        }
+
+        // 3. BFS: failure links, dictionary links and the dense ASCII table
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        Map<Character, Integer> rootEdges = edges.get(0);
+        for (int c = 0; c < ALPHABET; c++) {
+            Integer child = rootEdges.get((char) c);
+            asciiNext[c] = child == null ? 0 : child;
+        }
+        for (int child : rootEdges.values()) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            int f = fail[s];
+            dictLink[s] = outputs[f].length > 0 ? f : dictLink[f];
+
+            Map<Character, Integer> e = edges.get(s);
+            for (Map.Entry<Character, Integer> edge : e.entrySet()) {
+                int child = edge.getValue();
+                fail[child] = step(f, edge.getKey());
+                queue.add(child);
+            }
+            int base = s * ALPHABET;
+            int failBase = f * ALPHABET;
+            for (int c = 0; c < ALPHABET; c++) {
+                Integer child = e.get((char) c);
+                asciiNext[base + c] = child == null ? asciiNext[failBase + c] : child;
+            }
+        }
+    }
+
+    /**
+     * Returns the sorted, distinct ids of all patterns contained in the text.
+     * Uses a shared scanner, so concurrent callers need their own {@link #newScanner()}.
+     */
+    public int[] findAll(CharSequence text) {
+        Scanner scanner = sharedScanner();
+        scanner.reset();
+        for (int i = 0, n = text.length(); i < n; i++) {
+            scanner.feed(text.charAt(i));
+        }
+        return scanner.finish() == 0 ? NO_IDS : scanner.sortedIds();
+    }
+
+    /**
+     * Returns true if any pattern occurs in the text.
+     */
+    public boolean containsAny(CharSequence text) {
+        Scanner scanner = sharedScanner();
+        scanner.reset();
+        for (int i = 0, n = text.length(); i < n; i++) {
+            scanner.feed(text.charAt(i));
+        }
+        return scanner.finish() > 0;
+    }
+
+    /**
+     * Creates an independent scanner for char-at-a-time feeding (e.g. from decoded bytes).
+     */
+    public Scanner newScanner() {
+        return new Scanner();
+    }
+
+    public int patternCount() {
+        return patternCount;
+    }
+
+    public int stateCount() {
+        return fail.length;
+    }
+
+    private Scanner sharedScanner() {
+        if (sharedScanner == null) sharedScanner = new Scanner();
+        return sharedScanner;
+    }
+
+    // Goto function with failure fallback; returns the next state
+    int step(int state, char c) {
+        c = fold(c);
+        if (c < ALPHABET) return asciiNext[state * ALPHABET + c];
+        while (true) {
+            char[] keys = wideKeys[state];
+            if (keys != null) {
+                int i = Arrays.binarySearch(keys, c);
+                if (i >= 0) return wideTargets[state][i];
+            }
+            if (state == 0) return 0;
+            state = fail[state];
+        }
+    }
+
+    // ASCII-only case folding, same as Pattern.CASE_INSENSITIVE without UNICODE_CASE
+    static char fold(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    // Same word definition as java.util.regex's \b
+    static boolean isWordChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * Incremental scanner: feed characters of one line, then call {@link #finish()}.
+     * Keeps a small ring of recent characters so whole-word checks work without
+     * random access to the input. Reusable across lines; allocation-free after warm-up.
+     */
+    public final class Scanner {
+        private static final char NONE = '\0';
+
+        private final char[] ring;
+        private final int ringMask;
+        private final int[] seenEpoch = new int[patternCount];
+        private int epoch = 0;
+        private int[] hits = new int[8];
+        private int hitCount;
+
+        private int state;
+        private long position;    // number of chars fed so far
+        private boolean sawWordChar;
+
+        Scanner() {
+            int size = Integer.highestOneBit(Math.max(2, maxPatternLength + 1)) << 1;
+            this.ring = new char[size];
+            this.ringMask = size - 1;
+            reset();
+        }
+
+        /** Starts a new line. */
+        public void reset() {
+            state = 0;
+            position = 0;
+            hitCount = 0;
+            sawWordChar = false;
+            if (++epoch == 0) {
+                Arrays.fill(seenEpoch, 0);
+                epoch = 1;
+            }
+        }
+
+        /** Feeds the next character of the current line. */
+        public void feed(char c) {
+            // Outputs of the current state end right before c, so c is their right context
+            if (outputs[state].length > 0 || dictLink[state] >= 0) {
+                emit(state, c, true);
+            }
+            ring[(int) (position & ringMask)] = c;
+            position++;
+            if (!sawWordChar && isWordChar(c)) sawWordChar = true;
+            state = step(state, c);
+        }
+
+        /**
+         * Ends the current line.
+         *
+         * @return the number of distinct patterns found
+         */
+        public int finish() {
+            if (outputs[state].length > 0 || dictLink[state] >= 0) {
+                emit(state, NONE, false);
+            }
+            for (int id : emptyPatternIds) {
+                // "\b\b" needs at least one boundary, i.e. at least one word character
+                if (!wholeWords || sawWordChar) record(id);
+            }
+            return hitCount;
+        }
+
+        /** Ids found by the last {@link #finish()}, in discovery order. */
+        public int[] ids() {
+            return hits;
+        }
+
+        /** Copy of the found ids in ascending order. */
+        public int[] sortedIds() {
+            int[] result = Arrays.copyOf(hits, hitCount);
+            Arrays.sort(result);
+            return result;
+        }
+
+        public int hitCount() {
+            return hitCount;
+        }
+
+        private void emit(int s, char next, boolean hasNext) {
+            for (; s >= 0; s = dictLink[s]) {
+                for (int id : outputs[s]) {
+                    if (seenEpoch[id] == epoch) continue;
+                    if (wholeWords && !onBoundaries(patternLengths[id], next, hasNext)) continue;
+                    record(id);
+                }
+            }
+        }
+
+        private boolean onBoundaries(int length, char next, boolean hasNext) {
+            long start = position - length;
+            char first = ring[(int) (start & ringMask)];
+            char last = ring[(int) ((position - 1) & ringMask)];
+            boolean beforeIsWord = start > 0 && isWordChar(ring[(int) ((start - 1) & ringMask)]);
+            boolean afterIsWord = hasNext && isWordChar(next);
+            return beforeIsWord != isWordChar(first) && isWordChar(last) != afterIsWord;
+        }
+
+        private void record(int id) {
+            seenEpoch[id] = epoch;
+            if (hitCount == hits.length) hits = Arrays.copyOf(hits, hitCount * 2);
+            hits[hitCount++] = id;
+        }
+    }
+
+    /**
+     * Demo usage.
+     */
+    public static void main(String[] args) {
+        AhoCorasick ac = new AhoCorasick(List.of("error", "timeout", "connection refused", "err"), true);
+        System.out.println(Arrays.toString(ac.findAll("ERROR: connection refused after Timeout")));
+        System.out.println(Arrays.toString(ac.findAll("errors everywhere")));
+    }
+}
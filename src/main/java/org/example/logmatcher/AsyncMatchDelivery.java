@@ -0,0 +1,351 @@
+package org.example.logmatcher;
+
+import org.example.logmatcher.StreamingLogMatcher.LogCallback;
+import org.example.logmatcher.StreamingLogMatcher.Query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link LogCallback} that hands matches to subscribers asynchronously, so a slow
+ * consumer no longer stalls the ingest thread.
+ *
+ * Each subscriber has its own bounded queue and its own worker thread, which
+ * delivers queued matches in batches (one list per call, in arrival order). When a
+ * queue is full the subscriber's {@link OverflowPolicy} decides what happens;
+ * dropped matches are counted. A consumer that throws loses only that batch; the
+ * failure is counted and kept for {@link Subscription#lastFailure()}. Workers are
+ * virtual threads when the JVM supports them and daemon platform threads otherwise.
+ *
+ * Pass an instance as the callback of a {@link StreamingLogMatcher}.
+ */
+public class AsyncMatchDelivery implements LogCallback, AutoCloseable {
+    /**
+     * What {@link #onMatch} does when a subscriber's queue is full.
+     */
+    public enum OverflowPolicy {
+        // Wait for space; a slow subscriber slows down ingest
+        BLOCK,
+        // Evict the oldest queued match
+        DROP_OLDEST,
+        // Discard the incoming match
+        DROP_NEWEST
+    }
+
+    public record Match(Query query, String logLine) {
+    }
+
+    /**
+     * Receives batches of matches on the subscriber's worker thread.
+     */
+    public interface BatchConsumer {
+        void onMatches(List<Match> matches);
+    }
+
+    private static final int DEFAULT_MAX_BATCH = 256;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+
+    /**
+     * Adds a subscriber receiving batches of up to 256 matches.
+     *
+     * @param capacity matches queued before the overflow policy applies; must be > 0
+     */
+    public Subscription subscribe(BatchConsumer consumer, int capacity, OverflowPolicy policy) {
+        return subscribe(consumer, capacity, DEFAULT_MAX_BATCH, policy);
+    }
+
+    public Subscription subscribe(BatchConsumer consumer, int capacity, int maxBatchSize, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        if (closed) {
+            throw new IllegalStateException("Delivery is closed");
+        }
+        Subscription subscription = new Subscription(consumer, capacity, maxBatchSize, policy);
+        subscriptions.add(subscription);
+        subscription.worker.start();
+        return subscription;
+    }
+
+    /**
+     * Queues the match for every subscriber; only blocks for BLOCK subscribers with a full queue.
+     */
+    @Override
+    public void onMatch(Query query, String logLine) {
+        if (closed) {
+            throw new IllegalStateException("Delivery is closed");
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(query, logLine);
+        }
+    }
+
+    /**
+     * Matches dropped so far across all subscribers.
+     */
+    public long droppedCount() {
+        long total = 0;
+        for (Subscription subscription : subscriptions) total += subscription.droppedCount();
+        return total;
+    }
+
+    /**
+     * Blocks until every match queued so far has been handed to its consumer.
+     */
+    public void flush() throws InterruptedException {
+        for (Subscription subscription : subscriptions) {
+            subscription.awaitIdle();
+        }
+    }
+
+    /**
+     * Delivers what is queued, then stops all workers. If interrupted while waiting,
+     * returns with the interrupt flag set; the workers still finish in the background.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Subscription subscription : subscriptions) {
+            subscription.stop();
+        }
+        try {
+            for (Subscription subscription : subscriptions) {
+                subscription.awaitStopped();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One subscriber: a bounded ring of pending matches drained by a worker thread.
+     */
+    public final class Subscription {
+        private final BatchConsumer consumer;
+        private final OverflowPolicy policy;
+        private final int maxBatchSize;
+        private final Thread worker;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private final Condition idle = lock.newCondition();
+        private final Query[] queries;
+        private final String[] lines;
+        private int head = 0;
+        private int size = 0;
+        private boolean busy = false;
+        private boolean stopping = false;
+
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder failedBatches = new LongAdder();
+        private volatile Throwable lastFailure;
+
+        private Subscription(BatchConsumer consumer, int capacity, int maxBatchSize, OverflowPolicy policy) {
+            this.consumer = consumer;
+            this.policy = policy;
+            this.maxBatchSize = maxBatchSize;
+            this.queries = new Query[capacity];
+            this.lines = new String[capacity];
+            this.worker = newWorker(this::drain, "match-delivery-" + subscriptions.size());
+        }
+
+        public long droppedCount() {
+            return dropped.sum();
+        }
+
+        // Matches handed to the consumer in batches that it returned from normally
+        public long deliveredCount() {
+            return delivered.sum();
+        }
+
+        // Batches whose consumer threw; their matches are not counted as delivered
+        public long failedBatchCount() {
+            return failedBatches.sum();
+        }
+
+        // What the consumer threw most recently, or null
+        public Throwable lastFailure() {
+            return lastFailure;
+        }
+
+        public int pendingCount() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Delivers what is queued, then stops this subscriber's worker.
+         */
+        public void cancel() throws InterruptedException {
+            stop();
+            awaitStopped();
+        }
+
+        private void stop() {
+            lock.lock();
+            try {
+                stopping = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void awaitStopped() throws InterruptedException {
+            worker.join();
+            subscriptions.remove(this);
+        }
+
+        private void offer(Query query, String logLine) {
+            lock.lock();
+            try {
+                if (stopping) {
+                    dropped.increment();
+                    return;
+                }
+                if (size == queries.length) {
+                    switch (policy) {
+                        case DROP_NEWEST -> {
+                            dropped.increment();
+                            return;
+                        }
+                        case DROP_OLDEST -> {
+                            queries[head] = null;
+                            lines[head] = null;
+                            head = (head + 1) % queries.length;
+                            size--;
+                            dropped.increment();
+                        }
+                        case BLOCK -> {
+                            while (size == queries.length && !stopping) {
+                                notFull.awaitUninterruptibly();
+                            }
+                            if (stopping) {
+                                dropped.increment();
+                                return;
+                            }
+                        }
+                    }
+                }
+                int tail = (head + size) % queries.length;
+                queries[tail] = query;
+                lines[tail] = logLine;
+                size++;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void awaitIdle() throws InterruptedException {
+            lock.lock();
+            try {
+                while ((size > 0 || busy) && worker.isAlive()) {
+                    idle.await(10, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void drain() {
+            try {
+                deliverUntilStopped();
+            } finally {
+                // However the worker ends, BLOCK offers must not wait for it any more
+                lock.lock();
+                try {
+                    stopping = true;
+                    dropped.add(size);
+                    Arrays.fill(queries, null);
+                    Arrays.fill(lines, null);
+                    size = 0;
+                    busy = false;
+                    notFull.signalAll();
+                    idle.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void deliverUntilStopped() {
+            while (true) {
+                List<Match> batch;
+                lock.lock();
+                try {
+                    while (size == 0 && !stopping) {
+                        notEmpty.awaitUninterruptibly();
+                    }
+                    if (size == 0) {
+                        idle.signalAll();
+                        return;
+                    }
+                    int n = Math.min(size, maxBatchSize);
+                    batch = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        batch.add(new Match(queries[head], lines[head]));
+                        queries[head] = null;
+                        lines[head] = null;
+                        head = (head + 1) % queries.length;
+                    }
+                    size -= n;
+                    busy = true;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                // Errors too: a test consumer's AssertionError must not kill the worker
+                try {
+                    consumer.onMatches(batch);
+                    delivered.add(batch.size());
+                } catch (Throwable e) {
+                    lastFailure = e;
+                    failedBatches.increment();
+                }
+
+                lock.lock();
+                try {
+                    busy = false;
+                    if (size == 0) idle.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    // Virtual thread where available (JDK 21+), found reflectively so the code
+    // also builds and runs on older JDKs, which get a daemon platform thread
+    private static Thread newWorker(Runnable task, String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class).invoke(builder, name);
+            return (Thread) builderType.getMethod("unstarted", Runnable.class).invoke(builder, task);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.example.logmatcher;
+
+/**
+ * The standard {@link Tokenizer}s: each char is a token char, a boundary, or
+ * padding that is only kept between token chars (used for trimming fields).
+ * ASCII chars are classified and lowercased by table lookup; only other chars
+ * (and, for bytes, multi-byte sequences) take the slow path.
+ */
+final class CharClassTokenizer implements Tokenizer {
+    enum Kind {WORDS, NON_WHITESPACE, DELIMITED}
+
+    private static final byte BOUNDARY = 0;
+    private static final byte TOKEN = 1;
+    private static final byte PADDING = 2;
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private static final char[] ASCII_LOWER = new char[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            ASCII_LOWER[c] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+    }
+
+    private final Kind kind;
+    private final char delimiter;
+    private final byte[] asciiClass = new byte[128];
+
+    CharClassTokenizer(Kind kind, char delimiter) {
+        this.kind = kind;
+        this.delimiter = delimiter;
+        for (char c = 0; c < 128; c++) {
+            asciiClass[c] = classifySlow(c);
+        }
+    }
+
+    @Override
+    public void tokenize(CharSequence text, TokenBuffer out) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                accept(out, asciiClass[c], ASCII_LOWER[c], i, i + 1);
+            } else {
+                accept(out, classifySlow(c), Character.toLowerCase(c), i, i + 1);
+            }
+        }
+        out.commit();
+    }
+
+    @Override
+    public void tokenize(byte[] utf8, int from, int to, TokenBuffer out) {
+        int i = from;
+        while (i < to) {
+            byte b = utf8[i];
+            if (b >= 0) {
+                accept(out, asciiClass[b], ASCII_LOWER[b], i, i + 1);
+                i++;
+                continue;
+            }
+            int start = i++;
+            int codePoint;
+            int continuations;
+            if ((b & 0xE0) == 0xC0) {
+                codePoint = b & 0x1F;
+                continuations = 1;
+            } else if ((b & 0xF0) == 0xE0) {
+                codePoint = b & 0x0F;
+                continuations = 2;
+            } else if ((b & 0xF8) == 0xF0) {
+                codePoint = b & 0x07;
+                continuations = 3;
+            } else {
+                codePoint = REPLACEMENT;
+                continuations = 0;
+            }
+            for (; continuations > 0; continuations--) {
+                if (i == to || (utf8[i] & 0xC0) != 0x80) {
+                    // Truncated sequence: replace it and decode the next byte on its own
+                    codePoint = REPLACEMENT;
+                    break;
+                }
+                codePoint = (codePoint << 6) | (utf8[i++] & 0x3F);
+            }
+            if (codePoint > Character.MAX_CODE_POINT) {
+                codePoint = REPLACEMENT;
+            }
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                char high = Character.highSurrogate(codePoint);
+                char low = Character.lowSurrogate(codePoint);
+                accept(out, classifySlow(high), high, start, i);
+                accept(out, classifySlow(low), low, start, i);
+            } else {
+                char c = (char) codePoint;
+                accept(out, classifySlow(c), Character.toLowerCase(c), start, i);
+            }
+        }
+        out.commit();
+    }
+
+    private static void accept(TokenBuffer out, byte charClass, char lower, int start, int end) {
+        if (charClass == BOUNDARY) {
+            out.commit();
+            return;
+        }
+        if (!out.inToken()) {
+            if (charClass == PADDING) return;
+            out.begin(start);
+        }
+        out.append(lower, charClass == TOKEN, end);
+    }
+
+    private byte classifySlow(char c) {
+        switch (kind) {
+            case WORDS:
+                return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'
+                        ? TOKEN : BOUNDARY;
+            case NON_WHITESPACE:
+                // Same characters as \s in java.util.regex
+                return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r'
+                        ? BOUNDARY : TOKEN;
+            default:
+                if (c == delimiter) return BOUNDARY;
+                return c <= ' ' ? PADDING : TOKEN;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.example.logmatcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Multi-substring matcher over a pattern set that changes between lookups,
+ * e.g. live-tail queries that come and go.
+ *
+ * Patterns are kept in a few immutable {@link AhoCorasick} automata of roughly
+ * doubling size (the logarithmic method): adding a pattern compiles a one-pattern
+ * automaton and merges it with smaller ones, so each pattern is recompiled
+ * O(log n) times in total. Removing a pattern only tombstones it; an automaton is
+ * rebuilt once half of its patterns are dead. A text is read in one pass that steps
+ * every automaton per character. Ids are chosen by the caller. Not thread-safe.
+ */
+public class DynamicAhoCorasick {
+    private static final int[] NO_IDS = new int[0];
+
+    private record Slot(Level level, int index) {
+    }
+
+    private final boolean wholeWords;
+    // Automata, largest first
+    private final List<Level> levels = new ArrayList<>();
+    private final Map<Integer, Slot> slots = new HashMap<>();
+    private final IntArrayList found = new IntArrayList();
+
+    /**
+     * @param wholeWords true to require a word boundary on both ends of each hit
+     */
+    public DynamicAhoCorasick(boolean wholeWords) {
+        this.wholeWords = wholeWords;
+    }
+
+    /**
+     * Adds a pattern under the given id, which must not be in use.
+     */
+    public void add(int id, String pattern) {
+        if (slots.containsKey(id)) {
+            throw new IllegalArgumentException("Id " + id + " is already in use");
+        }
+        List<String> patterns = new ArrayList<>();
+        IntArrayList ids = new IntArrayList(1);
+        patterns.add(pattern);
+        ids.add(id);
+        // Binary-counter style: absorb the smallest automata while they are no bigger
+        while (!levels.isEmpty() && levels.get(levels.size() - 1).liveCount <= patterns.size()) {
+            levels.remove(levels.size() - 1).collectLive(patterns, ids);
+        }
+        insertLevel(new Level(patterns, ids));
+    }
+
+    /**
+     * Removes the pattern with the given id; its id may be reused right away.
+     *
+     * @return false if no pattern has this id
+     */
+    public boolean remove(int id) {
+        Slot slot = slots.remove(id);
+        if (slot == null) {
+            return false;
+        }
+        Level level = slot.level();
+        level.dead[slot.index()] = true;
+        level.liveCount--;
+        if (level.liveCount * 2 <= level.ids.length) {
+            levels.remove(level);
+            if (level.liveCount > 0) {
+                List<String> patterns = new ArrayList<>(level.liveCount);
+                IntArrayList ids = new IntArrayList(level.liveCount);
+                level.collectLive(patterns, ids);
+                insertLevel(new Level(patterns, ids));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ascending ids of all patterns contained in the text.
+     */
+    public int[] findAll(CharSequence text) {
+        int levelCount = levels.size();
+        if (levelCount == 0) {
+            return NO_IDS;
+        }
+        for (int l = 0; l < levelCount; l++) {
+            levels.get(l).scanner.reset();
+        }
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            for (int l = 0; l < levelCount; l++) {
+                levels.get(l).scanner.feed(c);
+            }
+        }
+        found.clear();
+        for (int l = 0; l < levelCount; l++) {
+            Level level = levels.get(l);
+            int hitCount = level.scanner.finish();
+            int[] hits = level.scanner.ids();
+            for (int h = 0; h < hitCount; h++) {
+                int index = hits[h];
+                if (!level.dead[index]) found.add(level.ids[index]);
+            }
+        }
+        if (found.isEmpty()) {
+            return NO_IDS;
+        }
+        found.sort();
+        return found.toArray();
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    // Number of automata a text is stepped through
+    public int automatonCount() {
+        return levels.size();
+    }
+
+    private void insertLevel(Level level) {
+        int i = levels.size();
+        while (i > 0 && levels.get(i - 1).liveCount < level.liveCount) i--;
+        levels.add(i, level);
+        for (int index = 0; index < level.ids.length; index++) {
+            slots.put(level.ids[index], new Slot(level, index));
+        }
+    }
+
+    private final class Level {
+        final String[] patterns;
+        final int[] ids;
+        final boolean[] dead;
+        final AhoCorasick.Scanner scanner;
+        int liveCount;
+
+        Level(List<String> patterns, IntArrayList ids) {
+            this.patterns = patterns.toArray(new String[0]);
+            this.ids = ids.toArray();
+            this.dead = new boolean[this.ids.length];
+            this.scanner = new AhoCorasick(patterns, wholeWords).newScanner();
+            this.liveCount = this.ids.length;
+        }
+
+        void collectLive(List<String> patternsOut, IntArrayList idsOut) {
+            for (int i = 0; i < ids.length; i++) {
+                if (!dead[i]) {
+                    patternsOut.add(patterns[i]);
+                    idsOut.add(ids[i]);
+                }
+            }
+        }
+    }
+}
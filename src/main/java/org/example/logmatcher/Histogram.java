@@ -0,0 +1,100 @@
+package org.example.logmatcher;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket histogram of non-negative values with striped counters.
+ *
+ * Bucket 0 holds 0; bucket b > 0 holds [2^(b-1), 2^b). Recording is a leading-zero
+ * count plus two {@link LongAdder} increments: lock-free and allocation-free.
+ * Percentiles are reported as bucket upper bounds, so they are within a factor of 2.
+ */
+public final class Histogram {
+    static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+
+    public Histogram() {
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets[b] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a value; negative values count as 0.
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets[BUCKETS - Long.numberOfLeadingZeros(v)].increment();
+        sum.add(v);
+    }
+
+    /**
+     * Point-in-time copy; concurrent updates may be partially included.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            counts[b] = buckets[b].sum();
+        }
+        return new Snapshot(counts, sum.sum());
+    }
+
+    /**
+     * Immutable histogram state.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long total = 0;
+            for (long c : counts) total += c;
+            this.count = total;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long sum() {
+            return sum;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given quantile, e.g. 0.99; 0 if empty.
+         */
+        public long percentile(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("quantile must be in [0, 1]");
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += counts[b];
+                if (seen >= rank && seen > 0) {
+                    return upperBound(b);
+                }
+            }
+            return 0;
+        }
+
+        /** Values recorded into bucket b. */
+        public long bucketCount(int b) {
+            return counts[b];
+        }
+
+        /** Largest value bucket b can hold. */
+        public static long upperBound(int b) {
+            return b == 0 ? 0 : (1L << b) - 1;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.logmatcher;
+
+/**
+ * Open-addressing hash map from primitive int keys to non-null values.
+ * Avoids the boxed keys and entry objects of {@code HashMap<Integer, V>}. Not thread-safe.
+ *
+ * @param <V> value type
+ */
+public class IntObjectMap<V> {
+    /**
+     * Receives entries during {@link #forEach}.
+     */
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    private int[] keys;
+    private Object[] values;   // null marks an empty slot
+    private int mask;
+    private int size = 0;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            Object v = values[slot];
+            if (v == null) return null;
+            if (keys[slot] == key) return (V) v;
+        }
+    }
+
+    /**
+     * Associates the value with the key, replacing any previous value.
+     */
+    public void put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        int slot = mix(key) & mask;
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        // Keep the load factor at or below 1/2
+        if (++size * 2 > values.length) rehash();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<V> action) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) action.accept(keys[slot], (V) values[slot]);
+        }
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        mask = values.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int slot = mix(oldKeys[i]) & mask;
+            while (values[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    // Sequential ids would cluster under linear probing without mixing
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
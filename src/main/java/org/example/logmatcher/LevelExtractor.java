@@ -0,0 +1,52 @@
+package org.example.logmatcher;
+
+/**
+ * Pulls the level (or any other type token) out of a log line, so that
+ * {@link StreamingLogMatcher} only checks the line against queries of that type.
+ * Levels are compared with {@link StreamingLogMatcher.Query#type()} case-insensitively.
+ */
+@FunctionalInterface
+public interface LevelExtractor {
+    /**
+     * The line's level, or null if it has none. Called once per line, so it
+     * should not allocate; returning one of a fixed set of constants is ideal.
+     */
+    String extract(String logLine);
+
+    /**
+     * Finds the first of {@code levels} occurring as a whole word (case-insensitive)
+     * among the first {@code maxWords} words of the line; returns the given constant.
+     */
+    static LevelExtractor firstOf(int maxWords, String... levels) {
+        if (maxWords <= 0) {
+            throw new IllegalArgumentException("maxWords must be positive");
+        }
+        String[] known = levels.clone();
+        return line -> {
+            int words = 0;
+            for (int i = 0, n = line.length(); i < n && words < maxWords; ) {
+                if (!Character.isLetterOrDigit(line.charAt(i))) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < n && Character.isLetterOrDigit(line.charAt(i))) i++;
+                words++;
+                for (String level : known) {
+                    if (level.length() == i - start && line.regionMatches(true, start, level, 0, level.length())) {
+                        return level;
+                    }
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * The usual levels (TRACE, DEBUG, INFO, WARN, ERROR, FATAL) among the first 8 words,
+     * which covers "timestamp LEVEL message" and "[thread] LEVEL logger - message" layouts.
+     */
+    static LevelExtractor standard() {
+        return firstOf(8, "TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL");
+    }
+}
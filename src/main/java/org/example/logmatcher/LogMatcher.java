@@ -2,19 +2,174 @@ package org.example.logmatcher;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
+/**
+ * Matches log lines against literal word queries and regex queries.
+ *
+ * Literal queries run through one Aho-Corasick automaton. Regex queries are first
+ * narrowed down by a shared {@link TrigramFilter}: the full {@code Pattern} only runs
+ * on lines containing the trigrams it requires. Query ids are shared by both kinds,
+ * in registration order. Not thread-safe.
+ */
 public class LogMatcher {
+    // Initial read buffer for byte-level ingest (grows only for longer lines)
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // Size of each memory-mapped window over a log file
+    private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+    private static final int[] NO_MATCHES = new int[0];
+
+    /**
+     * How registered queries are evaluated against a log line.
+     */
+    public enum MatchMode {
+        // One compiled regex per query, tried in order; stops at the first hit
+        REGEX,
+        // All queries compiled into one Aho-Corasick automaton; one scan reports every hit
+        AUTOMATON
+    }
+
+    /**
+     * Receives matching lines together with the ids of the queries they matched.
+     */
+    public interface MatchListener {
+        void onMatch(String logEntry, int[] queryIds);
+    }
+
+    /**
+     * How selective the trigram filter is for one regex query, counted over
+     * the lines seen since the query was registered.
+     *
+     * @param filtered   false if no trigram could be required, so every line is a candidate
+     * @param lines      lines seen
+     * @param candidates lines that passed the trigram filter
+     * @param matches    candidate lines the pattern matched (REGEX mode stops at the first hit,
+     *                   so later queries are not always evaluated)
+     */
+    public record RegexQueryStats(int queryId, String regex, boolean filtered,
+                                  long lines, long candidates, long matches) {
+        /** Fraction of lines that had to run the full pattern. */
+        public double candidateRate() {
+            return lines == 0 ? 0 : (double) candidates / lines;
+        }
+    }
+
+    private static final class RegexQuery {
+        final int id;
+        final Pattern pattern;
+        final boolean filtered;
+        final long registeredAtLine;
+        long candidates;
+        long matches;
+
+        RegexQuery(int id, Pattern pattern, boolean filtered, long registeredAtLine) {
+            this.id = id;
+            this.pattern = pattern;
+            this.filtered = filtered;
+            this.registeredAtLine = registeredAtLine;
+        }
+    }
+
+    // One pattern per query id, literal or regex
     private final List<Pattern> searchPatterns = new ArrayList<>();
+    private final List<String> literalQueries = new ArrayList<>();
+    // Automaton pattern id -> query id
+    private final IntArrayList literalIds = new IntArrayList();
+    // Query id -> index into regexQueries, or -1 for literal queries
+    private final IntArrayList regexIndexById = new IntArrayList();
+    private final List<RegexQuery> regexQueries = new ArrayList<>();
+    private final TrigramFilter trigramFilter = new TrigramFilter();
+    private final MatchMode mode;
+    private final MatchListener listener;
 
-    // Register a new search query with case-insensitive word matching
-    public void addSearchQuery(String query) {
+    // Rebuilt lazily after new queries are registered
+    private AhoCorasick automaton;
+    // Trigram scanner for the String paths
+    private TrigramFilter.Scanner lineFilter;
+    // Lines run through the trigram filter so far
+    private long filteredLines;
+    // Queries the last matched line had to check: automaton hits plus regex candidates
+    private int lineCandidates;
+
+    private MatcherMetrics metrics = MatcherMetrics.NOOP;
+    private boolean metricsEnabled = false;
+
+    public LogMatcher() {
+        this(MatchMode.REGEX);
+    }
+
+    public LogMatcher(MatchMode mode) {
+        this(mode, (logEntry, queryIds) -> System.out.println("MATCH: " + logEntry));
+    }
+
+    public LogMatcher(MatchMode mode, MatchListener listener) {
+        this.mode = mode;
+        this.listener = listener;
+    }
+
+    // Register a new search query with case-insensitive word matching; returns its id
+    public int addSearchQuery(String query) {
         String regex = "\\b" + Pattern.quote(query) + "\\b";
+        int id = searchPatterns.size();
         searchPatterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+        regexIndexById.add(-1);
+        literalQueries.add(query);
+        literalIds.add(id);
+        automaton = null;
+        return id;
+    }
+
+    /**
+     * Registers a regular expression query, matched with {@code find()}; returns its id.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the expression is invalid
+     */
+    public int addRegexQuery(String regex) {
+        return addRegexQuery(regex, 0);
+    }
+
+    /**
+     * Registers a regular expression query with {@link Pattern} flags; returns its id.
+     */
+    public int addRegexQuery(String regex, int flags) {
+        Pattern pattern = Pattern.compile(regex, flags);
+        int id = searchPatterns.size();
+        int filterId = trigramFilter.add(RegexTrigrams.analyze(regex, flags));
+        searchPatterns.add(pattern);
+        regexIndexById.add(filterId);
+        regexQueries.add(new RegexQuery(id, pattern, trigramFilter.isFiltered(filterId), filteredLines));
+        return id;
+    }
+
+    /**
+     * Reports per-line work to the given metrics; {@link MatcherMetrics#NOOP} disables it.
+     * The byte-level paths time each line from the end of the previous one, decoding included.
+     */
+    public void setMetrics(MatcherMetrics metrics) {
+        this.metrics = metrics;
+        this.metricsEnabled = metrics.enabled();
+    }
+
+    /**
+     * Trigram filter statistics for every regex query, in id order.
+     */
+    public List<RegexQueryStats> regexQueryStats() {
+        List<RegexQueryStats> stats = new ArrayList<>(regexQueries.size());
+        for (RegexQuery q : regexQueries) {
+            stats.add(new RegexQueryStats(q.id, q.pattern.pattern(), q.filtered,
+                    filteredLines - q.registeredAtLine, q.candidates, q.matches));
+        }
+        return stats;
     }
 
     // Process a stream of log entries
@@ -25,13 +180,252 @@ public class LogMatcher {
         }
     }
 
+    /**
+     * Byte-level ingest: reads raw UTF-8 into a reusable buffer, splits lines in place
+     * and runs the automaton and trigram filter over the bytes. Only lines that hit a
+     * literal query or pass the filter for a regex query become Strings.
+     * Always reports every matching query id, regardless of {@link MatchMode}.
+     */
+    public void processLogStream(InputStream in) throws IOException {
+        Utf8LineScanner lines = new Utf8LineScanner(new LineMatcher());
+        byte[] buf = new byte[READ_BUFFER_SIZE];
+        ByteBuffer view = ByteBuffer.wrap(buf);
+        int lineStart = 0;
+        int filled = 0;
+
+        while (true) {
+            if (lineStart == filled) {
+                lineStart = filled = 0;
+            } else if (filled == buf.length) {
+                if (lineStart > 0) {
+                    // Move the unfinished line to the front
+                    System.arraycopy(buf, lineStart, buf, 0, filled - lineStart);
+                    filled -= lineStart;
+                    lineStart = 0;
+                } else {
+                    // A single line fills the whole buffer
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                    view = ByteBuffer.wrap(buf);
+                }
+            }
+            int n = in.read(buf, filled, buf.length - filled);
+            if (n < 0) break;
+            lineStart = lines.scan(view, lineStart, filled, filled + n);
+            filled += n;
+        }
+        lines.finish(view, lineStart, filled);
+    }
+
+    /**
+     * Byte-level ingest over a memory-mapped file, mapped in fixed-size windows.
+     * Same matching semantics as {@link #processLogStream(InputStream)}.
+     */
+    public void processLogFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Utf8LineScanner lines = new Utf8LineScanner(new LineMatcher());
+            long size = channel.size();
+            long base = 0;      // file offset of the current window
+            int scanned = 0;    // bytes of the window already scanned
+
+            while (base + scanned < size) {
+                long length = Math.min(size - base, Math.max(MAP_WINDOW_SIZE, scanned + MAP_WINDOW_SIZE));
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Log line longer than 2 GB at offset " + base);
+                }
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+                int lineStart = lines.scan(window, 0, scanned, (int) length);
+                if (base + length == size) {
+                    lines.finish(window, lineStart, (int) length);
+                    break;
+                }
+                // Next window starts at the unfinished line; its bytes are already scanned
+                base += lineStart;
+                scanned = (int) length - lineStart;
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of all queries matching the line, in ascending order.
+     */
+    public int[] matchingQueries(String logEntry) {
+        int[] ids = automaton().findAll(logEntry);
+        toQueryIds(ids);
+        lineCandidates = ids.length;
+        if (regexQueries.isEmpty()) {
+            return ids;
+        }
+        int candidates = filterLine(logEntry);
+        lineCandidates += candidates;
+        return merge(ids, regexMatches(logEntry, lineFilter, candidates));
+    }
+
     private void checkLogEntry(String logEntry) {
-        for (Pattern pattern : searchPatterns) {
-            if (pattern.matcher(logEntry).find()) {
-                System.out.println("MATCH: " + logEntry);
-                return; // Remove if multiple matches per line needed
+        long start = metricsEnabled ? System.nanoTime() : 0;
+        int[] ids = mode == MatchMode.AUTOMATON ? matchingQueries(logEntry) : firstMatch(logEntry);
+        if (ids.length > 0) {
+            listener.onMatch(logEntry, ids);
+        }
+        if (metricsEnabled) {
+            recordLine(System.nanoTime() - start, lineCandidates, ids);
+        }
+    }
+
+    // REGEX mode: patterns are tried in id order
+    private int[] firstMatch(String logEntry) {
+        lineCandidates = 0;
+        if (!regexQueries.isEmpty()) {
+            filterLine(logEntry);
+        }
+        for (int i = 0; i < searchPatterns.size(); i++) {
+            int regex = regexIndexById.get(i);
+            if (regex >= 0 && !lineFilter.isCandidate(regex)) continue;
+            lineCandidates++;
+            if (searchPatterns.get(i).matcher(logEntry).find()) {
+                if (regex >= 0) regexQueries.get(regex).matches++;
+                return new int[]{i}; // Remove if multiple matches per line needed
             }
         }
+        return NO_MATCHES;
+    }
+
+    private void recordLine(long nanos, int candidates, int[] ids) {
+        metrics.onLine(nanos, candidates, ids.length);
+        for (int id : ids) {
+            metrics.onQueryHit(id);
+        }
+    }
+
+    private AhoCorasick automaton() {
+        if (automaton == null) {
+            automaton = new AhoCorasick(literalQueries, true);
+        }
+        return automaton;
+    }
+
+    // Runs the trigram filter over the line; returns the number of candidates
+    private int filterLine(String logEntry) {
+        if (lineFilter == null) {
+            lineFilter = trigramFilter.newScanner();
+        }
+        lineFilter.reset();
+        for (int i = 0, n = logEntry.length(); i < n; i++) {
+            lineFilter.feed(logEntry.charAt(i));
+        }
+        return finishFilter(lineFilter);
+    }
+
+    private int finishFilter(TrigramFilter.Scanner filter) {
+        int count = filter.finish();
+        filteredLines++;
+        int[] candidates = filter.candidates();
+        for (int i = 0; i < count; i++) {
+            regexQueries.get(candidates[i]).candidates++;
+        }
+        return count;
+    }
+
+    // Query ids of the candidate regex queries that really match, in ascending order
+    private int[] regexMatches(String logEntry, TrigramFilter.Scanner filter, int candidateCount) {
+        int[] candidates = filter.candidates();
+        int[] ids = new int[candidateCount];
+        int n = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            RegexQuery q = regexQueries.get(candidates[i]);
+            if (q.pattern.matcher(logEntry).find()) {
+                q.matches++;
+                ids[n++] = q.id;
+            }
+        }
+        return n == ids.length ? ids : Arrays.copyOf(ids, n);
+    }
+
+    // Maps automaton pattern ids to query ids in place; the mapping keeps ascending order
+    private void toQueryIds(int[] ids) {
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = literalIds.get(ids[i]);
+        }
+    }
+
+    private static int[] merge(int[] a, int[] b) {
+        if (b.length == 0) return a;
+        if (a.length == 0) return b;
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            out[k++] = a[i] < b[j] ? a[i++] : b[j++];
+        }
+        while (i < a.length) out[k++] = a[i++];
+        while (j < b.length) out[k++] = b[j++];
+        return out;
+    }
+
+    /**
+     * Byte-path consumer: the automaton and the trigram filter see the same decoded chars,
+     * and a line's text is only built if either of them reports something.
+     */
+    private final class LineMatcher implements Utf8LineScanner.LineConsumer {
+        private final AhoCorasick.Scanner literals = automaton().newScanner();
+        private final TrigramFilter.Scanner filter = regexQueries.isEmpty() ? null : trigramFilter.newScanner();
+        private int candidateCount;
+        private int literalHits;
+        // Whether this stream is measured, fixed when it starts so a concurrent setMetrics
+        // cannot leave lines timed but not recorded or the reverse. The clock starts at a
+        // line's first char, so time spent waiting for input between lines is not counted
+        private final boolean timed = metricsEnabled;
+        private boolean lineStarted;
+        private long lineStart;
+
+        @Override
+        public void feed(char c) {
+            if (timed && !lineStarted) {
+                lineStarted = true;
+                lineStart = System.nanoTime();
+            }
+            literals.feed(c);
+            if (filter != null) filter.feed(c);
+        }
+
+        @Override
+        public boolean endLine() {
+            literalHits = literals.finish();
+            candidateCount = filter == null ? 0 : finishFilter(filter);
+            if (literalHits > 0 || candidateCount > 0) {
+                return true;
+            }
+            reset();
+            if (timed) {
+                record(NO_MATCHES);
+            }
+            return false;
+        }
+
+        @Override
+        public void line(String text) {
+            int[] ids = literals.sortedIds();
+            toQueryIds(ids);
+            if (candidateCount > 0) {
+                ids = merge(ids, regexMatches(text, filter, candidateCount));
+            }
+            reset();
+            if (ids.length > 0) {
+                listener.onMatch(text, ids);
+            }
+            if (timed) {
+                record(ids);
+            }
+        }
+
+        private void record(int[] ids) {
+            // An empty line took no matching work
+            recordLine(lineStarted ? System.nanoTime() - lineStart : 0, literalHits + candidateCount, ids);
+            lineStarted = false;
+        }
+
+        private void reset() {
+            literals.reset();
+            if (filter != null) filter.reset();
+        }
     }
 
     public static void main(String[] args) throws IOException {
@@ -42,6 +436,11 @@ public class LogMatcher {
         matcher.addSearchQuery("Timeout");
         matcher.addSearchQuery("connection refused");
 
+        if (args.length > 0) {
+            matcher.processLogFile(Path.of(args[0]));
+            return;
+        }
+
         // Simulate log stream (replace with actual stream source)
         try (BufferedReader logs = new BufferedReader(
                 new InputStreamReader(System.in))) {
@@ -49,4 +448,3 @@ public class LogMatcher {
         }
     }
 }
-
@@ -0,0 +1,123 @@
+package org.example.logmatcher;
+
+/**
+ * Fixed-capacity block of consecutive log lines together with their own postings.
+ *
+ * Postings are keyed by segment-local term ids from the segment's own
+ * {@link TermDictionary} and use segment-local log ids (0..capacity-1), so dropping
+ * a segment drops its lines, words and postings in one step without touching any
+ * other index. Once full the segment is sealed: its bitmaps are compacted and it
+ * is never modified again.
+ */
+final class LogSegment implements SearchableSegment {
+    // Rough per-line overhead of a String object plus its array slot
+    private static final long LINE_OVERHEAD_BYTES = 56;
+    // Rough per-entry overhead of the postings map (slot plus bitmap header)
+    private static final long POSTING_ENTRY_OVERHEAD_BYTES = 48;
+    // Rough per-term overhead of a String object plus its dictionary slots
+    private static final long TERM_OVERHEAD_BYTES = 64;
+
+    final long baseLogId;
+    private final String[] logs;
+    private final TermDictionary terms = new TermDictionary();
+    private final IntObjectMap<RoaringBitmap> postings = new IntObjectMap<>();
+    private int count;
+    private long bytes;
+    private long newestMillis;
+    private boolean sealed;
+
+    LogSegment(long baseLogId, int capacity) {
+        this.baseLogId = baseLogId;
+        this.logs = new String[capacity];
+    }
+
+    /**
+     * Appends a line and indexes its words, plus {@code extraTerm} unless null;
+     * returns the line's global log id.
+     */
+    long append(String logLine, TokenBuffer words, String extraTerm, long nowMillis) {
+        int localId = count++;
+        logs[localId] = logLine;
+        char[] chars = words.chars();
+        for (int t = 0, n = words.size(); t < n; t++) {
+            index(terms.intern(chars, words.charOffset(t), words.length(t)), localId);
+        }
+        if (extraTerm != null) {
+            index(terms.intern(extraTerm), localId);
+        }
+        bytes += LINE_OVERHEAD_BYTES + 2L * logLine.length();
+        newestMillis = nowMillis;
+        if (count == logs.length) {
+            seal();
+        }
+        return baseLogId + localId;
+    }
+
+    // Adding a line id twice is a no-op, so repeated words need no check
+    private void index(int termId, int localId) {
+        RoaringBitmap p = postings.get(termId);
+        if (p == null) {
+            p = new RoaringBitmap();
+            postings.put(termId, p);
+        }
+        p.add(localId);
+    }
+
+    boolean isFull() {
+        return sealed || count == logs.length;
+    }
+
+    @Override
+    public long baseLogId() {
+        return baseLogId;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public long newestMillis() {
+        return newestMillis;
+    }
+
+    @Override
+    public String log(int localId) {
+        return logs[localId];
+    }
+
+    void forEachPosting(IntObjectMap.EntryConsumer<RoaringBitmap> consumer) {
+        postings.forEach(consumer);
+    }
+
+    // The segment's own word for a local term id, as passed to forEachPosting
+    String term(int localTermId) {
+        return terms.term(localTermId);
+    }
+
+    // Term ids are resolved to the segment's own ids through their words
+    @Override
+    public RoaringBitmap postings(int termId, TermDictionary dictionary) {
+        int localTermId = terms.lookup(dictionary.term(termId));
+        return localTermId < 0 ? null : postings.get(localTermId);
+    }
+
+    /**
+     * Compacts postings and accounts for their size now that they are final; also
+     * used to freeze a partly filled segment, which then takes no more appends.
+     */
+    void seal() {
+        if (sealed) return;
+        sealed = true;
+        postings.forEach((termId, p) -> {
+            p.runOptimize();
+            bytes += POSTING_ENTRY_OVERHEAD_BYTES + p.sizeInBytes() + TERM_OVERHEAD_BYTES + 2L * term(termId).length();
+        });
+    }
+}
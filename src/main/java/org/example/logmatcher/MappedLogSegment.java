@@ -0,0 +1,258 @@
+package org.example.logmatcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sealed segment stored in an immutable file and read through a memory mapping.
+ *
+ * File layout (big-endian; offsets are relative to their section):
+ * <pre>
+ *   header       magic, version, base log id, log count, term count, newest millis
+ *   log offsets  int[logCount + 1]   start of each line in the log data
+ *   term index   int[termCount + 1]  start of each term in the term bytes,
+ *                int[termCount + 1]  start of each term's postings
+ *   term bytes   UTF-8 terms in ascending unsigned byte order
+ *   postings     serialized {@link RoaringBitmap}s of segment-local log ids
+ *   log data     UTF-8 lines
+ * </pre>
+ * Opening reads only the header and index bounds; lines and postings are paged in
+ * by the OS when a query touches them, so heap use does not depend on file size.
+ * The same layout is embedded in matcher snapshots (see {@link SnapshotFile}).
+ */
+final class MappedLogSegment implements SearchableSegment {
+    static final int MAGIC = 0x4C534547; // "LSEG"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    // Heap held by an open segment, whatever its size on disk
+    private static final long HEAP_BYTES = 128;
+
+    // Null for a segment embedded in a snapshot, which no store owns
+    final Path file;
+    private final ByteBuffer buffer;
+    private final long baseLogId;
+    private final int logCount;
+    private final int termCount;
+    private final long newestMillis;
+
+    private final int termOffsetsStart;
+    private final int postingOffsetsStart;
+    private final int termBytesStart;
+    private final int postingsStart;
+    private final int logDataStart;
+
+    private MappedLogSegment(Path file, ByteBuffer buffer, Path source) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a segment file: " + source);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported segment version " + buffer.getInt(4) + ": " + source);
+        }
+        baseLogId = buffer.getLong(8);
+        logCount = buffer.getInt(16);
+        termCount = buffer.getInt(20);
+        newestMillis = buffer.getLong(24);
+
+        termOffsetsStart = HEADER_BYTES + 4 * (logCount + 1);
+        postingOffsetsStart = termOffsetsStart + 4 * (termCount + 1);
+        termBytesStart = postingOffsetsStart + 4 * (termCount + 1);
+        postingsStart = termBytesStart + buffer.getInt(termOffsetsStart + 4 * termCount);
+        logDataStart = postingsStart + buffer.getInt(postingOffsetsStart + 4 * termCount);
+        long expected = (long) logDataStart + buffer.getInt(HEADER_BYTES + 4 * logCount);
+        if (expected != buffer.capacity()) {
+            throw new IOException("Truncated segment file: " + source);
+        }
+    }
+
+    /**
+     * Maps an existing segment file read-only.
+     */
+    static MappedLogSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment file too large: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedLogSegment(file, mapped, file);
+        }
+    }
+
+    /**
+     * Wraps a segment mapped from a block of the given snapshot file.
+     */
+    static MappedLogSegment embedded(Path snapshot, ByteBuffer block) throws IOException {
+        return new MappedLogSegment(null, block, snapshot);
+    }
+
+    /**
+     * Writes the segment to {@code file} (via a temporary file and an atomic rename)
+     * and maps the result.
+     */
+    static MappedLogSegment write(Path file, LogSegment segment) throws IOException {
+        ByteBuffer out = encode(segment);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) channel.write(out);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(file);
+    }
+
+    /**
+     * Lays out a sealed segment in the file format.
+     */
+    static ByteBuffer encode(LogSegment segment) throws IOException {
+        int logCount = segment.size();
+        byte[][] lines = new byte[logCount][];
+        long logBytes = 0;
+        for (int i = 0; i < logCount; i++) {
+            lines[i] = segment.log(i).getBytes(StandardCharsets.UTF_8);
+            logBytes += lines[i].length;
+        }
+
+        List<byte[]> terms = new ArrayList<>();
+        List<RoaringBitmap> postings = new ArrayList<>();
+        segment.forEachPosting((termId, bitmap) -> {
+            terms.add(segment.term(termId).getBytes(StandardCharsets.UTF_8));
+            postings.add(bitmap);
+        });
+        Integer[] order = new Integer[terms.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(terms.get(a), terms.get(b)));
+
+        int termCount = order.length;
+        long termBytes = 0, postingBytes = 0;
+        for (int i = 0; i < termCount; i++) {
+            termBytes += terms.get(i).length;
+            postingBytes += postings.get(i).serializedSizeInBytes();
+        }
+        long total = HEADER_BYTES + 4L * (logCount + 1) + 8L * (termCount + 1) + termBytes + postingBytes + logBytes;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Segment too large to store: " + total + " bytes");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) total);
+        out.putInt(MAGIC).putInt(VERSION).putLong(segment.baseLogId())
+                .putInt(logCount).putInt(termCount).putLong(segment.newestMillis());
+        int offset = 0;
+        for (byte[] line : lines) {
+            out.putInt(offset);
+            offset += line.length;
+        }
+        out.putInt(offset);
+        offset = 0;
+        for (int i : order) {
+            out.putInt(offset);
+            offset += terms.get(i).length;
+        }
+        out.putInt(offset);
+        offset = 0;
+        for (int i : order) {
+            out.putInt(offset);
+            offset += postings.get(i).serializedSizeInBytes();
+        }
+        out.putInt(offset);
+        for (int i : order) out.put(terms.get(i));
+        for (int i : order) postings.get(i).serialize(out);
+        for (byte[] line : lines) out.put(line);
+        return out.flip();
+    }
+
+    /**
+     * The whole segment in its file format, as an independent read-only view.
+     */
+    ByteBuffer contents() {
+        return buffer.asReadOnlyBuffer().position(0);
+    }
+
+    @Override
+    public long baseLogId() {
+        return baseLogId;
+    }
+
+    @Override
+    public int size() {
+        return logCount;
+    }
+
+    @Override
+    public long bytes() {
+        return HEAP_BYTES;
+    }
+
+    @Override
+    public long newestMillis() {
+        return newestMillis;
+    }
+
+    // Term ids are resolved to strings, since the file has its own term order
+    @Override
+    public RoaringBitmap postings(int termId, TermDictionary dictionary) {
+        int index = findTerm(dictionary.term(termId).getBytes(StandardCharsets.UTF_8));
+        return index < 0 ? null : postings(index);
+    }
+
+    // Read from the container headers, so counting does not copy the postings onto the heap
+    @Override
+    public int postingCount(int termId, TermDictionary dictionary) {
+        int index = findTerm(dictionary.term(termId).getBytes(StandardCharsets.UTF_8));
+        if (index < 0) return 0;
+        int start = postingsStart + buffer.getInt(postingOffsetsStart + 4 * index);
+        int end = postingsStart + buffer.getInt(postingOffsetsStart + 4 * (index + 1));
+        return RoaringBitmap.serializedCardinality(buffer.slice(start, end - start));
+    }
+
+    @Override
+    public String log(int localId) {
+        int start = buffer.getInt(HEADER_BYTES + 4 * localId);
+        int end = buffer.getInt(HEADER_BYTES + 4 * (localId + 1));
+        byte[] bytes = new byte[end - start];
+        buffer.get(logDataStart + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private RoaringBitmap postings(int index) {
+        int start = postingsStart + buffer.getInt(postingOffsetsStart + 4 * index);
+        int end = postingsStart + buffer.getInt(postingOffsetsStart + 4 * (index + 1));
+        return RoaringBitmap.deserialize(buffer.slice(start, end - start));
+    }
+
+    // Binary search over the sorted term bytes; returns the term index or -1
+    private int findTerm(byte[] key) {
+        int lo = 0, hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareTerm(mid, key);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private int compareTerm(int index, byte[] key) {
+        int start = termBytesStart + buffer.getInt(termOffsetsStart + 4 * index);
+        int end = termBytesStart + buffer.getInt(termOffsetsStart + 4 * (index + 1));
+        int n = Math.min(end - start, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Byte.compareUnsigned(buffer.get(start + i), key[i]);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(end - start, key.length);
+    }
+}
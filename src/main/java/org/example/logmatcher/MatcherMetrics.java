@@ -0,0 +1,49 @@
+package org.example.logmatcher;
+
+/**
+ * Hot-path instrumentation hooks for the log matchers.
+ *
+ * Matchers only call these (and only read the clock) when {@link #enabled()} is true,
+ * so the default {@link #NOOP} costs one predictable branch per line.
+ * Implementations must be thread-safe and should not allocate per event;
+ * see {@link MetricsRecorder}.
+ */
+public interface MatcherMetrics {
+    /**
+     * Disabled metrics; the default of every matcher.
+     */
+    MatcherMetrics NOOP = new MatcherMetrics() {
+    };
+
+    default boolean enabled() {
+        return false;
+    }
+
+    /**
+     * A log line was matched.
+     *
+     * @param nanos          time spent on the line
+     * @param candidates     queries the index could not rule out for the line
+     * @param matchedQueries queries that matched it
+     */
+    default void onLine(long nanos, int candidates, int matchedQueries) {
+    }
+
+    /**
+     * The line last reported through {@link #onLine} matched this query.
+     */
+    default void onQueryHit(int queryId) {
+    }
+
+    /**
+     * The query was cancelled; its id may be reused by a later query, whose hits start from zero.
+     */
+    default void onQueryCancelled(int queryId) {
+    }
+
+    /**
+     * A query was registered, including any backfill over retained logs.
+     */
+    default void onQuery(long nanos, long backfillMatches) {
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.logmatcher;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MatcherMetrics} backed by striped counters and fixed-bucket histograms.
+ *
+ * Recording never allocates, except the first hit of a query id beyond the current
+ * per-query table, which grows it once. One recorder may be shared by several
+ * matchers (their query ids then share counters). Scrape with {@link #snapshot()}.
+ */
+public final class MetricsRecorder implements MatcherMetrics {
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder matchedLines = new LongAdder();
+    private final LongAdder queryHits = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder backfillMatches = new LongAdder();
+    private final Histogram lineNanos = new Histogram();
+    private final Histogram candidates = new Histogram();
+    private final Histogram queryNanos = new Histogram();
+
+    // Query id -> hits; copy-on-write so the read path needs no lock
+    private volatile LongAdder[] hitsByQuery = new LongAdder[0];
+
+    /**
+     * Scraped state of a recorder.
+     *
+     * @param hitsByQuery hits per query id; ids above the highest hit so far may be missing
+     */
+    public record Snapshot(long lines, long matchedLines, long queryHits, long queries, long backfillMatches,
+                           Histogram.Snapshot lineNanos, Histogram.Snapshot candidates,
+                           Histogram.Snapshot queryNanos, long[] hitsByQuery) {
+    }
+
+    @Override
+    public boolean enabled() {
+        return true;
+    }
+
+    @Override
+    public void onLine(long nanos, int candidateCount, int matchedQueries) {
+        lines.increment();
+        if (matchedQueries > 0) matchedLines.increment();
+        lineNanos.record(nanos);
+        candidates.record(candidateCount);
+    }
+
+    @Override
+    public void onQueryHit(int queryId) {
+        queryHits.increment();
+        LongAdder[] table = hitsByQuery;
+        if (queryId >= table.length) {
+            table = grow(queryId);
+        }
+        table[queryId].increment();
+    }
+
+    // Ids are reused after cancellation, so the slot must not carry the old query's hits over
+    @Override
+    public void onQueryCancelled(int queryId) {
+        LongAdder[] table = hitsByQuery;
+        if (queryId < table.length) {
+            table[queryId].reset();
+        }
+    }
+
+    @Override
+    public void onQuery(long nanos, long backfill) {
+        queries.increment();
+        backfillMatches.add(backfill);
+        queryNanos.record(nanos);
+    }
+
+    public Snapshot snapshot() {
+        LongAdder[] table = hitsByQuery;
+        long[] hits = new long[table.length];
+        for (int i = 0; i < table.length; i++) {
+            hits[i] = table[i].sum();
+        }
+        return new Snapshot(lines.sum(), matchedLines.sum(), queryHits.sum(), queries.sum(), backfillMatches.sum(),
+                lineNanos.snapshot(), candidates.snapshot(), queryNanos.snapshot(), hits);
+    }
+
+    private synchronized LongAdder[] grow(int queryId) {
+        LongAdder[] table = hitsByQuery;
+        if (queryId < table.length) {
+            return table;
+        }
+        int oldLength = table.length;
+        table = Arrays.copyOf(table, Math.max(queryId + 1, oldLength * 2));
+        for (int i = oldLength; i < table.length; i++) {
+            table[i] = new LongAdder();
+        }
+        hitsByQuery = table;
+        return table;
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.logmatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Boolean keyword expression of a {@link StreamingLogMatcher.Query}.
+ *
+ * Syntax: words combine with {@code AND}, {@code OR}, {@code NOT} (upper case)
+ * and parentheses; adjacent operands are implicitly ANDed, so {@code disk full}
+ * means {@code disk AND full}. Precedence is NOT, then AND, then OR. Words are
+ * runs of {@code [A-Za-z0-9_]}, lowercased; any other character separates them.
+ */
+public sealed interface QueryExpression {
+
+    record Term(String word) implements QueryExpression {
+    }
+
+    // No operands matches everything
+    record And(List<QueryExpression> operands) implements QueryExpression {
+    }
+
+    record Or(List<QueryExpression> operands) implements QueryExpression {
+    }
+
+    record Not(QueryExpression operand) implements QueryExpression {
+    }
+
+    /**
+     * Conjunction of the given words.
+     */
+    static QueryExpression allOf(Set<String> words) {
+        List<QueryExpression> terms = new ArrayList<>(words.size());
+        for (String word : words) terms.add(new Term(word));
+        return terms.size() == 1 ? terms.get(0) : new And(Collections.unmodifiableList(terms));
+    }
+
+    /**
+     * Parses an expression; blank text yields an empty conjunction.
+     *
+     * @throws IllegalArgumentException on unbalanced parentheses or a missing operand
+     */
+    static QueryExpression parse(String text) {
+        QueryExpressionParser parser = new QueryExpressionParser(text);
+        QueryExpression expression = parser.parseOr();
+        if (parser.peek() != null) {
+            throw new IllegalArgumentException("Unexpected '" + parser.peek() + "' in query: " + text);
+        }
+        return expression == null ? new And(List.of()) : expression;
+    }
+
+    /**
+     * Every word in the expression, including negated ones.
+     */
+    default Set<String> words() {
+        Set<String> words = new TreeSet<>();
+        collectWords(this, words, true);
+        return Collections.unmodifiableSet(words);
+    }
+
+    /**
+     * Words outside any NOT, i.e. those a matching line may need to contain.
+     */
+    default Set<String> positiveWords() {
+        Set<String> words = new TreeSet<>();
+        collectWords(this, words, false);
+        return Collections.unmodifiableSet(words);
+    }
+
+    private static void collectWords(QueryExpression e, Set<String> out, boolean withNegated) {
+        if (e instanceof Term t) {
+            out.add(t.word());
+        } else if (e instanceof And a) {
+            for (QueryExpression o : a.operands()) collectWords(o, out, withNegated);
+        } else if (e instanceof Or o) {
+            for (QueryExpression x : o.operands()) collectWords(x, out, withNegated);
+        } else if (e instanceof Not n && withNegated) {
+            collectWords(n.operand(), out, true);
+        }
+    }
+}
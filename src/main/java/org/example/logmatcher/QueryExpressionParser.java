@@ -0,0 +1,107 @@
+package org.example.logmatcher;
+
+import org.example.logmatcher.QueryExpression.And;
+import org.example.logmatcher.QueryExpression.Not;
+import org.example.logmatcher.QueryExpression.Or;
+import org.example.logmatcher.QueryExpression.Term;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Recursive-descent parser for {@link QueryExpression} over word, operator
+ * and parenthesis tokens.
+ */
+final class QueryExpressionParser {
+    private final String text;
+    private final List<String> tokens = new ArrayList<>();
+    private int next = 0;
+
+    QueryExpressionParser(String text) {
+        this.text = text;
+        int i = 0, n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (isWordChar(c)) {
+                int start = i;
+                while (i < n && isWordChar(text.charAt(i))) i++;
+                tokens.add(text.substring(start, i));
+            } else {
+                i++;
+            }
+        }
+    }
+
+    String peek() {
+        return next < tokens.size() ? tokens.get(next) : null;
+    }
+
+    // or := and ("OR" and)*
+    QueryExpression parseOr() {
+        List<QueryExpression> operands = new ArrayList<>();
+        operands.add(parseAnd());
+        while ("OR".equals(peek())) {
+            next++;
+            operands.add(require(parseAnd()));
+        }
+        if (operands.size() == 1) return operands.get(0);
+        require(operands.get(0));
+        return new Or(Collections.unmodifiableList(operands));
+    }
+
+    // and := unary (["AND"] unary)*; null if there is no operand at all
+    private QueryExpression parseAnd() {
+        List<QueryExpression> operands = new ArrayList<>();
+        while (true) {
+            String token = peek();
+            if (token == null || token.equals(")") || token.equals("OR")) break;
+            if (token.equals("AND")) {
+                if (operands.isEmpty()) require(null);
+                next++;
+                operands.add(require(parseUnary()));
+            } else {
+                operands.add(parseUnary());
+            }
+        }
+        if (operands.isEmpty()) return null;
+        return operands.size() == 1 ? operands.get(0) : new And(Collections.unmodifiableList(operands));
+    }
+
+    // unary := "NOT" unary | "(" or ")" | word
+    private QueryExpression parseUnary() {
+        String token = peek();
+        if (token == null || token.equals(")") || token.equals("OR") || token.equals("AND")) {
+            return null;
+        }
+        next++;
+        if (token.equals("NOT")) {
+            return new Not(require(parseUnary()));
+        }
+        if (token.equals("(")) {
+            QueryExpression inner = require(parseOr());
+            if (!")".equals(peek())) {
+                throw new IllegalArgumentException("Missing ')' in query: " + text);
+            }
+            next++;
+            return inner;
+        }
+        // Words are ASCII, so this folds exactly like Tokenizer.WORDS does for log lines
+        return new Term(token.toLowerCase(Locale.ROOT));
+    }
+
+    private QueryExpression require(QueryExpression operand) {
+        if (operand == null) {
+            throw new IllegalArgumentException("Missing operand in query: " + text);
+        }
+        return operand;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
@@ -0,0 +1,86 @@
+package org.example.logmatcher;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Hands out query ids, reusing released ids smallest-first so that id-indexed
+ * arrays stay as small as the peak number of live queries. Not thread-safe.
+ */
+public class QueryIdAllocator {
+    private final int firstId;
+    private int nextId;
+    // Min-heap of released ids
+    private int[] free = new int[8];
+    private int freeCount = 0;
+
+    /**
+     * @param firstId the id handed out first (e.g. 0 or 1)
+     */
+    public QueryIdAllocator(int firstId) {
+        this.firstId = firstId;
+        this.nextId = firstId;
+    }
+
+    public int allocate() {
+        if (freeCount == 0) {
+            return nextId++;
+        }
+        int id = free[0];
+        free[0] = free[--freeCount];
+        siftDown(0);
+        return id;
+    }
+
+    /**
+     * Makes the id available again; it must not be in use any more.
+     */
+    public void release(int id) {
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        int i = freeCount++;
+        free[i] = id;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (free[parent] <= free[i]) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    /**
+     * Resets to a saved state: ids below {@code highWaterMark} are free unless {@code inUse},
+     * e.g. after re-registering restored queries under their original ids.
+     */
+    public void restore(int highWaterMark, IntPredicate inUse) {
+        nextId = Math.max(firstId, highWaterMark);
+        freeCount = 0;
+        for (int id = firstId; id < nextId; id++) {
+            if (!inUse.test(id)) release(id);
+        }
+    }
+
+    // One past the largest id ever handed out
+    public int highWaterMark() {
+        return nextId;
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1, right = left + 1;
+            if (left < freeCount && free[left] < free[smallest]) smallest = left;
+            if (right < freeCount && free[right] < free[smallest]) smallest = right;
+            if (smallest == i) return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int t = free[a];
+        free[a] = free[b];
+        free[b] = t;
+    }
+}
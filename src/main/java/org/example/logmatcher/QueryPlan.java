@@ -0,0 +1,389 @@
+package org.example.logmatcher;
+
+import org.example.logmatcher.QueryExpression.And;
+import org.example.logmatcher.QueryExpression.Not;
+import org.example.logmatcher.QueryExpression.Or;
+import org.example.logmatcher.QueryExpression.Term;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * A {@link QueryExpression} compiled against a {@link TermDictionary}.
+ *
+ * The tree is normalized so that negations only appear as the exclusions of a
+ * conjunction. Over a segment's posting lists a conjunction intersects its
+ * operands cheapest first (by estimated result size), stops as soon as the result
+ * is empty, and subtracts the exclusions last.
+ *
+ * For forward matching the plan also exposes routing terms: either terms that
+ * every match must contain ({@link #routeRequiresAll()}), or terms of which every
+ * match contains at least one. Plans with neither (e.g. {@code NOT debug})
+ * must be checked against every line.
+ */
+final class QueryPlan {
+    private final Node root;
+    private final int[] routeTerms;
+    private final boolean routeRequiresAll;
+    // True when containing all route terms is already a match
+    private final boolean routeIsExact;
+    private final boolean hasTerms;
+
+    private QueryPlan(Node root, boolean hasTerms) {
+        this.root = root;
+        this.hasTerms = hasTerms;
+        int[] required = root.requiredTerms();
+        int[] triggers = root.triggerTerms();
+        if (required.length > 0) {
+            routeTerms = required;
+            routeRequiresAll = true;
+        } else {
+            routeTerms = triggers;
+            routeRequiresAll = false;
+        }
+        routeIsExact = root.isPlainConjunction();
+    }
+
+    static QueryPlan compile(QueryExpression expression, TermDictionary dictionary) {
+        Node root = build(expression, dictionary, false);
+        return new QueryPlan(root, !expression.words().isEmpty());
+    }
+
+    /**
+     * Terms the matcher indexes this query under; null if it cannot be routed by terms.
+     */
+    int[] routeTerms() {
+        return routeTerms;
+    }
+
+    boolean routeRequiresAll() {
+        return routeRequiresAll;
+    }
+
+    boolean routeIsExact() {
+        return routeIsExact;
+    }
+
+    // Queries without any word keep the original behaviour: backfill only
+    boolean isForwardMatchable() {
+        return hasTerms;
+    }
+
+    /**
+     * Evaluates the plan for one line, given which terms the line contains.
+     */
+    boolean matches(IntPredicate lineHasTerm) {
+        return root.matches(lineHasTerm);
+    }
+
+    /**
+     * Segment-local ids of the lines matching the plan.
+     */
+    RoaringBitmap evaluate(SearchableSegment segment, TermDictionary dictionary) {
+        return root.evaluate(new Evaluation(segment, dictionary));
+    }
+
+    /**
+     * Upper bound on the number of lines of the segment matching the plan, from
+     * posting list sizes alone: no intersections, and no postings copied from a mapped segment.
+     */
+    long estimate(SearchableSegment segment, TermDictionary dictionary) {
+        return Math.min(segment.size(), root.estimate(new Evaluation(segment, dictionary)));
+    }
+
+    private static Node build(QueryExpression e, TermDictionary dictionary, boolean negated) {
+        if (e instanceof Not n) {
+            return build(n.operand(), dictionary, !negated);
+        }
+        if (negated) {
+            // NOT x == (everything AND NOT x)
+            return new AndNode(new Node[0], new Node[]{build(e, dictionary, false)});
+        }
+        if (e instanceof Term t) {
+            return new TermNode(dictionary.intern(t.word()));
+        }
+        if (e instanceof Or o) {
+            List<Node> children = new ArrayList<>();
+            for (QueryExpression operand : o.operands()) {
+                Node child = build(operand, dictionary, false);
+                if (child instanceof OrNode nested) children.addAll(Arrays.asList(nested.children));
+                else children.add(child);
+            }
+            return new OrNode(children.toArray(new Node[0]));
+        }
+        List<Node> positives = new ArrayList<>();
+        List<Node> negatives = new ArrayList<>();
+        for (QueryExpression operand : ((And) e).operands()) {
+            if (operand instanceof Not n) {
+                negatives.add(build(n.operand(), dictionary, false));
+                continue;
+            }
+            Node child = build(operand, dictionary, false);
+            if (child instanceof AndNode nested) {
+                positives.addAll(Arrays.asList(nested.positives));
+                negatives.addAll(Arrays.asList(nested.negatives));
+            } else {
+                positives.add(child);
+            }
+        }
+        if (positives.size() == 1 && negatives.isEmpty()) return positives.get(0);
+        return new AndNode(positives.toArray(new Node[0]), negatives.toArray(new Node[0]));
+    }
+
+    /**
+     * Per-segment evaluation state; caches postings so each term is fetched once.
+     */
+    private static final class Evaluation {
+        final SearchableSegment segment;
+        final TermDictionary dictionary;
+        final IntObjectMap<RoaringBitmap> postings = new IntObjectMap<>(8);
+        RoaringBitmap all;
+
+        Evaluation(SearchableSegment segment, TermDictionary dictionary) {
+            this.segment = segment;
+            this.dictionary = dictionary;
+        }
+
+        RoaringBitmap postings(int termId) {
+            RoaringBitmap p = postings.get(termId);
+            if (p == null) {
+                p = segment.postings(termId, dictionary);
+                if (p == null) p = new RoaringBitmap();
+                postings.put(termId, p);
+            }
+            return p;
+        }
+
+        // Posting list size, without loading the list unless it already is
+        long count(int termId) {
+            RoaringBitmap p = postings.get(termId);
+            return p != null ? p.cardinality() : segment.postingCount(termId, dictionary);
+        }
+
+        RoaringBitmap all() {
+            if (all == null) all = RoaringBitmap.range(0, segment.size());
+            return all;
+        }
+    }
+
+    private abstract static class Node {
+        abstract boolean matches(IntPredicate lineHasTerm);
+
+        abstract RoaringBitmap evaluate(Evaluation ev);
+
+        // Upper bound on the number of matching lines
+        abstract long estimate(Evaluation ev);
+
+        // Terms every match contains
+        abstract int[] requiredTerms();
+
+        // Terms of which every match contains at least one; null if there is no such set
+        abstract int[] triggerTerms();
+
+        boolean isPlainConjunction() {
+            return false;
+        }
+    }
+
+    private static final class TermNode extends Node {
+        final int termId;
+
+        TermNode(int termId) {
+            this.termId = termId;
+        }
+
+        @Override
+        boolean matches(IntPredicate lineHasTerm) {
+            return lineHasTerm.test(termId);
+        }
+
+        @Override
+        RoaringBitmap evaluate(Evaluation ev) {
+            return ev.postings(termId);
+        }
+
+        @Override
+        long estimate(Evaluation ev) {
+            return ev.count(termId);
+        }
+
+        @Override
+        int[] requiredTerms() {
+            return new int[]{termId};
+        }
+
+        @Override
+        int[] triggerTerms() {
+            return new int[]{termId};
+        }
+
+        @Override
+        boolean isPlainConjunction() {
+            return true;
+        }
+    }
+
+    private static final class AndNode extends Node {
+        final Node[] positives;
+        final Node[] negatives;
+
+        AndNode(Node[] positives, Node[] negatives) {
+            this.positives = positives;
+            this.negatives = negatives;
+        }
+
+        @Override
+        boolean matches(IntPredicate lineHasTerm) {
+            for (Node p : positives) {
+                if (!p.matches(lineHasTerm)) return false;
+            }
+            for (Node n : negatives) {
+                if (n.matches(lineHasTerm)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Evaluation ev) {
+            RoaringBitmap result;
+            if (positives.length == 0) {
+                result = ev.all();
+            } else {
+                Node[] ordered = positives.clone();
+                long[] costs = new long[ordered.length];
+                Integer[] order = new Integer[ordered.length];
+                for (int i = 0; i < ordered.length; i++) {
+                    costs[i] = ordered[i].estimate(ev);
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparingLong(i -> costs[i]));
+                result = ordered[order[0]].evaluate(ev);
+                for (int k = 1; k < order.length && !result.isEmpty(); k++) {
+                    result = result.and(ordered[order[k]].evaluate(ev));
+                }
+            }
+            // Exclusions last, on what is left
+            for (int k = 0; k < negatives.length && !result.isEmpty(); k++) {
+                result = result.andNot(negatives[k].evaluate(ev));
+            }
+            return result;
+        }
+
+        @Override
+        long estimate(Evaluation ev) {
+            long min = ev.segment.size();
+            for (Node p : positives) min = Math.min(min, p.estimate(ev));
+            return min;
+        }
+
+        @Override
+        int[] requiredTerms() {
+            IntArrayList terms = new IntArrayList();
+            for (Node p : positives) {
+                for (int t : p.requiredTerms()) {
+                    if (!contains(terms, t)) terms.add(t);
+                }
+            }
+            return terms.toArray();
+        }
+
+        @Override
+        int[] triggerTerms() {
+            // Any one operand's triggers will do; pick the smallest set
+            int[] best = null;
+            for (Node p : positives) {
+                int[] t = p.triggerTerms();
+                if (t != null && (best == null || t.length < best.length)) best = t;
+            }
+            return best;
+        }
+
+        @Override
+        boolean isPlainConjunction() {
+            if (negatives.length > 0 || positives.length == 0) return false;
+            for (Node p : positives) {
+                if (!(p instanceof TermNode)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class OrNode extends Node {
+        final Node[] children;
+
+        OrNode(Node[] children) {
+            this.children = children;
+        }
+
+        @Override
+        boolean matches(IntPredicate lineHasTerm) {
+            for (Node c : children) {
+                if (c.matches(lineHasTerm)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Evaluation ev) {
+            if (children.length == 0) return new RoaringBitmap();
+            RoaringBitmap result = children[0].evaluate(ev);
+            for (int k = 1; k < children.length; k++) {
+                result = result.or(children[k].evaluate(ev));
+            }
+            return result;
+        }
+
+        @Override
+        long estimate(Evaluation ev) {
+            long sum = 0;
+            for (Node c : children) sum += c.estimate(ev);
+            return Math.min(sum, ev.segment.size());
+        }
+
+        @Override
+        int[] requiredTerms() {
+            // Only terms required by every alternative
+            IntArrayList common = new IntArrayList();
+            if (children.length == 0) return common.toArray();
+            for (int t : children[0].requiredTerms()) common.add(t);
+            for (int k = 1; k < children.length && !common.isEmpty(); k++) {
+                int[] other = children[k].requiredTerms();
+                IntArrayList kept = new IntArrayList();
+                for (int i = 0; i < common.size(); i++) {
+                    int t = common.get(i);
+                    for (int o : other) {
+                        if (o == t) {
+                            kept.add(t);
+                            break;
+                        }
+                    }
+                }
+                common = kept;
+            }
+            return common.toArray();
+        }
+
+        @Override
+        int[] triggerTerms() {
+            IntArrayList terms = new IntArrayList();
+            for (Node c : children) {
+                int[] t = c.triggerTerms();
+                if (t == null) return null;
+                for (int x : t) {
+                    if (!contains(terms, x)) terms.add(x);
+                }
+            }
+            return terms.toArray();
+        }
+    }
+
+    private static boolean contains(IntArrayList list, int value) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == value) return true;
+        }
+        return false;
+    }
+}
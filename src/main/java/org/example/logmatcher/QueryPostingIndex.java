@@ -0,0 +1,188 @@
+package org.example.logmatcher;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index from term id to the ids of the queries using that term,
+ * with support for cancelling queries. Each posting may carry an int payload,
+ * e.g. which word of the query it stands for.
+ *
+ * Cancelling is O(terms of the query): the query is marked dead and its posting
+ * lists are queued for compaction. Dead ids are skipped by {@link #isLive} until
+ * {@link #compact} rewrites the queued lists in small slices on later calls,
+ * so one pass over a list removes every dead id in it. A cancelled id is
+ * recycled only once none of its postings remain, so a new query can never
+ * inherit stale postings. Not thread-safe; compaction runs on the owner's thread.
+ */
+final class QueryPostingIndex {
+    private final QueryIdAllocator ids;
+
+    private IntArrayList[] postings = new IntArrayList[64];  // term id -> query ids
+    private IntArrayList[] payloads;                         // parallel to postings; null if unused
+    private int[][] queryTerms = new int[16][];              // query id -> its term ids
+    private boolean[] dead = new boolean[16];
+    // Dead query id -> number of its postings not compacted yet
+    private int[] pendingPostings = new int[16];
+
+    private final IntArrayList dirtyTerms = new IntArrayList();
+    private boolean[] termDirty = new boolean[64];
+    private int liveQueries = 0;
+
+    QueryPostingIndex(int firstQueryId) {
+        this.ids = new QueryIdAllocator(firstQueryId);
+    }
+
+    /**
+     * Registers a query with the given distinct term ids and returns its id.
+     */
+    int register(int[] termIds) {
+        return register(termIds, null);
+    }
+
+    /**
+     * Registers a query with one posting per element of {@code termIds} (repeats
+     * allowed), each carrying the matching element of {@code payloads}. Postings of
+     * one query under one term keep their order.
+     */
+    int register(int[] termIds, int[] payloads) {
+        int queryId = ids.allocate();
+        registerAt(queryId, termIds, payloads);
+        return queryId;
+    }
+
+    /**
+     * Registers a restored query under its original id, bypassing the allocator;
+     * call {@link #restoreIds} once all are registered.
+     */
+    void registerAt(int queryId, int[] termIds, int[] payloads) {
+        if (isLive(queryId)) {
+            throw new IllegalStateException("Query id " + queryId + " is in use");
+        }
+        if (queryId >= queryTerms.length) {
+            int capacity = Math.max(queryId + 1, queryTerms.length * 2);
+            queryTerms = Arrays.copyOf(queryTerms, capacity);
+            dead = Arrays.copyOf(dead, capacity);
+            pendingPostings = Arrays.copyOf(pendingPostings, capacity);
+        }
+        queryTerms[queryId] = termIds;
+        if (payloads != null && this.payloads == null) {
+            this.payloads = new IntArrayList[postings.length];
+        }
+        for (int i = 0; i < termIds.length; i++) {
+            int termId = termIds[i];
+            if (termId >= postings.length) {
+                int capacity = Math.max(termId + 1, postings.length * 2);
+                postings = Arrays.copyOf(postings, capacity);
+                if (this.payloads != null) this.payloads = Arrays.copyOf(this.payloads, capacity);
+            }
+            if (postings[termId] == null) postings[termId] = new IntArrayList(4);
+            postings[termId].add(queryId);
+            if (this.payloads != null) {
+                if (this.payloads[termId] == null) this.payloads[termId] = new IntArrayList(4);
+                this.payloads[termId].add(payloads == null ? 0 : payloads[i]);
+            }
+        }
+        liveQueries++;
+    }
+
+    /**
+     * Makes the ids below {@code idLimit} that no restored query took available again.
+     */
+    void restoreIds(int idLimit) {
+        ids.restore(idLimit, this::isLive);
+    }
+
+    /**
+     * Marks the query dead and queues its postings for compaction.
+     *
+     * @return false if the id is not a live query
+     */
+    boolean cancel(int queryId) {
+        if (!isLive(queryId)) return false;
+        int[] terms = queryTerms[queryId];
+        queryTerms[queryId] = null;
+        liveQueries--;
+        if (terms.length == 0) {
+            ids.release(queryId);
+            return true;
+        }
+        dead[queryId] = true;
+        pendingPostings[queryId] = terms.length;
+        for (int termId : terms) {
+            if (termId >= termDirty.length) {
+                termDirty = Arrays.copyOf(termDirty, Math.max(termId + 1, termDirty.length * 2));
+            }
+            if (!termDirty[termId]) {
+                termDirty[termId] = true;
+                dirtyTerms.add(termId);
+            }
+        }
+        return true;
+    }
+
+    boolean isLive(int queryId) {
+        return queryId >= 0 && queryId < queryTerms.length && queryTerms[queryId] != null;
+    }
+
+    /**
+     * Query ids for the term, possibly including dead ones; check {@link #isLive}.
+     */
+    IntArrayList postings(int termId) {
+        return termId < postings.length ? postings[termId] : null;
+    }
+
+    /**
+     * Payloads parallel to {@link #postings}; only valid if payloads were registered.
+     */
+    IntArrayList payloads(int termId) {
+        return payloads[termId];
+    }
+
+    int[] termsOf(int queryId) {
+        return queryTerms[queryId];
+    }
+
+    int liveQueryCount() {
+        return liveQueries;
+    }
+
+    // Upper bound (exclusive) on ids in use; sizes id-indexed arrays
+    int queryIdLimit() {
+        return ids.highWaterMark();
+    }
+
+    boolean hasPendingCompaction() {
+        return !dirtyTerms.isEmpty();
+    }
+
+    /**
+     * Rewrites up to {@code maxLists} queued posting lists without their dead ids.
+     */
+    void compact(int maxLists) {
+        while (maxLists-- > 0 && !dirtyTerms.isEmpty()) {
+            int termId = dirtyTerms.removeLast();
+            termDirty[termId] = false;
+            IntArrayList list = postings[termId];
+            IntArrayList values = payloads == null ? null : payloads[termId];
+            int kept = 0;
+            for (int i = 0, n = list.size(); i < n; i++) {
+                int queryId = list.get(i);
+                if (dead[queryId]) {
+                    if (--pendingPostings[queryId] == 0) {
+                        dead[queryId] = false;
+                        ids.release(queryId);
+                    }
+                } else {
+                    if (values != null) values.set(kept, values.get(i));
+                    list.set(kept++, queryId);
+                }
+            }
+            list.truncate(kept);
+            if (values != null) values.truncate(kept);
+            if (kept == 0) {
+                postings[termId] = null;
+                if (values != null) payloads[termId] = null;
+            }
+        }
+    }
+}
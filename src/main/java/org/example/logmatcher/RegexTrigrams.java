@@ -0,0 +1,476 @@
+package org.example.logmatcher;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Conservative analysis of a regular expression into the trigrams every match
+ * must contain, in the style of Russ Cox's "Regular Expression Matching with a
+ * Trigram Index".
+ *
+ * The result is an OR of AND clauses of trigrams; a line can only match if it
+ * contains every trigram of at least one clause. Trigrams are over lowercased
+ * chars, so the result also holds for case-insensitive patterns. Whenever the
+ * analysis loses precision (big sets, unsupported syntax) it drops requirements
+ * rather than risk rejecting a matching line; an empty clause means "no requirement".
+ */
+final class RegexTrigrams {
+    // Largest exact-string set kept before falling back to prefixes/suffixes
+    private static final int MAX_EXACT = 16;
+    // Largest prefix/suffix set kept; larger sets become "unknown"
+    private static final int MAX_AFFIX = 64;
+    private static final int MAX_CLAUSES = 32;
+
+    private static final List<long[]> ANYTHING = List.of(new long[0]);
+
+    private RegexTrigrams() {
+    }
+
+    /**
+     * Trigram clauses for the pattern; each clause holds distinct packed trigrams.
+     */
+    static List<long[]> analyze(String regex, int flags) {
+        // Unicode case folding (also implied by UNICODE_CHARACTER_CLASS) and canonical
+        // equivalence can match chars our lowercasing does not map together, literal
+        // patterns included
+        if ((flags & (Pattern.UNICODE_CASE | Pattern.UNICODE_CHARACTER_CLASS | Pattern.CANON_EQ)) != 0) {
+            return ANYTHING;
+        }
+        if ((flags & Pattern.LITERAL) != 0) {
+            return toClauses(trigrams(lower(regex)));
+        }
+        // Comments mode changes the syntax
+        if ((flags & Pattern.COMMENTS) != 0) {
+            return ANYTHING;
+        }
+        try {
+            Parser parser = new Parser(regex);
+            Info root = parser.parseAlternation();
+            if (parser.pos != regex.length()) return ANYTHING;
+            return toClauses(root.fullMatch());
+        } catch (UnsupportedOperationException | IndexOutOfBoundsException e) {
+            return ANYTHING;
+        }
+    }
+
+    static long pack(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static List<long[]> toClauses(List<Set<Long>> dnf) {
+        List<long[]> clauses = new ArrayList<>(dnf.size());
+        for (Set<Long> clause : dnf) {
+            if (clause.isEmpty()) return ANYTHING;
+            clauses.add(clause.stream().mapToLong(Long::longValue).toArray());
+        }
+        return clauses;
+    }
+
+    private static String lower(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) sb.append(Character.toLowerCase(s.charAt(i)));
+        return sb.toString();
+    }
+
+    // ---------------------------------------------------------------------
+    // Trigram formulas in disjunctive normal form: a list of AND clauses
+    // ---------------------------------------------------------------------
+
+    private static List<Set<Long>> all() {
+        List<Set<Long>> dnf = new ArrayList<>();
+        dnf.add(new TreeSet<>());
+        return dnf;
+    }
+
+    private static boolean isAll(List<Set<Long>> dnf) {
+        for (Set<Long> clause : dnf) {
+            if (clause.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    private static List<Set<Long>> and(List<Set<Long>> a, List<Set<Long>> b) {
+        if (isAll(a)) return b;
+        if (isAll(b)) return a;
+        if ((long) a.size() * b.size() > MAX_CLAUSES) {
+            // Dropping a conjunct only weakens the filter; keep the tighter side
+            return a.size() <= b.size() ? a : b;
+        }
+        List<Set<Long>> out = new ArrayList<>(a.size() * b.size());
+        for (Set<Long> x : a) {
+            for (Set<Long> y : b) {
+                Set<Long> clause = new TreeSet<>(x);
+                clause.addAll(y);
+                out.add(clause);
+            }
+        }
+        return out;
+    }
+
+    private static List<Set<Long>> or(List<Set<Long>> a, List<Set<Long>> b) {
+        if (isAll(a) || isAll(b) || a.size() + b.size() > MAX_CLAUSES) return all();
+        List<Set<Long>> out = new ArrayList<>(a);
+        out.addAll(b);
+        return out;
+    }
+
+    private static List<Set<Long>> trigrams(String s) {
+        List<Set<Long>> dnf = new ArrayList<>();
+        Set<Long> clause = new TreeSet<>();
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            clause.add(pack(s.charAt(i), s.charAt(i + 1), s.charAt(i + 2)));
+        }
+        dnf.add(clause);
+        return dnf;
+    }
+
+    // Matches contain at least one of the strings
+    private static List<Set<Long>> anyOf(Set<String> strings) {
+        if (strings == null || strings.isEmpty()) return all();
+        List<Set<Long>> dnf = null;
+        for (String s : strings) {
+            dnf = dnf == null ? trigrams(s) : or(dnf, trigrams(s));
+        }
+        return dnf;
+    }
+
+    // ---------------------------------------------------------------------
+    // Per-subexpression facts
+    // ---------------------------------------------------------------------
+
+    private static final class Info {
+        boolean emptyable;
+        // Every string the subexpression can match, or null if unknown or too many
+        Set<String> exact;
+        // Up to 2 leading / trailing chars of every match; "" means unknown
+        Set<String> prefix;
+        Set<String> suffix;
+        // Trigram requirement beyond what exact implies
+        List<Set<Long>> match = all();
+
+        static Info literal(String s) {
+            Info info = new Info();
+            info.exact = new LinkedHashSet<>(Set.of(s));
+            info.emptyable = s.isEmpty();
+            return info;
+        }
+
+        static Info anyChar() {
+            Info info = new Info();
+            info.prefix = Set.of("");
+            info.suffix = Set.of("");
+            return info;
+        }
+
+        // Unknown text, possibly empty
+        static Info anything() {
+            Info info = anyChar();
+            info.emptyable = true;
+            return info;
+        }
+
+        Set<String> prefixes() {
+            return exact != null ? exact : prefix;
+        }
+
+        Set<String> suffixes() {
+            return exact != null ? exact : suffix;
+        }
+
+        List<Set<Long>> fullMatch() {
+            return exact != null ? and(match, anyOf(exact)) : match;
+        }
+
+        void dropExact() {
+            if (exact == null) return;
+            match = fullMatch();
+            prefix = trim(exact, true);
+            suffix = trim(exact, false);
+            exact = null;
+        }
+    }
+
+    private static Info concat(Info x, Info y) {
+        Info r = new Info();
+        r.emptyable = x.emptyable && y.emptyable;
+        r.match = and(x.match, y.match);
+        if (x.exact != null && y.exact != null) {
+            Set<String> both = cross(x.exact, y.exact);
+            if (both != null && both.size() <= MAX_EXACT) {
+                r.exact = both;
+                return r;
+            }
+        }
+        // Strings spanning the boundary (this also covers the inside of exact sides)
+        Set<String> spanning = cross(x.suffixes(), y.prefixes());
+        if (spanning != null) r.match = and(r.match, anyOf(spanning));
+
+        if (x.exact != null) {
+            r.prefix = trim(cross(x.exact, y.prefixes()), true);
+        } else if (x.emptyable) {
+            r.prefix = union(x.prefix, trim(y.prefixes(), true));
+        } else {
+            r.prefix = x.prefix;
+        }
+        if (y.exact != null) {
+            r.suffix = trim(cross(x.suffixes(), y.exact), false);
+        } else if (y.emptyable) {
+            r.suffix = union(y.suffix, trim(x.suffixes(), false));
+        } else {
+            r.suffix = y.suffix;
+        }
+        return r;
+    }
+
+    private static Info alternate(Info x, Info y) {
+        Info r = new Info();
+        r.emptyable = x.emptyable || y.emptyable;
+        if (x.exact != null && y.exact != null) {
+            Set<String> both = union(x.exact, y.exact);
+            if (both.size() <= MAX_EXACT) {
+                r.exact = both;
+                r.match = or(x.match, y.match);
+                return r;
+            }
+        }
+        r.match = or(x.fullMatch(), y.fullMatch());
+        r.prefix = union(trim(x.prefixes(), true), trim(y.prefixes(), true));
+        r.suffix = union(trim(x.suffixes(), false), trim(y.suffixes(), false));
+        return r;
+    }
+
+    private static Info repeat(Info x, int min, int max) {
+        if (min == 0 && max == 1) return alternate(x, Info.literal(""));
+        if (min == 0) return Info.anything();
+        Info r = x;
+        for (int i = 1; i < Math.min(min, 3); i++) r = concat(r, x);
+        if (max != min || min > 3) {
+            r = concat(r, Info.anything());
+            // Every match still ends with a full match of x
+            r.suffix = trim(x.suffixes(), false);
+        }
+        return r;
+    }
+
+    // All concatenations, or null if there would be too many
+    private static Set<String> cross(Set<String> a, Set<String> b) {
+        if ((long) a.size() * b.size() > MAX_AFFIX * MAX_AFFIX) return null;
+        Set<String> out = new LinkedHashSet<>();
+        for (String x : a) {
+            for (String y : b) out.add(x + y);
+        }
+        return out;
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        Set<String> out = new LinkedHashSet<>(a);
+        out.addAll(b);
+        return out;
+    }
+
+    // Keep the first (or last) 2 chars of each string; too many strings become unknown
+    private static Set<String> trim(Set<String> strings, boolean keepStart) {
+        if (strings == null) return Set.of("");
+        Set<String> out = new LinkedHashSet<>();
+        for (String s : strings) {
+            out.add(s.length() <= 2 ? s : keepStart ? s.substring(0, 2) : s.substring(s.length() - 2));
+        }
+        return out.size() > MAX_AFFIX ? Set.of("") : out;
+    }
+
+    // ---------------------------------------------------------------------
+    // Parser for java.util.regex syntax; unsupported constructs throw
+    // UnsupportedOperationException and make the whole pattern unfiltered
+    // ---------------------------------------------------------------------
+
+    private static final class Parser {
+        private final String re;
+        int pos = 0;
+
+        Parser(String re) {
+            this.re = re;
+        }
+
+        Info parseAlternation() {
+            Info result = parseConcatenation();
+            while (pos < re.length() && re.charAt(pos) == '|') {
+                pos++;
+                result = alternate(result, parseConcatenation());
+            }
+            return result;
+        }
+
+        private Info parseConcatenation() {
+            Info result = Info.literal("");
+            while (pos < re.length() && re.charAt(pos) != '|' && re.charAt(pos) != ')') {
+                Info atom = parseQuantified();
+                result = concat(result, atom);
+            }
+            return result;
+        }
+
+        private Info parseQuantified() {
+            Info atom = parseAtom();
+            while (pos < re.length()) {
+                char c = re.charAt(pos);
+                int min, max;
+                if (c == '*') {
+                    min = 0;
+                    max = Integer.MAX_VALUE;
+                    pos++;
+                } else if (c == '+') {
+                    min = 1;
+                    max = Integer.MAX_VALUE;
+                    pos++;
+                } else if (c == '?') {
+                    min = 0;
+                    max = 1;
+                    pos++;
+                } else if (c == '{' && pos + 1 < re.length() && Character.isDigit(re.charAt(pos + 1))) {
+                    int close = re.indexOf('}', pos);
+                    String[] bounds = re.substring(pos + 1, close).split(",", -1);
+                    min = Integer.parseInt(bounds[0]);
+                    max = bounds.length == 1 ? min
+                            : bounds[1].isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(bounds[1]);
+                    pos = close + 1;
+                } else {
+                    return atom;
+                }
+                // Lazy and possessive variants match the same strings
+                if (pos < re.length() && (re.charAt(pos) == '?' || re.charAt(pos) == '+')) pos++;
+                atom = repeat(atom, min, max);
+            }
+            return atom;
+        }
+
+        private Info parseAtom() {
+            char c = re.charAt(pos++);
+            switch (c) {
+                case '.':
+                    return Info.anyChar();
+                case '^':
+                case '$':
+                    return Info.literal("");
+                case '[':
+                    skipClass();
+                    return Info.anyChar();
+                case '(':
+                    return parseGroup();
+                case '\\':
+                    return parseEscape();
+                default:
+                    return Info.literal(String.valueOf(Character.toLowerCase(c)));
+            }
+        }
+
+        private Info parseGroup() {
+            boolean zeroWidth = false;
+            if (re.startsWith("?", pos)) {
+                pos++;
+                char k = re.charAt(pos);
+                if (k == ':' || k == '>') {
+                    pos++;
+                } else if (k == '=' || k == '!') {
+                    pos++;
+                    zeroWidth = true;
+                } else if (k == '<' && (re.charAt(pos + 1) == '=' || re.charAt(pos + 1) == '!')) {
+                    pos += 2;
+                    zeroWidth = true;
+                } else if (k == '<') {
+                    pos = re.indexOf('>', pos) + 1;
+                } else {
+                    // Inline flags: (?idmsuxU-idmsuxU) or (?flags:X)
+                    int start = pos;
+                    while (re.charAt(pos) != ')' && re.charAt(pos) != ':') pos++;
+                    String flags = re.substring(start, pos);
+                    if (flags.indexOf('u') >= 0 || flags.indexOf('U') >= 0 || flags.indexOf('x') >= 0) {
+                        throw new UnsupportedOperationException("flags " + flags);
+                    }
+                    if (re.charAt(pos++) == ')') {
+                        return Info.literal("");
+                    }
+                }
+            }
+            Info inner = parseAlternation();
+            if (re.charAt(pos++) != ')') {
+                throw new UnsupportedOperationException("unbalanced group");
+            }
+            return zeroWidth ? Info.literal("") : inner;
+        }
+
+        private Info parseEscape() {
+            char c = re.charAt(pos++);
+            if (!Character.isLetterOrDigit(c)) {
+                return Info.literal(String.valueOf(c));
+            }
+            // Braces after an escape are part of it (\N{name}, \b{g}) unless they are a repetition;
+            // \p, \P and \x braces are handled below, and \Q quotes them
+            boolean braced = pos < re.length() && re.charAt(pos) == '{'
+                    && !(pos + 1 < re.length() && Character.isDigit(re.charAt(pos + 1)));
+            if (c == 'N' || (braced && c != 'p' && c != 'P' && c != 'x' && c != 'Q')) {
+                throw new UnsupportedOperationException("escape \\" + c);
+            }
+            switch (c) {
+                case 'Q': {
+                    int end = re.indexOf("\\E", pos);
+                    String quoted = end < 0 ? re.substring(pos) : re.substring(pos, end);
+                    pos = end < 0 ? re.length() : end + 2;
+                    return Info.literal(lower(quoted));
+                }
+                case 'b': case 'B': case 'A': case 'z': case 'Z': case 'G':
+                    return Info.literal("");
+                case 'p': case 'P': case 'x':
+                    if (re.charAt(pos) == '{') pos = re.indexOf('}', pos) + 1;
+                    else pos += c == 'x' ? 2 : 1;
+                    return Info.anyChar();
+                case 'u':
+                    pos += 4;
+                    return Info.anyChar();
+                case 'c':
+                    pos++;
+                    return Info.anyChar();
+                case '0':
+                    while (pos < re.length() && re.charAt(pos) >= '0' && re.charAt(pos) <= '7') pos++;
+                    return Info.anyChar();
+                case 'k':
+                    pos = re.indexOf('>', pos) + 1;
+                    return Info.anything();
+                case 'R': case 'X':
+                    return Info.anything();
+                default:
+                    if (Character.isDigit(c)) {
+                        // Back reference
+                        while (pos < re.length() && Character.isDigit(re.charAt(pos))) pos++;
+                        return Info.anything();
+                    }
+                    // \d \w \s \t \n and friends: some single char
+                    return Info.anyChar();
+            }
+        }
+
+        // Skips a character class, including nested classes, escapes and \Q...\E quotes
+        private void skipClass() {
+            int depth = 1;
+            if (re.charAt(pos) == '^') pos++;
+            if (re.charAt(pos) == ']') pos++;
+            while (depth > 0) {
+                char c = re.charAt(pos++);
+                if (c == '\\') {
+                    if (re.charAt(pos++) == 'Q') {
+                        int end = re.indexOf("\\E", pos);
+                        if (end < 0) throw new UnsupportedOperationException("unterminated quote in class");
+                        pos = end + 2;
+                    }
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.logmatcher;
+
+import java.time.Duration;
+
+/**
+ * Limits on how much log history a matcher keeps. Any combination of limits may be set;
+ * history is dropped when any of them is exceeded.
+ *
+ * Eviction works on whole segments, so limits are honoured at segment granularity and
+ * the segment currently being written is never dropped.
+ *
+ * @param maxLogs  maximum number of retained log lines
+ * @param maxBytes maximum approximate heap bytes of retained lines and their postings
+ * @param maxAge   drop a segment once its newest line is older than this; null for no limit
+ */
+public record RetentionPolicy(long maxLogs, long maxBytes, Duration maxAge) {
+
+    public RetentionPolicy {
+        if (maxLogs <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Retention limits must be positive");
+        }
+        if (maxAge != null && (maxAge.isNegative() || maxAge.isZero())) {
+            throw new IllegalArgumentException("maxAge must be positive");
+        }
+    }
+
+    public static RetentionPolicy unbounded() {
+        return new RetentionPolicy(Long.MAX_VALUE, Long.MAX_VALUE, null);
+    }
+
+    public static RetentionPolicy maxLogs(long maxLogs) {
+        return unbounded().withMaxLogs(maxLogs);
+    }
+
+    public static RetentionPolicy maxBytes(long maxBytes) {
+        return unbounded().withMaxBytes(maxBytes);
+    }
+
+    public static RetentionPolicy maxAge(Duration maxAge) {
+        return unbounded().withMaxAge(maxAge);
+    }
+
+    public RetentionPolicy withMaxLogs(long maxLogs) {
+        return new RetentionPolicy(maxLogs, maxBytes, maxAge);
+    }
+
+    public RetentionPolicy withMaxBytes(long maxBytes) {
+        return new RetentionPolicy(maxLogs, maxBytes, maxAge);
+    }
+
+    public RetentionPolicy withMaxAge(Duration maxAge) {
+        return new RetentionPolicy(maxLogs, maxBytes, maxAge);
+    }
+}
@@ -0,0 +1,848 @@
+package org.example.logmatcher;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints in the style of Roaring bitmaps.
+ *
+ * Values are split by their high 16 bits into chunks of 65536. Each chunk is stored
+ * in whichever container is smallest for its contents:
+ * <ul>
+ *   <li>array  - sorted {@code char[]}, for up to 4096 values (2 bytes each)</li>
+ *   <li>bitmap - {@code long[1024]}, for dense chunks (fixed 8 KB)</li>
+ *   <li>run    - (start, length) pairs, for long consecutive ranges</li>
+ * </ul>
+ * Appending increasing values (the posting-list case) is amortized O(1).
+ * A chunk is run-optimized once appends move past it. Not thread-safe.
+ */
+public class RoaringBitmap {
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size = 0;
+
+    /**
+     * Adds a value; values must be non-negative.
+     */
+    public void add(int x) {
+        if (x < 0) {
+            throw new IllegalArgumentException("Negative value: " + x);
+        }
+        char high = (char) (x >>> 16);
+        char low = (char) x;
+        // Fast path: appending to the last chunk
+        if (size > 0 && keys[size - 1] == high) {
+            containers[size - 1] = containers[size - 1].add(low);
+            return;
+        }
+        int i = size > 0 && keys[size - 1] < high ? -(size + 1) : Arrays.binarySearch(keys, 0, size, high);
+        if (i >= 0) {
+            containers[i] = containers[i].add(low);
+            return;
+        }
+        int insertAt = -i - 1;
+        if (insertAt == size && size > 0) {
+            // The previous last chunk will not see appends any more
+            containers[size - 1] = containers[size - 1].optimize();
+        }
+        insertContainer(insertAt, high, new ArrayContainer().add(low));
+    }
+
+    public boolean contains(int x) {
+        if (x < 0) return false;
+        int i = Arrays.binarySearch(keys, 0, size, (char) (x >>> 16));
+        return i >= 0 && containers[i].contains((char) x);
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) total += containers[i].cardinality();
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Converts every chunk to its most compact container.
+     */
+    public void runOptimize() {
+        for (int i = 0; i < size; i++) containers[i] = containers[i].optimize();
+    }
+
+    /**
+     * Visits values in ascending order.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public int[] toArray() {
+        int[] out = new int[cardinality()];
+        int[] pos = {0};
+        forEach(v -> out[pos[0]++] = v);
+        return out;
+    }
+
+    /**
+     * Approximate heap footprint of the stored data in bytes.
+     */
+    public long sizeInBytes() {
+        long bytes = 16L + keys.length * 2L + containers.length * 4L;
+        for (int i = 0; i < size; i++) bytes += containers[i].sizeInBytes();
+        return bytes;
+    }
+
+    /**
+     * Returns the intersection of this and other as a new bitmap.
+     */
+    public RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container c = containers[i].and(other.containers[j]);
+                if (c.cardinality() > 0) result.insertContainer(result.size, keys[i], c);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the union of this and other as a new bitmap.
+     */
+    public RoaringBitmap or(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.insertContainer(result.size, keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.insertContainer(result.size, other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.insertContainer(result.size, keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of this that are not in other, as a new bitmap.
+     */
+    public RoaringBitmap andNot(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) j++;
+            Container c = j < other.size && other.keys[j] == keys[i]
+                    ? containers[i].andNot(other.containers[j])
+                    : containers[i].copy();
+            if (c.cardinality() > 0) result.insertContainer(result.size, keys[i], c);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a bitmap holding every value in [start, end).
+     */
+    public static RoaringBitmap range(int start, int end) {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid range [" + start + ", " + end + ")");
+        }
+        RoaringBitmap result = new RoaringBitmap();
+        for (int chunkStart = start; chunkStart < end; ) {
+            int key = chunkStart >>> 16;
+            int chunkEnd = Math.min(end, (key + 1) << 16);
+            RunContainer run = new RunContainer();
+            run.appendRange(chunkStart & 0xFFFF, (chunkEnd - 1) & 0xFFFF);
+            result.insertContainer(result.size, (char) key, run);
+            chunkStart = chunkEnd;
+        }
+        return result;
+    }
+
+    /**
+     * Intersects all bitmaps, smallest first, stopping as soon as the result is empty.
+     */
+    public static RoaringBitmap and(List<RoaringBitmap> bitmaps) {
+        if (bitmaps.isEmpty()) return new RoaringBitmap();
+        List<RoaringBitmap> bySize = new ArrayList<>(bitmaps);
+        bySize.sort(Comparator.comparingInt(RoaringBitmap::cardinality));
+        RoaringBitmap result = bySize.get(0);
+        if (bySize.size() == 1) return result.and(result);
+        for (int k = 1; k < bySize.size() && !result.isEmpty(); k++) {
+            result = result.and(bySize.get(k));
+        }
+        return result;
+    }
+
+    /**
+     * Number of bytes {@link #serialize} writes.
+     */
+    public int serializedSizeInBytes() {
+        int bytes = 4;
+        for (int i = 0; i < size; i++) bytes += 3 + containers[i].serializedSize();
+        return bytes;
+    }
+
+    /**
+     * Writes the chunk count, then per chunk its key, container type and contents.
+     */
+    public void serialize(ByteBuffer out) {
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.putChar(keys[i]);
+            containers[i].write(out);
+        }
+    }
+
+    /**
+     * Reads a bitmap written by {@link #serialize}, advancing the buffer past it.
+     */
+    public static RoaringBitmap deserialize(ByteBuffer in) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        int chunks = in.getInt();
+        for (int i = 0; i < chunks; i++) {
+            char key = in.getChar();
+            bitmap.insertContainer(bitmap.size, key, Container.read(in));
+        }
+        return bitmap;
+    }
+
+    /**
+     * Reads just the cardinality of a bitmap written by {@link #serialize}, from the
+     * container headers, without materializing it; advances the buffer past it.
+     */
+    public static int serializedCardinality(ByteBuffer in) {
+        int total = 0;
+        int chunks = in.getInt();
+        for (int i = 0; i < chunks; i++) {
+            in.getChar();
+            total += Container.skip(in);
+        }
+        return total;
+    }
+
+    private void insertContainer(int at, char key, Container c) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        keys[at] = key;
+        containers[at] = c;
+        size++;
+    }
+
+    // ---------------------------------------------------------------------
+    // Containers: each operation returns the (possibly converted) container
+    // ---------------------------------------------------------------------
+
+    abstract static class Container {
+        abstract Container add(char x);
+
+        abstract boolean contains(char x);
+
+        abstract int cardinality();
+
+        abstract void forEach(int base, IntConsumer action);
+
+        abstract long sizeInBytes();
+
+        abstract Container and(Container other);
+
+        abstract int runCount();
+
+        abstract Container copy();
+
+        Container or(Container other) {
+            if (this instanceof ArrayContainer a && other instanceof ArrayContainer b
+                    && a.card + b.card <= ARRAY_MAX) {
+                return ArrayContainer.merge(a, b);
+            }
+            BitmapContainer out = BitmapContainer.from(this);
+            out.orInPlace(other);
+            return out.shrink();
+        }
+
+        Container andNot(Container other) {
+            if (this instanceof ArrayContainer a) {
+                ArrayContainer out = new ArrayContainer();
+                out.values = new char[Math.max(4, a.card)];
+                for (int i = 0; i < a.card; i++) {
+                    if (!other.contains(a.values[i])) out.values[out.card++] = a.values[i];
+                }
+                return out;
+            }
+            BitmapContainer out = BitmapContainer.from(this);
+            out.andNotInPlace(other);
+            return out.shrink();
+        }
+
+        // Bytes written by write(), excluding the type byte
+        abstract int serializedSize();
+
+        // Type byte followed by the contents
+        abstract void write(ByteBuffer out);
+
+        static Container read(ByteBuffer in) {
+            byte type = in.get();
+            switch (type) {
+                case ArrayContainer.TYPE -> {
+                    ArrayContainer a = new ArrayContainer();
+                    a.card = in.getChar();
+                    a.values = new char[Math.max(4, a.card)];
+                    in.asCharBuffer().get(a.values, 0, a.card);
+                    in.position(in.position() + 2 * a.card);
+                    return a;
+                }
+                case BitmapContainer.TYPE -> {
+                    BitmapContainer b = new BitmapContainer();
+                    b.card = in.getInt();
+                    in.asLongBuffer().get(b.words);
+                    in.position(in.position() + 8 * BITMAP_WORDS);
+                    return b;
+                }
+                case RunContainer.TYPE -> {
+                    RunContainer r = new RunContainer();
+                    r.runCount = in.getChar();
+                    r.runs = new char[Math.max(4, 2 * r.runCount)];
+                    in.asCharBuffer().get(r.runs, 0, 2 * r.runCount);
+                    in.position(in.position() + 4 * r.runCount);
+                    for (int k = 0; k < r.runCount; k++) r.card += r.runs[2 * k + 1] + 1;
+                    return r;
+                }
+                default -> throw new IllegalArgumentException("Unknown container type " + type);
+            }
+        }
+
+        // Skips a container written by write(), returning its cardinality
+        static int skip(ByteBuffer in) {
+            byte type = in.get();
+            switch (type) {
+                case ArrayContainer.TYPE -> {
+                    int card = in.getChar();
+                    in.position(in.position() + 2 * card);
+                    return card;
+                }
+                case BitmapContainer.TYPE -> {
+                    int card = in.getInt();
+                    in.position(in.position() + 8 * BITMAP_WORDS);
+                    return card;
+                }
+                case RunContainer.TYPE -> {
+                    int runCount = in.getChar();
+                    int card = 0;
+                    for (int k = 0; k < runCount; k++) {
+                        in.getChar();
+                        card += in.getChar() + 1;
+                    }
+                    return card;
+                }
+                default -> throw new IllegalArgumentException("Unknown container type " + type);
+            }
+        }
+
+        // Smallest representation of the same values
+        Container optimize() {
+            int card = cardinality();
+            long runBytes = 4L * runCount();
+            long arrayBytes = 2L * card;
+            long bitmapBytes = 8L * BITMAP_WORDS;
+            if (runBytes < Math.min(arrayBytes, bitmapBytes)) {
+                return this instanceof RunContainer ? this : RunContainer.from(this);
+            }
+            if (card <= ARRAY_MAX) {
+                return this instanceof ArrayContainer ? this : ArrayContainer.from(this);
+            }
+            return this instanceof BitmapContainer ? this : BitmapContainer.from(this);
+        }
+    }
+
+    static final class ArrayContainer extends Container {
+        static final byte TYPE = 0;
+
+        char[] values = new char[4];
+        int card;
+
+        @Override
+        int serializedSize() {
+            return 2 + 2 * card;
+        }
+
+        @Override
+        void write(ByteBuffer out) {
+            out.put(TYPE);
+            out.putChar((char) card);
+            for (int i = 0; i < card; i++) out.putChar(values[i]);
+        }
+
+        static ArrayContainer from(Container c) {
+            ArrayContainer a = new ArrayContainer();
+            a.values = new char[Math.max(4, c.cardinality())];
+            c.forEach(0, v -> a.values[a.card++] = (char) v);
+            return a;
+        }
+
+        // Union of two sorted arrays
+        static ArrayContainer merge(ArrayContainer a, ArrayContainer b) {
+            ArrayContainer out = new ArrayContainer();
+            out.values = new char[Math.max(4, a.card + b.card)];
+            int i = 0, j = 0;
+            while (i < a.card || j < b.card) {
+                char x;
+                if (j == b.card || (i < a.card && a.values[i] < b.values[j])) {
+                    x = a.values[i++];
+                } else if (i == a.card || a.values[i] > b.values[j]) {
+                    x = b.values[j++];
+                } else {
+                    x = a.values[i++];
+                    j++;
+                }
+                out.values[out.card++] = x;
+            }
+            return out;
+        }
+
+        @Override
+        Container copy() {
+            ArrayContainer a = new ArrayContainer();
+            a.values = Arrays.copyOf(values, Math.max(4, card));
+            a.card = card;
+            return a;
+        }
+
+        @Override
+        Container add(char x) {
+            int i = (card > 0 && values[card - 1] < x) ? -(card + 1) : Arrays.binarySearch(values, 0, card, x);
+            if (i >= 0) return this;
+            if (card >= ARRAY_MAX) {
+                return BitmapContainer.from(this).add(x);
+            }
+            int at = -i - 1;
+            if (card == values.length) values = Arrays.copyOf(values, Math.min(ARRAY_MAX, card * 2));
+            System.arraycopy(values, at, values, at + 1, card - at);
+            values[at] = x;
+            card++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return Arrays.binarySearch(values, 0, card, x) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < card; i++) action.accept(base | values[i]);
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 16L + values.length * 2L;
+        }
+
+        @Override
+        int runCount() {
+            int runs = 0;
+            for (int i = 0; i < card; i++) {
+                if (i == 0 || values[i] != values[i - 1] + 1) runs++;
+            }
+            return runs;
+        }
+
+        @Override
+        Container and(Container other) {
+            ArrayContainer out = new ArrayContainer();
+            if (other instanceof ArrayContainer a) {
+                intersectArrays(this, a, out);
+            } else {
+                // Probe the (usually larger) bitmap/run container for each value
+                out.values = new char[Math.max(4, card)];
+                for (int i = 0; i < card; i++) {
+                    if (other.contains(values[i])) out.values[out.card++] = values[i];
+                }
+            }
+            return out;
+        }
+
+        // Galloping when one side is much smaller, linear merge otherwise
+        private static void intersectArrays(ArrayContainer a, ArrayContainer b, ArrayContainer out) {
+            if (a.card > b.card) {
+                ArrayContainer t = a;
+                a = b;
+                b = t;
+            }
+            out.values = new char[Math.max(4, a.card)];
+            if (a.card * 32 < b.card) {
+                int lo = 0;
+                for (int i = 0; i < a.card && lo < b.card; i++) {
+                    lo = gallop(b.values, lo, b.card, a.values[i]);
+                    if (lo < b.card && b.values[lo] == a.values[i]) out.values[out.card++] = a.values[i];
+                }
+                return;
+            }
+            int i = 0, j = 0;
+            while (i < a.card && j < b.card) {
+                char x = a.values[i], y = b.values[j];
+                if (x < y) {
+                    i++;
+                } else if (x > y) {
+                    j++;
+                } else {
+                    out.values[out.card++] = x;
+                    i++;
+                    j++;
+                }
+            }
+        }
+
+        // First index in [lo, end) with values[index] >= target, by exponential then binary search
+        static int gallop(char[] values, int lo, int end, char target) {
+            if (lo >= end || values[lo] >= target) return lo;
+            int step = 1;
+            int hi = lo + 1;
+            while (hi < end && values[hi] < target) {
+                lo = hi;
+                step <<= 1;
+                hi = lo + step;
+            }
+            hi = Math.min(hi, end);
+            // values[lo] < target, and values[hi] >= target or hi == end
+            while (lo + 1 < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[mid] < target) lo = mid;
+                else hi = mid;
+            }
+            return hi;
+        }
+    }
+
+    static final class BitmapContainer extends Container {
+        static final byte TYPE = 1;
+
+        final long[] words = new long[BITMAP_WORDS];
+        int card;
+
+        @Override
+        int serializedSize() {
+            return 4 + 8 * BITMAP_WORDS;
+        }
+
+        @Override
+        void write(ByteBuffer out) {
+            out.put(TYPE);
+            out.putInt(card);
+            for (long word : words) out.putLong(word);
+        }
+
+        static BitmapContainer from(Container c) {
+            BitmapContainer b = new BitmapContainer();
+            if (c instanceof BitmapContainer source) {
+                System.arraycopy(source.words, 0, b.words, 0, BITMAP_WORDS);
+            } else if (c instanceof RunContainer r) {
+                r.forEachRange(b::setRange);
+            } else {
+                c.forEach(0, v -> b.words[v >>> 6] |= 1L << v);
+            }
+            b.card = c.cardinality();
+            return b;
+        }
+
+        @Override
+        Container copy() {
+            return from(this);
+        }
+
+        void orInPlace(Container other) {
+            if (other instanceof BitmapContainer b) {
+                for (int w = 0; w < BITMAP_WORDS; w++) words[w] |= b.words[w];
+            } else if (other instanceof RunContainer r) {
+                r.forEachRange(this::setRange);
+            } else {
+                other.forEach(0, v -> words[v >>> 6] |= 1L << v);
+            }
+            recount();
+        }
+
+        void andNotInPlace(Container other) {
+            if (other instanceof BitmapContainer b) {
+                for (int w = 0; w < BITMAP_WORDS; w++) words[w] &= ~b.words[w];
+            } else if (other instanceof RunContainer r) {
+                r.forEachRange(this::clearRange);
+            } else {
+                other.forEach(0, v -> words[v >>> 6] &= ~(1L << v));
+            }
+            recount();
+        }
+
+        // Sets bits [start, end], inclusive; card is not maintained
+        private void setRange(int start, int end) {
+            for (int w = start >>> 6; w <= end >>> 6; w++) words[w] |= rangeMask(w, start, end);
+        }
+
+        private void clearRange(int start, int end) {
+            for (int w = start >>> 6; w <= end >>> 6; w++) words[w] &= ~rangeMask(w, start, end);
+        }
+
+        private static long rangeMask(int w, int start, int end) {
+            long mask = -1L;
+            if (w == start >>> 6) mask &= -1L << start;
+            if (w == end >>> 6) mask &= -1L >>> (63 - (end & 63));
+            return mask;
+        }
+
+        private void recount() {
+            card = 0;
+            for (long word : words) card += Long.bitCount(word);
+        }
+
+        Container shrink() {
+            return card <= ARRAY_MAX ? ArrayContainer.from(this) : this;
+        }
+
+        @Override
+        Container add(char x) {
+            long bit = 1L << x;
+            if ((words[x >>> 6] & bit) == 0) {
+                words[x >>> 6] |= bit;
+                card++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return (words[x >>> 6] & (1L << x)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 16L + BITMAP_WORDS * 8L;
+        }
+
+        @Override
+        int runCount() {
+            int runs = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = words[w];
+                // A run starts at each set bit whose lower neighbour is clear
+                long carry = w > 0 ? words[w - 1] >>> 63 : 0;
+                runs += Long.bitCount(word & ~((word << 1) | carry));
+            }
+            return runs;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitmapContainer out = new BitmapContainer();
+            if (other instanceof BitmapContainer b) {
+                // Word-wise AND
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w] & b.words[w];
+                    out.words[w] = word;
+                    out.card += Long.bitCount(word);
+                }
+            } else {
+                RunContainer r = (RunContainer) other;
+                for (int k = 0; k < r.runCount; k++) {
+                    int start = r.runs[2 * k];
+                    int end = start + r.runs[2 * k + 1]; // inclusive
+                    for (int w = start >>> 6; w <= end >>> 6; w++) {
+                        long word = words[w] & rangeMask(w, start, end);
+                        out.words[w] |= word;
+                        out.card += Long.bitCount(word);
+                    }
+                }
+            }
+            return out.card <= ARRAY_MAX ? ArrayContainer.from(out) : out;
+        }
+    }
+
+    static final class RunContainer extends Container {
+        static final byte TYPE = 2;
+
+        // Pairs of (start, length - 1)
+        char[] runs = new char[4];
+        int runCount;
+        int card;
+
+        @Override
+        int serializedSize() {
+            return 2 + 4 * runCount;
+        }
+
+        @Override
+        void write(ByteBuffer out) {
+            out.put(TYPE);
+            out.putChar((char) runCount);
+            for (int i = 0; i < 2 * runCount; i++) out.putChar(runs[i]);
+        }
+
+        static RunContainer from(Container c) {
+            RunContainer r = new RunContainer();
+            c.forEach(0, v -> r.append((char) v));
+            return r;
+        }
+
+        interface RangeConsumer {
+            void accept(int start, int end);
+        }
+
+        // Visits runs as inclusive [start, end] ranges
+        void forEachRange(RangeConsumer action) {
+            for (int k = 0; k < runCount; k++) {
+                int start = runs[2 * k];
+                action.accept(start, start + runs[2 * k + 1]);
+            }
+        }
+
+        @Override
+        Container copy() {
+            RunContainer r = new RunContainer();
+            r.runs = Arrays.copyOf(runs, Math.max(4, 2 * runCount));
+            r.runCount = runCount;
+            r.card = card;
+            return r;
+        }
+
+        private void append(char x) {
+            if (runCount > 0) {
+                int last = runs[2 * runCount - 2] + runs[2 * runCount - 1];
+                if (x == last + 1) {
+                    runs[2 * runCount - 1]++;
+                    card++;
+                    return;
+                }
+            }
+            if (2 * runCount == runs.length) runs = Arrays.copyOf(runs, runs.length * 2);
+            runs[2 * runCount] = x;
+            runs[2 * runCount + 1] = 0;
+            runCount++;
+            card++;
+        }
+
+        // Appends [start, end]; start must be past the last run
+        private void appendRange(int start, int end) {
+            if (2 * runCount == runs.length) runs = Arrays.copyOf(runs, runs.length * 2);
+            runs[2 * runCount] = (char) start;
+            runs[2 * runCount + 1] = (char) (end - start);
+            runCount++;
+            card += end - start + 1;
+        }
+
+        @Override
+        Container add(char x) {
+            if (contains(x)) return this;
+            if (runCount == 0 || x > runs[2 * runCount - 2] + runs[2 * runCount - 1]) {
+                append(x);
+                return this;
+            }
+            // Out-of-order insert: fall back to a container that supports it
+            Container c = card < ARRAY_MAX ? ArrayContainer.from(this) : BitmapContainer.from(this);
+            return c.add(x);
+        }
+
+        @Override
+        boolean contains(char x) {
+            // Last run whose start <= x
+            int lo = 0, hi = runCount - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runs[2 * mid] <= x) lo = mid + 1;
+                else hi = mid - 1;
+            }
+            return hi >= 0 && x <= runs[2 * hi] + runs[2 * hi + 1];
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int k = 0; k < runCount; k++) {
+                int start = runs[2 * k];
+                int end = start + runs[2 * k + 1];
+                for (int v = start; v <= end; v++) action.accept(base | v);
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 24L + runs.length * 2L;
+        }
+
+        @Override
+        int runCount() {
+            return runCount;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (!(other instanceof RunContainer r)) {
+                return other.and(this);
+            }
+            // Intersect two sorted interval lists
+            RunContainer out = new RunContainer();
+            int i = 0, j = 0;
+            while (i < runCount && j < r.runCount) {
+                int s1 = runs[2 * i], e1 = s1 + runs[2 * i + 1];
+                int s2 = r.runs[2 * j], e2 = s2 + r.runs[2 * j + 1];
+                int s = Math.max(s1, s2), e = Math.min(e1, e2);
+                if (s <= e) {
+                    out.appendRange(s, e);
+                }
+                if (e1 < e2) i++;
+                else j++;
+            }
+            return out;
+        }
+    }
+}
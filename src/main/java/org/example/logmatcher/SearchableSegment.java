@@ -0,0 +1,44 @@
+package org.example.logmatcher;
+
+/**
+ * Read side of a block of consecutive log lines, held on heap ({@link LogSegment})
+ * or in a memory-mapped file ({@link MappedLogSegment}).
+ */
+interface SearchableSegment {
+    interface HitConsumer {
+        void accept(long logId, String logLine);
+    }
+
+    long baseLogId();
+
+    int size();
+
+    // Approximate heap bytes held by this segment
+    long bytes();
+
+    long newestMillis();
+
+    /**
+     * Segment-local ids of the lines containing the term, or null if none do.
+     * The result must not be modified.
+     */
+    RoaringBitmap postings(int termId, TermDictionary dictionary);
+
+    /**
+     * Number of lines containing the term; may avoid materializing its postings.
+     */
+    default int postingCount(int termId, TermDictionary dictionary) {
+        RoaringBitmap p = postings(termId, dictionary);
+        return p == null ? 0 : p.cardinality();
+    }
+
+    String log(int localId);
+
+    /**
+     * Reports every line matching the plan, in ascending log-id order.
+     */
+    default void forEachMatch(QueryPlan plan, TermDictionary dictionary, HitConsumer consumer) {
+        long base = baseLogId();
+        plan.evaluate(this, dictionary).forEach(localId -> consumer.accept(base + localId, log(localId)));
+    }
+}
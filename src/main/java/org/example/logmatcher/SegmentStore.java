@@ -0,0 +1,73 @@
+package org.example.logmatcher;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Directory of immutable, memory-mapped segment files that lets a
+ * {@link StreamingLogMatcher} keep history beyond its heap and across restarts.
+ *
+ * Each full segment is written once as {@code segment-<first log id>.seg}; files
+ * appear atomically, so a crash never leaves a partial segment behind. Opening a
+ * store maps the existing files without re-indexing. A store belongs to one matcher.
+ */
+public final class SegmentStore {
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private final List<MappedLogSegment> existing;
+
+    private SegmentStore(Path directory, List<MappedLogSegment> existing) {
+        this.directory = directory;
+        this.existing = existing;
+    }
+
+    /**
+     * Opens (creating if needed) the store in the given directory and maps its segments.
+     */
+    public static SegmentStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<MappedLogSegment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX + ".tmp")) {
+                    // Left over from an interrupted write
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    segments.add(MappedLogSegment.open(file));
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(MappedLogSegment::baseLogId));
+        return new SegmentStore(directory, segments);
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    // Segments found when the store was opened, oldest first
+    List<MappedLogSegment> existingSegments() {
+        return existing;
+    }
+
+    MappedLogSegment persist(LogSegment segment) throws IOException {
+        String name = String.format("%s%020d%s", PREFIX, segment.baseLogId(), SUFFIX);
+        return MappedLogSegment.write(directory.resolve(name), segment);
+    }
+
+    // Best effort: a file that cannot be deleted is evicted again after a restart
+    void delete(MappedLogSegment segment) {
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException ignored) {
+        }
+    }
+}
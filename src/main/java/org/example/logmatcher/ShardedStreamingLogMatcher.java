@@ -0,0 +1,329 @@
+package org.example.logmatcher;
+
+import org.example.logmatcher.StreamingLogMatcher.LogCallback;
+import org.example.logmatcher.StreamingLogMatcher.Query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Multi-core variant of {@link StreamingLogMatcher}.
+ *
+ * Logs are assigned global ids in arrival order and dealt round-robin to N shards,
+ * each a single worker thread owning its own {@code StreamingLogMatcher} (and so its
+ * own {@code wordToLogIds} partition). Queries are replicated to every shard; their
+ * backfill runs on all shards in parallel and the results are merged.
+ *
+ * Every shard sees a query at the same point of the input, so a query matches
+ * exactly the logs accepted before it (backfill) and after it (forward matches).
+ * {@code acceptLog}/{@code acceptQuery} only enqueue work and may be called from
+ * any thread; use {@link #flush()} to wait for delivery.
+ */
+public class ShardedStreamingLogMatcher implements AutoCloseable {
+    /**
+     * Order in which matches reach the callback.
+     */
+    public enum DeliveryOrder {
+        // Callback runs on shard threads as matches are found; only per-shard order is kept.
+        // The callback must be thread-safe.
+        PER_SHARD,
+        // A single delivery thread replays matches in global log-id order, with each
+        // query's merged backfill delivered at the point the query was accepted
+        GLOBAL
+    }
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 8 * 1024;
+    private static final List<Match> NO_MATCHES = List.of();
+    private static final Object STOP = new Object();
+
+    private record Match(long logId, Query query, String logLine) {
+    }
+
+    private final Shard[] shards;
+    private final LogCallback callback;
+    private final DeliveryOrder order;
+
+    // GLOBAL mode: one ticket per submitted operation, in submission order
+    private final BlockingQueue<Object> tickets = new LinkedBlockingQueue<>();
+    private final Thread deliveryThread;
+
+    private long nextLogId = 0;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public ShardedStreamingLogMatcher(int shardCount, DeliveryOrder order, LogCallback callback) {
+        this(shardCount, order, DEFAULT_QUEUE_CAPACITY, callback);
+    }
+
+    /**
+     * @param shardCount    number of worker threads; must be > 0
+     * @param order         callback delivery order
+     * @param queueCapacity pending operations per shard before producers block; must be > 0
+     * @param callback      receives every match
+     */
+    public ShardedStreamingLogMatcher(int shardCount, DeliveryOrder order, int queueCapacity, LogCallback callback) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount must be positive");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        this.callback = callback;
+        this.order = order;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, queueCapacity);
+        }
+        if (order == DeliveryOrder.GLOBAL) {
+            deliveryThread = new Thread(this::deliverInOrder, "log-matcher-delivery");
+            deliveryThread.setDaemon(true);
+            deliveryThread.start();
+        } else {
+            deliveryThread = null;
+        }
+    }
+
+    /**
+     * Assigns the log the next global id and hands it to its shard.
+     */
+    public synchronized void acceptLog(String logLine) {
+        ensureOpen();
+        long logId = nextLogId++;
+        Shard shard = shards[(int) (logId % shards.length)];
+        shard.executor.execute(() -> shard.accept(logLine));
+        if (order == DeliveryOrder.GLOBAL) {
+            tickets.add(shard.index);
+        }
+    }
+
+    /**
+     * Registers the query on every shard and backfills it against all earlier logs.
+     */
+    public synchronized void acceptQuery(Query query) {
+        ensureOpen();
+        List<CompletableFuture<List<Match>>> parts = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            parts.add(CompletableFuture.supplyAsync(() -> shard.register(query), shard.executor));
+        }
+        if (order == DeliveryOrder.GLOBAL) {
+            tickets.add(CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(done -> merge(parts)));
+        }
+    }
+
+    /**
+     * Blocks until every operation submitted so far has been processed and delivered.
+     */
+    public void flush() throws InterruptedException {
+        CountDownLatch latch;
+        synchronized (this) {
+            ensureOpen();
+            boolean global = order == DeliveryOrder.GLOBAL;
+            latch = new CountDownLatch(global ? 1 : shards.length);
+            if (global) {
+                // Delivery thread reaches the latch only after everything before it
+                tickets.add(latch);
+            } else {
+                for (Shard shard : shards) {
+                    shard.executor.execute(latch::countDown);
+                }
+            }
+        }
+        latch.await();
+    }
+
+    /**
+     * Delivers pending work and stops all threads; only the first call does so.
+     * If interrupted while waiting, returns with the interrupt flag set; the
+     * threads still finish the pending work and stop in the background.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        // Work accepted before close is already queued; later calls see closed
+        synchronized (this) {
+            for (Shard shard : shards) {
+                shard.executor.shutdown();
+            }
+            if (deliveryThread != null) {
+                tickets.add(STOP);
+            }
+        }
+        try {
+            for (Shard shard : shards) {
+                shard.executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            if (deliveryThread != null) {
+                deliveryThread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("Matcher is closed");
+        }
+    }
+
+    // Backfill parts are sorted per shard; a full sort keeps this simple and stable
+    private static List<Match> merge(List<CompletableFuture<List<Match>>> parts) {
+        List<Match> all = new ArrayList<>();
+        for (CompletableFuture<List<Match>> part : parts) {
+            all.addAll(part.join());
+        }
+        all.sort(Comparator.comparingLong(Match::logId));
+        return all;
+    }
+
+    // GLOBAL mode: shard s owns log ids s, s+N, s+2N..., so each log ticket just
+    // names the shard whose next completed result is due
+    @SuppressWarnings("unchecked")
+    private void deliverInOrder() {
+        try {
+            while (true) {
+                Object ticket = tickets.take();
+                if (ticket == STOP) {
+                    return;
+                }
+                if (ticket instanceof Integer shardIndex) {
+                    deliver(shards[shardIndex].completed.take());
+                } else if (ticket instanceof CompletableFuture<?> backfill) {
+                    deliver(((CompletableFuture<List<Match>>) backfill).join());
+                } else if (ticket instanceof CountDownLatch latch) {
+                    latch.countDown();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver(List<Match> matches) {
+        for (Match m : matches) {
+            callback.onMatch(m.query(), m.logLine());
+        }
+    }
+
+    /**
+     * One partition: a single worker thread and the matcher it exclusively owns.
+     */
+    private final class Shard implements StreamingLogMatcher.MatchSink {
+        final int index;
+        final ThreadPoolExecutor executor;
+        final StreamingLogMatcher matcher = new StreamingLogMatcher(this);
+        // GLOBAL mode: per-log results, in this shard's log order
+        final BlockingQueue<List<Match>> completed;
+
+        // Non-null while matches are being collected instead of delivered directly
+        private List<Match> collecting;
+
+        Shard(int index, int queueCapacity) {
+            this.index = index;
+            this.completed = new ArrayBlockingQueue<>(queueCapacity);
+            this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread t = new Thread(runnable, "log-matcher-shard-" + index);
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    (runnable, pool) -> {
+                        // Block the producer instead of dropping work when the shard falls behind
+                        if (pool.isShutdown()) {
+                            throw new RejectedExecutionException("Shard " + index + " is shut down");
+                        }
+                        try {
+                            pool.getQueue().put(runnable);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException(e);
+                        }
+                    });
+        }
+
+        void accept(String logLine) {
+            if (order == DeliveryOrder.PER_SHARD) {
+                matcher.acceptLog(logLine);
+                return;
+            }
+            collecting = null;
+            try {
+                matcher.acceptLog(logLine);
+            } finally {
+                // The delivery thread waits for one result per log ticket, so always post one
+                List<Match> result = collecting == null ? NO_MATCHES : collecting;
+                collecting = null;
+                putUninterruptibly(result);
+            }
+        }
+
+        // An interrupt must not drop the result; it is re-asserted once the result is queued
+        private void putUninterruptibly(List<Match> result) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    completed.put(result);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<Match> register(Query query) {
+            if (order == DeliveryOrder.PER_SHARD) {
+                matcher.acceptQuery(query);
+                return NO_MATCHES;
+            }
+            collecting = new ArrayList<>();
+            matcher.acceptQuery(query);
+            List<Match> result = collecting;
+            collecting = null;
+            return result;
+        }
+
+        @Override
+        public void onMatch(Query query, long localId, String logLine) {
+            if (order == DeliveryOrder.PER_SHARD) {
+                callback.onMatch(query, logLine);
+                return;
+            }
+            if (collecting == null) {
+                collecting = new ArrayList<>(2);
+            }
+            collecting.add(new Match(localId * shards.length + index, query, logLine));
+        }
+    }
+
+    /**
+     * Demo usage.
+     */
+    public static void main(String[] args) {
+        try (ShardedStreamingLogMatcher matcher = new ShardedStreamingLogMatcher(4, DeliveryOrder.GLOBAL,
+                (q, l) -> System.out.printf("[%s] matched: %s%n", q.type(), l))) {
+            matcher.acceptLog("2025-04-19 INFO Service started");
+            matcher.acceptLog("2025-04-19 ERROR Disk failure on /dev/sda");
+            matcher.acceptLog("2025-04-19 WARN High memory usage");
+            matcher.acceptLog("2025-04-19 ERROR Disk quota exceeded");
+
+            matcher.acceptQuery(Query.parse("ERROR: disk"));
+            matcher.acceptQuery(Query.parse("WARN memory"));
+
+            matcher.acceptLog("2025-04-19 ERROR Disk failure on /dev/sdb");
+        }
+    }
+}
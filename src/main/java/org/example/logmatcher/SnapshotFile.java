@@ -0,0 +1,270 @@
+package org.example.logmatcher;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Versioned binary container for matcher snapshots.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   header   magic, format version, kind, reserved int, payload length (long)
+ *   payload  blocks, each a long length followed by that many bytes
+ * </pre>
+ * A file appears atomically (temporary file, fsync, rename), so a crash never
+ * leaves a partial snapshot behind. Restoring maps each block read-only on its
+ * own, so large blocks such as log segments are paged in only when touched and
+ * the file as a whole is not limited to 2 GB.
+ */
+public final class SnapshotFile {
+    static final int MAGIC = 0x4C534E50; // "LSNP"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    // Snapshot kinds; a file can only be restored by the matcher type that wrote it
+    public static final int STREAMING_LOG_MATCHER = 1;
+    public static final int STREAM_MATCHER = 2;
+    public static final int TAG_FILTER = 3;
+
+    /**
+     * Writes the snapshot payload, block by block.
+     */
+    @FunctionalInterface
+    public interface Payload {
+        void writeTo(Output out) throws IOException;
+    }
+
+    /**
+     * Writes the contents of one block.
+     */
+    @FunctionalInterface
+    public interface Block {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot on a new daemon thread. The payload must only read state
+     * captured for it, since the caller carries on meanwhile.
+     *
+     * @return completes with {@code file} once it is durable
+     */
+    public static CompletableFuture<Path> writeInBackground(Path file, int kind, Payload payload) {
+        CompletableFuture<Path> result = new CompletableFuture<>();
+        Thread writer = new Thread(() -> {
+            try {
+                write(file, kind, payload);
+                result.complete(file);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, "matcher-snapshot");
+        writer.setDaemon(true);
+        writer.start();
+        return result;
+    }
+
+    /**
+     * Writes a snapshot to {@code file} via a temporary file and an atomic rename.
+     */
+    public static void write(Path file, int kind, Payload payload) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(kind).putInt(0).putLong(0).flip();
+            while (header.hasRemaining()) channel.write(header);
+
+            Output out = new Output(channel);
+            payload.writeTo(out);
+            out.data.flush();
+            // Payload length last, so a file cut short by a failed write is detected
+            writeLong(channel, 16, out.position - HEADER_BYTES);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Opens a snapshot of the given kind for reading its blocks in order.
+     *
+     * @throws IOException if the file is not a complete snapshot of that kind and version
+     */
+    public static Input open(Path file, int kind) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported snapshot version " + header.getInt(4) + ": " + file);
+            }
+            if (header.getInt(8) != kind) {
+                throw new IOException("Snapshot of kind " + header.getInt(8) + ", expected " + kind + ": " + file);
+            }
+            if (HEADER_BYTES + header.getLong(16) != channel.size()) {
+                throw new IOException("Truncated snapshot file: " + file);
+            }
+            return new Input(file, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sequential writer of length-prefixed blocks.
+     */
+    public static final class Output {
+        private final FileChannel channel;
+        private final DataOutputStream data;
+        private long position = HEADER_BYTES;
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+            this.data = new DataOutputStream(new BufferedOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    write(ByteBuffer.wrap(b, off, len));
+                }
+
+                private void write(ByteBuffer bytes) throws IOException {
+                    position += bytes.remaining();
+                    while (bytes.hasRemaining()) channel.write(bytes);
+                }
+            }, 64 * 1024));
+        }
+
+        /**
+         * Writes a block whose length is known only once its contents are written.
+         */
+        public void block(Block block) throws IOException {
+            data.flush();
+            long start = position;
+            data.writeLong(0);
+            block.writeTo(data);
+            data.flush();
+            writeLong(channel, start, position - start - 8);
+        }
+
+        /**
+         * Writes the remaining bytes of the buffer as one block.
+         */
+        public void block(ByteBuffer bytes) throws IOException {
+            data.writeLong(bytes.remaining());
+            data.flush();
+            position += bytes.remaining();
+            while (bytes.hasRemaining()) channel.write(bytes);
+        }
+    }
+
+    /**
+     * Sequential reader of the blocks of a snapshot. Mappings handed out stay
+     * valid after the input is closed.
+     */
+    public static final class Input implements AutoCloseable {
+        private final Path file;
+        private final FileChannel channel;
+        private long position = HEADER_BYTES;
+
+        private Input(Path file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        public boolean hasNext() throws IOException {
+            return position < channel.size();
+        }
+
+        /**
+         * Maps the next block read-only; the buffer spans exactly the block.
+         */
+        public ByteBuffer nextBlock() throws IOException {
+            ByteBuffer length = ByteBuffer.allocate(8);
+            readFully(channel, length, position);
+            long size = length.getLong(0);
+            if (length.hasRemaining() || size < 0 || position + 8 + size > channel.size()) {
+                throw new IOException("Corrupt snapshot block at " + position + ": " + file);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot block too large to map: " + file);
+            }
+            ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position + 8, size);
+            position += 8 + size;
+            return block;
+        }
+
+        public Path file() {
+            return file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes (unlike {@link DataOutput#writeUTF},
+     * not limited to 64 KB).
+     */
+    public static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeInts(DataOutput out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) out.writeInt(v);
+    }
+
+    public static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * values.length);
+        return values;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, position + dst.position()) < 0) return;
+        }
+    }
+
+    private static void writeLong(FileChannel channel, long position, long value) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(8).putLong(0, value);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, position + bytes.position());
+        }
+    }
+}
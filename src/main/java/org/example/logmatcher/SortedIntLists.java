@@ -0,0 +1,75 @@
+package org.example.logmatcher;
+
+/**
+ * Intersection of ascending int arrays, used as posting lists.
+ *
+ * Lists are intersected rarest first and each candidate is located in the next
+ * list by galloping (exponential then binary search) from the previous match, so
+ * the cost is about {@code smallest * log(larger / smallest)} per list rather than
+ * the sum of the list lengths, and stops as soon as the result is empty.
+ */
+public final class SortedIntLists {
+
+    private SortedIntLists() {
+    }
+
+    /**
+     * Writes the values common to {@code lists[i][0 .. sizes[i])} for i below
+     * {@code count} to {@code out} (cleared first), ascending; returns their number.
+     * Each list must be strictly ascending. {@code lists} and {@code sizes} are reordered.
+     */
+    public static int intersect(int[][] lists, int[] sizes, int count, IntArrayList out) {
+        out.clear();
+        if (count == 0) return 0;
+        // Rarest first; a handful of keywords, so insertion sort
+        for (int i = 1; i < count; i++) {
+            for (int j = i; j > 0 && sizes[j] < sizes[j - 1]; j--) {
+                int[] list = lists[j];
+                lists[j] = lists[j - 1];
+                lists[j - 1] = list;
+                int size = sizes[j];
+                sizes[j] = sizes[j - 1];
+                sizes[j - 1] = size;
+            }
+        }
+        int[] rarest = lists[0];
+        for (int i = 0; i < sizes[0]; i++) out.add(rarest[i]);
+
+        for (int l = 1; l < count && !out.isEmpty(); l++) {
+            int[] list = lists[l];
+            int size = sizes[l];
+            int kept = 0, pos = 0;
+            for (int i = 0, n = out.size(); i < n; i++) {
+                int value = out.get(i);
+                pos = gallop(list, pos, size, value);
+                if (pos == size) break;
+                if (list[pos] == value) out.set(kept++, value);
+            }
+            out.truncate(kept);
+        }
+        return out.size();
+    }
+
+    /**
+     * Index of the first element of {@code a[from .. to)} that is at least {@code target},
+     * or {@code to} if there is none. Probes 1, 2, 4, ... ahead, then binary searches
+     * the last step, so nearby targets are found in a few comparisons.
+     */
+    public static int gallop(int[] a, int from, int to, int target) {
+        if (from >= to || a[from] >= target) return from;
+        int lo = from, step = 1;
+        // Invariant: a[lo] < target
+        while (lo + step < to && a[lo + step] < target) {
+            lo += step;
+            step <<= 1;
+        }
+        int hi = Math.min(lo + step, to);
+        // a[lo] < target <= a[hi] (or hi == to)
+        while (lo + 1 < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < target) lo = mid;
+            else hi = mid;
+        }
+        return hi;
+    }
+}
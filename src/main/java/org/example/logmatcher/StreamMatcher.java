@@ -1,13 +1,80 @@
 package org.example.logmatcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Matches a stream of "Q: " queries and "L: " log lines. A query is a set of
+ * whitespace-separated words, all of which must occur in a line; words inside
+ * double quotes form a phrase that must occur as consecutive words, e.g.
+ * {@code Q: "loading failed" snapshot}.
+ *
+ * Queries are indexed word by word together with each word's position in its
+ * phrase, and a line is matched in one left-to-right pass over its words, so a
+ * phrase costs about as much as the same words as a plain query.
+ */
 public class StreamMatcher {
 
-    private final Map<String, Set<Integer>> invertedIndex = new HashMap<>(); // word → query IDs
-    private final Map<Integer, Integer> queryWordCount = new HashMap<>();    // query ID → word count
+    /**
+     * Compact result of {@link #matchBatch}: for each matching line, its index in the
+     * batch and its matched query ids (ascending), stored as flat int arrays.
+     */
+    public static final class MatchBatch {
+        private final int[] lineIndexes;
+        private final int[] offsets;   // queryIds of match i are [offsets[i], offsets[i + 1])
+        private final int[] queryIds;
+
+        MatchBatch(int[] lineIndexes, int[] offsets, int[] queryIds) {
+            this.lineIndexes = lineIndexes;
+            this.offsets = offsets;
+            this.queryIds = queryIds;
+        }
+
+        // Number of matching lines
+        public int size() {
+            return lineIndexes.length;
+        }
+
+        public int lineIndex(int match) {
+            return lineIndexes[match];
+        }
+
+        public int queryCount(int match) {
+            return offsets[match + 1] - offsets[match];
+        }
+
+        public int queryId(int match, int k) {
+            return queryIds[offsets[match] + k];
+        }
+
+        public int[] queryIds(int match) {
+            return Arrays.copyOfRange(queryIds, offsets[match], offsets[match + 1]);
+        }
+    }
+
+    // Posting lists compacted per processed line while cancellations are pending
+    private static final int COMPACTION_SLICE = 4;
+
+    private final TermDictionary dictionary = new TermDictionary();     // word → term id
+    // term id → (query ID, word index in the query), IDs from 1
+    private final QueryPostingIndex index = new QueryPostingIndex(1);
+    private QueryShape[] shapes = new QueryShape[16];                   // query ID → phrase layout
     private final List<String> output = new ArrayList<>();
-    private int nextQueryId = 1;
+
+    // Per-line counting state, indexed by query ID; an entry is live only if its epoch is current
+    private int[] hitEpoch = new int[16];
+    private int[] hitCount = new int[16];
+    private int epoch = 0;
+    private final IntArrayList linePositions = new IntArrayList();    // word position → term id or -1
+    private final IntArrayList touched = new IntArrayList();
+    private final IntArrayList matched = new IntArrayList();
+    private final TokenBuffer tokens = new TokenBuffer();
+
+    private MatcherMetrics metrics = MatcherMetrics.NOOP;
+    private boolean metricsEnabled = false;
 
     public void processStream(List<String> stream) {
         for (String line : stream) {
@@ -15,72 +82,358 @@ public class StreamMatcher {
                 processQuery(line.substring(3).trim());
             } else if (line.startsWith("L: ")) {
                 processLog(line.substring(3).trim());
+            } else if (line.startsWith("U: ")) {
+                processUnsubscribe(line.substring(3).trim());
             }
         }
     }
 
+    /**
+     * Removes a query. Its ID may be handed to a later query once the index
+     * has been compacted.
+     *
+     * @return false if no live query has this ID
+     */
+    public boolean cancelQuery(int queryId) {
+        if (!index.cancel(queryId)) {
+            return false;
+        }
+        if (metricsEnabled) {
+            metrics.onQueryCancelled(queryId);
+        }
+        return true;
+    }
+
+    public int liveQueryCount() {
+        return index.liveQueryCount();
+    }
+
+    /**
+     * Reports per-line and per-query work to the given metrics; {@link MatcherMetrics#NOOP} disables it.
+     */
+    public void setMetrics(MatcherMetrics metrics) {
+        this.metrics = metrics;
+        this.metricsEnabled = metrics.enabled();
+    }
+
+    /**
+     * Matches a chunk of log lines (without the "L: " prefix) against the registered
+     * queries. Does not touch {@link #getOutput()}.
+     */
+    public MatchBatch matchBatch(List<? extends CharSequence> logs) {
+        IntArrayList lineIndexes = new IntArrayList();
+        IntArrayList offsets = new IntArrayList();
+        IntArrayList queryIds = new IntArrayList();
+        offsets.add(0);
+        for (int i = 0; i < logs.size(); i++) {
+            if (matchLine(logs.get(i)) == 0) continue;
+            lineIndexes.add(i);
+            for (int k = 0, n = matched.size(); k < n; k++) {
+                queryIds.add(matched.get(k));
+            }
+            offsets.add(queryIds.size());
+        }
+        return new MatchBatch(lineIndexes.toArray(), offsets.toArray(), queryIds.toArray());
+    }
+
     // Process a query line: tokenize, index words, store query metadata
     private void processQuery(String query) {
-        int queryId = nextQueryId++;
-        Set<String> words = tokenize(query);
+        long start = metricsEnabled ? System.nanoTime() : 0;
+        int queryId = install(QueryShape.parse(query, dictionary, tokens), -1);
+        output.add("ACK: " + query + "; ID=" + queryId);
+        if (metricsEnabled) {
+            metrics.onQuery(System.nanoTime() - start, 0);
+        }
+    }
 
-        // Build inverted index
-        for (String word : words) {
-            invertedIndex.computeIfAbsent(word, k -> new HashSet<>()).add(queryId);
+    // Indexes the shape's words under a new query ID or, when restoring, the given one
+    private int install(QueryShape shape, int fixedId) {
+        int[] elements = new int[shape.terms.length];
+        for (int e = 0; e < elements.length; e++) elements[e] = e;
+        int queryId = fixedId;
+        if (fixedId < 0) {
+            queryId = index.register(shape.terms, elements);
+        } else {
+            index.registerAt(fixedId, shape.terms, elements);
         }
 
-        // Track word count per query for full match check
-        queryWordCount.put(queryId, words.size());
+        if (queryId >= hitEpoch.length) {
+            int capacity = Math.max(queryId + 1, hitEpoch.length * 2);
+            hitEpoch = Arrays.copyOf(hitEpoch, capacity);
+            hitCount = Arrays.copyOf(hitCount, capacity);
+            shapes = Arrays.copyOf(shapes, capacity);
+        }
+        shapes[queryId] = shape;
+        return queryId;
+    }
 
-        output.add("ACK: " + query + "; ID=" + queryId);
-        System.out.println("output "+ output);
-        System.out.println(query);
-        System.out.println(invertedIndex);
-        System.out.println("queryWordCount " +queryWordCount);
+    /**
+     * Writes a snapshot of the term dictionary, the live queries' phrases and the
+     * query ID counter to {@code file}. Capturing copies only references; encoding
+     * and writing happen on a background thread while the stream goes on. The output
+     * list is not part of the snapshot.
+     *
+     * @return completes with {@code file} once the snapshot is durable
+     */
+    public CompletableFuture<Path> snapshot(Path file) {
+        String[] terms = dictionary.terms();
+        int idLimit = index.queryIdLimit();
+        // Shapes are never modified apart from their per-line state, which is not written
+        QueryShape[] live = new QueryShape[idLimit];
+        int liveCount = 0;
+        for (int id = 1; id < idLimit; id++) {
+            if (index.isLive(id)) {
+                live[id] = shapes[id];
+                liveCount++;
+            }
+        }
+        int count = liveCount;
+        return SnapshotFile.writeInBackground(file, SnapshotFile.STREAM_MATCHER, out -> out.block(data -> {
+            data.writeInt(terms.length);
+            for (String term : terms) SnapshotFile.writeString(data, term);
+            data.writeInt(idLimit);
+            data.writeInt(count);
+            for (int id = 1; id < idLimit; id++) {
+                QueryShape shape = live[id];
+                if (shape == null) continue;
+                data.writeInt(id);
+                data.writeInt(shape.phraseCount);
+                for (int w = 0, start = 0; w < shape.terms.length; w++) {
+                    if (!shape.last[w]) continue;
+                    SnapshotFile.writeInts(data, Arrays.copyOfRange(shape.terms, start, w + 1));
+                    start = w + 1;
+                }
+            }
+        }));
+    }
+
+    /**
+     * Restores a matcher from a {@link #snapshot}: queries keep their IDs and their
+     * postings are rebuilt from the stored term ids, without parsing any text.
+     */
+    public static StreamMatcher restore(Path file) throws IOException {
+        StreamMatcher matcher = new StreamMatcher();
+        try (SnapshotFile.Input in = SnapshotFile.open(file, SnapshotFile.STREAM_MATCHER)) {
+            ByteBuffer data = in.nextBlock();
+            for (int id = 0, n = data.getInt(); id < n; id++) {
+                if (matcher.dictionary.intern(SnapshotFile.readString(data)) != id) {
+                    throw new IOException("Duplicate term in snapshot: " + file);
+                }
+            }
+            int idLimit = data.getInt();
+            for (int i = 0, n = data.getInt(); i < n; i++) {
+                int queryId = data.getInt();
+                List<int[]> phrases = new ArrayList<>();
+                for (int p = 0, count = data.getInt(); p < count; p++) {
+                    phrases.add(SnapshotFile.readInts(data));
+                }
+                matcher.install(new QueryShape(phrases), queryId);
+            }
+            matcher.index.restoreIds(idLimit);
+        }
+        return matcher;
+    }
+
+    // Process an unsubscribe line; unknown or malformed IDs are ignored
+    private void processUnsubscribe(String id) {
+        try {
+            int queryId = Integer.parseInt(id);
+            if (cancelQuery(queryId)) {
+                output.add("UNSUB: ID=" + queryId);
+            }
+        } catch (NumberFormatException ignored) {
+        }
     }
 
     // Process a log line: match against queries and generate output
     private void processLog(String log) {
-        Set<String> words = tokenize(log);
-        Map<Integer, Integer> matchCounter = countMatches(words);
+        if (matchLine(log) == 0) return;
+        StringBuilder sb = new StringBuilder("M: ").append(log).append("; Q=");
+        for (int i = 0; i < matched.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(matched.get(i));
+        }
+        output.add(sb.toString());
+    }
+
+    // Walk the line's words left to right. Each posting is one word of one query
+    // phrase; it advances only if the previous word of its phrase matched at the
+    // previous position, and a phrase's last word completes the phrase. Queries
+    // whose phrases all completed match. A plain word is a one-word phrase, so
+    // this is the bag-of-words count with one extra check per posting.
+    // Work is proportional to the postings touched, and nothing is allocated
+    // unless the reusable buffers need to grow.
+    // Leaves the matched query IDs, ascending, in `matched` and returns their count.
+    private int matchLine(CharSequence log) {
+        long start = metricsEnabled ? System.nanoTime() : 0;
+        index.compact(COMPACTION_SLICE);
+        if (++epoch == 0) {
+            Arrays.fill(hitEpoch, 0);
+            for (QueryShape shape : shapes) {
+                if (shape != null) shape.resetEpochs();
+            }
+            epoch = 1;
+        }
+        linePositions.clear();
+        touched.clear();
+        matched.clear();
+        tokenize(log, linePositions);
 
-        List<Integer> fullyMatched = findFullyMatchedQueries(matchCounter);
-        if (!fullyMatched.isEmpty()) {
-            String matchedOutput = fullyMatched.stream()
-                    .map(String::valueOf)
-                    .sorted()
-                    .collect(Collectors.joining(","));
-            output.add("M: " + log + "; Q=" + matchedOutput);
+        for (int pos = 0, words = linePositions.size(); pos < words; pos++) {
+            int termId = linePositions.get(pos);
+            if (termId < 0) continue;
+            IntArrayList queryIds = index.postings(termId);
+            if (queryIds == null) continue;
+            IntArrayList elements = index.payloads(termId);
+            // Backwards, i.e. later phrase words first, so a phrase like "a a" sees
+            // its first word's state from before this position
+            for (int k = queryIds.size() - 1; k >= 0; k--) {
+                int queryId = queryIds.get(k);
+                // Cancelled but not yet compacted
+                if (!index.isLive(queryId)) continue;
+                QueryShape shape = shapes[queryId];
+                if (!shape.advance(elements.get(k), pos, epoch)) continue;
+                if (hitEpoch[queryId] != epoch) {
+                    hitEpoch[queryId] = epoch;
+                    hitCount[queryId] = 0;
+                    touched.add(queryId);
+                }
+                hitCount[queryId]++;
+            }
+        }
+
+        // Return query IDs that matched all their phrases
+        for (int i = 0, n = touched.size(); i < n; i++) {
+            int queryId = touched.get(i);
+            if (hitCount[queryId] == shapes[queryId].phraseCount) {
+                matched.add(queryId);
+            }
         }
+        matched.sort();
+        if (metricsEnabled) {
+            metrics.onLine(System.nanoTime() - start, touched.size(), matched.size());
+            for (int i = 0, n = matched.size(); i < n; i++) {
+                metrics.onQueryHit(matched.get(i));
+            }
+        }
+        return matched.size();
     }
 
-    // Tokenize a string into lowercase words
-    private Set<String> tokenize(String text) {
-        return new HashSet<>(Arrays.asList(text.toLowerCase().split("\\s+")));
+    // Tokenize a line into lowercase words (split on whitespace), appending one
+    // entry per word: its term id, or -1 for a word no query uses (it still
+    // takes up a position, so it breaks phrases).
+    private void tokenize(CharSequence text, IntArrayList out) {
+        if (text.length() == 0) {
+            // "".split("\\s+") yields a single empty word
+            out.add(dictionary.lookup(""));
+            return;
+        }
+        tokens.clear();
+        Tokenizer.WHITESPACE.tokenize(text, tokens);
+        char[] chars = tokens.chars();
+        for (int t = 0, n = tokens.size(); t < n; t++) {
+            out.add(dictionary.lookup(chars, tokens.charOffset(t), tokens.length(t)));
+        }
     }
 
-    // Count how many words from each query are matched in this log
-    private Map<Integer, Integer> countMatches(Set<String> wordsInLog) {
-        Map<Integer, Integer> counter = new HashMap<>();
-        for (String word : wordsInLog) {
-            for (int queryId : invertedIndex.getOrDefault(word, Set.of())) {
-                counter.put(queryId, counter.getOrDefault(queryId, 0) + 1);
+    /**
+     * Phrase layout of one query plus its per-line phrase progress. Words are
+     * numbered across all phrases in order.
+     */
+    private static final class QueryShape {
+        final int[] terms;          // word → term id
+        final boolean[] first;      // word starts its phrase
+        final boolean[] last;       // word ends its phrase
+        final int[] phraseOf;       // word → phrase index
+        final int phraseCount;
+
+        // Last position each word matched at, valid if its epoch is current
+        final int[] matchedPos;
+        final int[] matchedEpoch;
+        final int[] phraseDoneEpoch;
+
+        private QueryShape(List<int[]> phrases) {
+            int words = 0;
+            for (int[] phrase : phrases) words += phrase.length;
+            terms = new int[words];
+            first = new boolean[words];
+            last = new boolean[words];
+            phraseOf = new int[words];
+            phraseCount = phrases.size();
+            int w = 0;
+            for (int p = 0; p < phrases.size(); p++) {
+                int[] phrase = phrases.get(p);
+                for (int k = 0; k < phrase.length; k++, w++) {
+                    terms[w] = phrase[k];
+                    first[w] = k == 0;
+                    last[w] = k == phrase.length - 1;
+                    phraseOf[w] = p;
+                }
             }
+            matchedPos = new int[words];
+            matchedEpoch = new int[words];
+            phraseDoneEpoch = new int[phraseCount];
         }
-        return counter;
-    }
 
-    // Return query IDs that matched all their words
-    private List<Integer> findFullyMatchedQueries(Map<Integer, Integer> counter) {
-        List<Integer> matched = new ArrayList<>();
-        for (Map.Entry<Integer, Integer> entry : counter.entrySet()) {
-            int queryId = entry.getKey();
-            int matchedWords = entry.getValue();
-            if (matchedWords == queryWordCount.get(queryId)) {
-                matched.add(queryId);
+        /**
+         * Records that word {@code w} occurs at {@code pos}; returns true if this
+         * completes its phrase for the first time on this line.
+         */
+        boolean advance(int w, int pos, int epoch) {
+            if (!first[w] && (matchedEpoch[w - 1] != epoch || matchedPos[w - 1] != pos - 1)) {
+                return false;
             }
+            if (!last[w]) {
+                matchedEpoch[w] = epoch;
+                matchedPos[w] = pos;
+                return false;
+            }
+            int p = phraseOf[w];
+            if (phraseDoneEpoch[p] == epoch) return false;
+            phraseDoneEpoch[p] = epoch;
+            return true;
+        }
+
+        void resetEpochs() {
+            Arrays.fill(matchedEpoch, 0);
+            Arrays.fill(phraseDoneEpoch, 0);
+        }
+
+        // Split a query into phrases: quoted runs of words, and single unquoted words.
+        // Repeated phrases count once. A query without words is the empty word,
+        // like "".split("\\s+").
+        static QueryShape parse(String query, TermDictionary dictionary, TokenBuffer tokens) {
+            List<int[]> phrases = new ArrayList<>();
+            boolean inQuotes = false;
+            for (int from = 0, n = query.length(); from <= n; inQuotes = !inQuotes) {
+                int to = query.indexOf('"', from);
+                if (to < 0) to = n;
+                tokens.clear();
+                Tokenizer.WHITESPACE.tokenize(query.subSequence(from, to), tokens);
+                char[] chars = tokens.chars();
+                int[] termIds = new int[tokens.size()];
+                for (int t = 0; t < termIds.length; t++) {
+                    termIds[t] = dictionary.intern(chars, tokens.charOffset(t), tokens.length(t));
+                }
+                if (inQuotes) {
+                    if (termIds.length > 0) addPhrase(phrases, termIds);
+                } else {
+                    for (int termId : termIds) addPhrase(phrases, new int[]{termId});
+                }
+                from = to + 1;
+            }
+            if (phrases.isEmpty()) {
+                addPhrase(phrases, new int[]{dictionary.intern("")});
+            }
+            return new QueryShape(phrases);
+        }
+
+        private static void addPhrase(List<int[]> phrases, int[] phrase) {
+            for (int[] existing : phrases) {
+                if (Arrays.equals(existing, phrase)) return;
+            }
+            phrases.add(phrase);
         }
-        return matched;
     }
 
     public List<String> getOutput() {
@@ -106,4 +459,3 @@ public class StreamMatcher {
         matcher.getOutput().forEach(System.out::println);
     }
 }
-
@@ -1,18 +1,57 @@
 package org.example.logmatcher;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntPredicate;
 
 /**
  * Optimized StreamingLogMatcher using inverted indexes for fast, sublinear matching.
- * Maps words to log IDs and query IDs (integers) to reduce memory footprint.
+ * Query words are interned to int term ids and the query index is keyed by them;
+ * a log line's words are only looked up, since no other word can route it. Each
+ * segment interns the words of its own lines, so under retention the vocabulary
+ * held stays bounded even when lines carry ids, numbers or timestamps.
+ *
+ * With a {@link SegmentStore}, every full segment is written to disk and read back
+ * through a memory mapping, so backfill covers history far larger than the heap and
+ * a new instance on the same store serves queries over it right away.
+ * {@link #snapshot} and {@link #restore} do the same for the complete state,
+ * queries included, without a store.
  */
-public class StreamingLogMatcher {
+public class StreamingLogMatcher implements AutoCloseable {
     /**
-     * Represents a search query with a type and keywords.
+     * Represents a search query with a type, its keywords and the boolean
+     * expression over them. The keywords are the expression's
+     * {@linkplain QueryExpression#positiveWords() positive words}; negated words
+     * are excluded, so for {@code upload NOT retry} they are just {@code [upload]}.
      */
-    public record Query(String type, Set<String> keywords) {
+    public record Query(String type, Set<String> keywords, QueryExpression expression) {
         /**
-         * Parses raw input "TYPE: kw1 kw2 ..." or "TYPE kw1 kw2 ..." into a Query.
+         * @throws IllegalArgumentException if the keywords are not the expression's positive words
+         */
+        public Query {
+            if (!keywords.equals(expression.positiveWords())) {
+                throw new IllegalArgumentException("Keywords " + keywords + " disagree with " + expression);
+            }
+        }
+
+        /**
+         * Query matching logs that contain all keywords.
+         */
+        public Query(String type, Set<String> keywords) {
+            this(type, keywords, QueryExpression.allOf(keywords));
+        }
+
+        /**
+         * Parses raw input "TYPE: expr" or "TYPE expr" into a Query, where expr
+         * uses the {@link QueryExpression} syntax, e.g.
+         * {@code "ERROR: disk (full OR quota) NOT tmp"}.
          */
         public static Query parse(String raw) {
             int idx = raw.indexOf(':');
@@ -25,13 +64,8 @@ public class StreamingLogMatcher {
                     ? raw.split("\\s+", 2)[1].trim()
                     : "";
 
-            Set<String> kws = new HashSet<>();
-            if (!remainder.isEmpty()) {
-                for (String w : remainder.toLowerCase().split("\\W+")) {
-                    if (!w.isEmpty()) kws.add(w);
-                }
-            }
-            return new Query(type, Collections.unmodifiableSet(kws));
+            QueryExpression expression = QueryExpression.parse(remainder);
+            return new Query(type, expression.positiveWords(), expression);
         }
     }
 
@@ -42,94 +76,794 @@ public class StreamingLogMatcher {
         void onMatch(Query query, String logLine);
     }
 
-    // Storage for logs and queries
-    private final List<String> logs = new ArrayList<>();
-    private final List<Query> queries = new ArrayList<>();
+    /**
+     * A retained log line matching a query.
+     */
+    public record Hit(long logId, String logLine) {
+    }
 
-    // Inverted index: word -> set of log indices
-    private final Map<String, Set<Integer>> wordToLogIds = new HashMap<>();
-    // Inverted index: word -> set of query indices
-    private final Map<String, Set<Integer>> wordToQueryIds = new HashMap<>();
+    /**
+     * Position in a query's backfill: the next page holds matching logs older than
+     * {@code beforeLogId}. Cursors stay valid as logs arrive or are evicted; a page
+     * then simply skips what is gone.
+     */
+    public record BackfillCursor(int queryId, Query query, long beforeLogId) {
+    }
 
-    private final LogCallback callback;
+    /**
+     * Backfill hits, newest first. {@code next} is null once no older hits remain.
+     */
+    public record BackfillPage(int queryId, List<Hit> hits, BackfillCursor next) {
+        public boolean hasMore() {
+            return next != null;
+        }
+    }
 
     /**
-     * Constructs the matcher with the given callback.
+     * Internal variant of {@link LogCallback} that also receives the log id,
+     * used by wrappers that need to order or merge matches.
+     */
+    interface MatchSink {
+        void onMatch(Query query, long logId, String logLine);
+    }
+
+    // Logs per segment; also the granularity of retention
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024;
+    // Posting lists compacted per accepted log while cancellations are pending
+    private static final int COMPACTION_SLICE = 4;
+
+    // Retained logs in segments, oldest first
+    private final ArrayDeque<SearchableSegment> segments = new ArrayDeque<>();
+    // Newest segment, receiving appends; null until the first log after a persist
+    private LogSegment head;
+    // Query id -> query and its compiled plan, null for free ids
+    private Query[] queries = new Query[16];
+    private QueryPlan[] plans = new QueryPlan[16];
+    // Query id -> route-term hits a line needs before the plan is checked
+    private int[] queryNeededHits = new int[16];
+    // Query id -> whether those hits alone decide the match
+    private boolean[] queryRouteIsExact = new boolean[16];
+    // Partition -> queries no term can route (e.g. "NOT debug"); checked against every line of the partition
+    private IntArrayList[] unroutedQueries = {new IntArrayList()};
+    // Query id -> its partition
+    private int[] queryPartition = new int[16];
+
+    // Level routing, off while null. Queries are partitioned by type; partition 0 holds
+    // untyped queries and is checked for every line, partition p > 0 only for lines of that level.
+    // Without routing everything is in partition 0 and postings are keyed by term id.
+    private LevelExtractor levelExtractor;
+    private final Map<String, Integer> partitionsByType = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    // Partition -> term id -> posting key in queryIndex, or -1
+    private int[][] partitionKeys = {new int[0]};
+    private int nextRouteKey = 0;
+    // Level -> the "#level" term indexed with each line of that level, for typed backfill
+    private final Map<String, String> levelTerms = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    // Query word <-> term id; segments resolve these to their own term ids by word.
+    // Term id -> live queries using the word; a word is removed when its last query is cancelled
+    private final TermDictionary dictionary = new TermDictionary();
+    private int[] termRefs = new int[16];
+    // Inverted index: route term id -> query ids, plus each query's distinct route terms
+    private final QueryPostingIndex queryIndex = new QueryPostingIndex(0);
+
+    // Per-line scratch state, reused across calls
+    private final TokenBuffer tokens = new TokenBuffer();
+    private final IntArrayList lineTerms = new IntArrayList();
+    private int[] termSeenEpoch = new int[64];
+    private int[] queryHitEpoch = new int[16];
+    private int[] queryHitCount = new int[16];
+    private final IntArrayList touchedQueries = new IntArrayList();
+    private final IntArrayList matchedQueries = new IntArrayList();
+    private int epoch = 0;
+    private final IntPredicate lineHasTerm =
+            termId -> termId < termSeenEpoch.length && termSeenEpoch[termId] == epoch;
+
+    private final MatchSink sink;
+    private final RetentionPolicy retention;
+    private final int segmentSize;
+    private final Clock clock;
+    private final SegmentStore store;
+
+    private long nextLogId = 0;
+    private long retainedLogs = 0;
+    private long retainedBytes = 0;
+
+    private MatcherMetrics metrics = MatcherMetrics.NOOP;
+    private boolean metricsEnabled = false;
+    private long backfillMatches;
+
+    /**
+     * Constructs the matcher with the given callback, keeping all history.
      */
     public StreamingLogMatcher(LogCallback callback) {
-        this.callback = callback;
+        this(callback, RetentionPolicy.unbounded());
+    }
+
+    /**
+     * Constructs the matcher with the given callback and retention limits.
+     */
+    public StreamingLogMatcher(LogCallback callback, RetentionPolicy retention) {
+        this(callback, retention, DEFAULT_SEGMENT_SIZE, Clock.systemUTC());
+    }
+
+    /**
+     * @param segmentSize logs per segment; smaller segments evict more precisely
+     * @param clock       time source for age-based retention
+     */
+    public StreamingLogMatcher(LogCallback callback, RetentionPolicy retention, int segmentSize, Clock clock) {
+        this(callback, retention, segmentSize, clock, null);
+    }
+
+    /**
+     * Constructs the matcher over a segment store, resuming the history it holds.
+     * Retention also applies to stored segments; evicted segment files are deleted.
+     */
+    public StreamingLogMatcher(LogCallback callback, RetentionPolicy retention, SegmentStore store) {
+        this(callback, retention, DEFAULT_SEGMENT_SIZE, Clock.systemUTC(), store);
+    }
+
+    /**
+     * @param store where full segments are persisted, or null to keep everything on heap
+     */
+    public StreamingLogMatcher(LogCallback callback, RetentionPolicy retention, int segmentSize, Clock clock,
+                               SegmentStore store) {
+        this((query, logId, logLine) -> callback.onMatch(query, logLine), retention, segmentSize, clock, store);
+    }
+
+    StreamingLogMatcher(MatchSink sink) {
+        this(sink, RetentionPolicy.unbounded(), DEFAULT_SEGMENT_SIZE, Clock.systemUTC(), null);
+    }
+
+    StreamingLogMatcher(MatchSink sink, RetentionPolicy retention, int segmentSize, Clock clock, SegmentStore store) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("segmentSize must be positive");
+        }
+        this.sink = sink;
+        this.retention = retention;
+        this.segmentSize = segmentSize;
+        this.clock = clock;
+        this.store = store;
+        if (store != null) {
+            for (MappedLogSegment segment : store.existingSegments()) {
+                segments.addLast(segment);
+                retainedLogs += segment.size();
+                retainedBytes += segment.bytes();
+                nextLogId = segment.baseLogId() + segment.size();
+            }
+            evictExpired(clock.millis());
+        }
     }
 
     /**
      * Accepts a new log line: index and match against relevant queries.
      */
     public void acceptLog(String logLine) {
-        int logId = logs.size();
-        logs.add(logLine);
+        long start = metricsEnabled ? System.nanoTime() : 0;
+        long now = clock.millis();
+        if (head == null || head.isFull()) {
+            head = new LogSegment(nextLogId, segmentSize);
+            segments.addLast(head);
+        }
 
-        // Extract words and index log
-        Set<String> words = extractWords(logLine);
-        indexWords(words, logId, wordToLogIds);
+        queryIndex.compact(COMPACTION_SLICE);
+
+        // Extract distinct term ids and index log
+        extractTerms(logLine);
+        int partition = 0;
+        String levelTerm = null;
+        if (levelExtractor != null) {
+            String level = levelExtractor.extract(logLine);
+            if (level != null) {
+                levelTerm = levelTerms.computeIfAbsent(level, StreamingLogMatcher::levelTerm);
+                partition = partitionsByType.getOrDefault(level, 0);
+            }
+        }
+        long bytesBefore = head.bytes();
+        long logId = head.append(logLine, tokens, levelTerm, now);
+        nextLogId++;
+        retainedLogs++;
+        retainedBytes += head.bytes() - bytesBefore;
+        if (store != null && head.isFull()) {
+            persistHead();
+        }
 
-        // Find candidate queries by union of query sets for each word
-        Set<Integer> candidateIds = new HashSet<>();
-        for (String w : words) {
-            Set<Integer> qIds = wordToQueryIds.get(w);
-            if (qIds != null) candidateIds.addAll(qIds);
+        // Count, per candidate query, how many of its route terms this line contains;
+        // a line only reaches untyped queries and those of its own level
+        countRouteHits(levelExtractor == null ? null : partitionKeys[0]);
+        if (partition > 0) {
+            countRouteHits(partitionKeys[partition]);
         }
 
-        // Verify each candidate query ID
-        for (Integer qId : candidateIds) {
-            Query q = queries.get(qId);
-            if (words.containsAll(q.keywords())) {
-                callback.onMatch(q, logLine);
+        // Only candidates with enough route hits reach their plan; deliver in query-id order
+        for (int i = 0, n = touchedQueries.size(); i < n; i++) {
+            int qId = touchedQueries.get(i);
+            if (queryHitCount[qId] >= queryNeededHits[qId]
+                    && (queryRouteIsExact[qId] || plans[qId].matches(lineHasTerm))) {
+                matchedQueries.add(qId);
+            }
+        }
+        int unroutedChecked = checkUnrouted(unroutedQueries[0]);
+        if (partition > 0) {
+            unroutedChecked += checkUnrouted(unroutedQueries[partition]);
+        }
+        matchedQueries.sort();
+        for (int i = 0, n = matchedQueries.size(); i < n; i++) {
+            sink.onMatch(queries[matchedQueries.get(i)], logId, logLine);
+        }
+
+        evictExpired(now);
+        if (metricsEnabled) {
+            metrics.onLine(System.nanoTime() - start, touchedQueries.size() + unroutedChecked,
+                    matchedQueries.size());
+            for (int i = 0, n = matchedQueries.size(); i < n; i++) {
+                metrics.onQueryHit(matchedQueries.get(i));
             }
         }
     }
 
+    // Counts route-term hits of the line's terms; keys maps term ids to posting keys, null for identity
+    private void countRouteHits(int[] keys) {
+        for (int i = 0, n = lineTerms.size(); i < n; i++) {
+            int termId = lineTerms.get(i);
+            int key = termId;
+            if (keys != null) {
+                if (termId >= keys.length || keys[termId] < 0) continue;
+                key = keys[termId];
+            }
+            IntArrayList qIds = queryIndex.postings(key);
+            if (qIds == null) continue;
+            for (int k = 0, m = qIds.size(); k < m; k++) {
+                int qId = qIds.get(k);
+                // Cancelled but not yet compacted
+                if (!queryIndex.isLive(qId)) continue;
+                if (queryHitEpoch[qId] != epoch) {
+                    queryHitEpoch[qId] = epoch;
+                    queryHitCount[qId] = 0;
+                    touchedQueries.add(qId);
+                }
+                queryHitCount[qId]++;
+            }
+        }
+    }
+
+    private int checkUnrouted(IntArrayList qIds) {
+        for (int i = 0, n = qIds.size(); i < n; i++) {
+            int qId = qIds.get(i);
+            if (plans[qId].matches(lineHasTerm)) {
+                matchedQueries.add(qId);
+            }
+        }
+        return qIds.size();
+    }
+
     /**
-     * Accepts a new query: index and match against past logs.
+     * Accepts a new query: compile its plan, index it for routing and match it
+     * against retained past logs.
+     *
+     * @return the query id, for {@link #cancelQuery}; ids of cancelled queries are reused
      */
-    public void acceptQuery(Query query) {
-        int queryId = queries.size();
-        queries.add(query);
+    public int acceptQuery(Query query) {
+        long start = metricsEnabled ? System.nanoTime() : 0;
+        int queryId = install(query, -1);
+        QueryPlan plan = plans[queryId];
+        int partition = queryPartition[queryId];
+
+        // Backfill segment by segment, oldest first; no keywords matches every log.
+        // Typed queries only see logs indexed with their level
+        TermDictionary backfillTerms = partition == 0 ? dictionary : new TermDictionary();
+        QueryPlan backfillPlan = partition == 0 ? plan : backfillPlan(query, backfillTerms);
+        evictExpired(clock.millis());
+        backfillMatches = 0;
+        for (SearchableSegment segment : segments) {
+            segment.forEachMatch(backfillPlan, backfillTerms, (logId, logLine) -> {
+                backfillMatches++;
+                sink.onMatch(query, logId, logLine);
+            });
+        }
+        if (metricsEnabled) {
+            metrics.onQuery(System.nanoTime() - start, backfillMatches);
+        }
+        return queryId;
+    }
 
-        Set<String> kws = query.keywords();
-        indexWords(kws, queryId, wordToQueryIds);
+    /**
+     * Accepts a new query like {@link #acceptQuery(Query)}, but returns at most
+     * {@code backfillLimit} of its past matches, newest first, instead of sending all
+     * of them to the callback. Older hits are only searched when the returned
+     * cursor is passed to {@link #backfill}. A limit of 0 searches nothing, e.g. to
+     * combine with {@link #countBackfill} or {@link #estimateBackfill}.
+     */
+    public BackfillPage acceptQuery(Query query, int backfillLimit) {
+        if (backfillLimit < 0) {
+            throw new IllegalArgumentException("backfillLimit must not be negative");
+        }
+        long start = metricsEnabled ? System.nanoTime() : 0;
+        int queryId = install(query, -1);
+        BackfillPage page = backfill(new BackfillCursor(queryId, query, nextLogId), backfillLimit);
+        if (metricsEnabled) {
+            metrics.onQuery(System.nanoTime() - start, page.hits().size());
+        }
+        return page;
+    }
 
-        // If no keywords, match all logs
-        if (kws.isEmpty()) {
-            for (String log : logs) {
-                callback.onMatch(query, log);
+    /**
+     * Returns the next page of at most {@code limit} backfill hits, newest first,
+     * searching segments only until the page is full.
+     */
+    public BackfillPage backfill(BackfillCursor cursor, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        if (limit == 0) {
+            return new BackfillPage(cursor.queryId(), List.of(), cursor);
+        }
+        evictExpired(clock.millis());
+        TermDictionary terms = new TermDictionary();
+        QueryPlan plan = backfillPlan(cursor.query(), terms);
+        long before = cursor.beforeLogId();
+        List<Hit> hits = new ArrayList<>(Math.min(limit, 256));
+        boolean more = false;
+        Iterator<SearchableSegment> newestFirst = segments.descendingIterator();
+        scan:
+        while (newestFirst.hasNext()) {
+            SearchableSegment segment = newestFirst.next();
+            long base = segment.baseLogId();
+            if (base >= before) continue;
+            int[] localIds = plan.evaluate(segment, terms).toArray();
+            for (int i = localIds.length - 1; i >= 0; i--) {
+                long logId = base + localIds[i];
+                if (logId >= before) continue;
+                if (hits.size() == limit) {
+                    more = true;
+                    break scan;
+                }
+                hits.add(new Hit(logId, segment.log(localIds[i])));
             }
-            return;
         }
+        BackfillCursor next = more
+                ? new BackfillCursor(cursor.queryId(), cursor.query(), hits.get(hits.size() - 1).logId())
+                : null;
+        return new BackfillPage(cursor.queryId(), hits, next);
+    }
 
-        // Intersect log ID sets for keywords
-        Iterator<String> it = kws.iterator();
-        Set<Integer> hits = new HashSet<>(
-                wordToLogIds.getOrDefault(it.next(), Collections.emptySet()));
-        while (it.hasNext() && !hits.isEmpty()) {
-            hits.retainAll(wordToLogIds.getOrDefault(it.next(), Collections.emptySet()));
+    /**
+     * Exact number of retained logs the query's backfill would return. Intersects
+     * postings per segment but reads no log lines.
+     */
+    public long countBackfill(Query query) {
+        evictExpired(clock.millis());
+        TermDictionary terms = new TermDictionary();
+        QueryPlan plan = backfillPlan(query, terms);
+        long count = 0;
+        for (SearchableSegment segment : segments) {
+            count += plan.evaluate(segment, terms).cardinality();
         }
-        for (Integer logId : hits) {
-            callback.onMatch(query, logs.get(logId));
+        return count;
+    }
+
+    /**
+     * Upper bound on {@link #countBackfill}, from posting list sizes alone; exact for
+     * single-word queries. Much cheaper for broad queries over stored segments.
+     */
+    public long estimateBackfill(Query query) {
+        evictExpired(clock.millis());
+        TermDictionary terms = new TermDictionary();
+        QueryPlan plan = backfillPlan(query, terms);
+        long estimate = 0;
+        for (SearchableSegment segment : segments) {
+            estimate += plan.estimate(segment, terms);
         }
+        return estimate;
     }
 
-    // Helper to extract unique lowercase words from a line
-    private static Set<String> extractWords(String line) {
-        Set<String> words = new HashSet<>();
-        for (String w : line.toLowerCase().split("\\W+")) {
-            if (!w.isEmpty()) words.add(w);
+    // Plan over retained logs; typed queries only see logs indexed with their level.
+    // Compiled into a throwaway dictionary, since segments resolve terms by word:
+    // searching must not leave its words (or level terms) in the matcher-wide one
+    private QueryPlan backfillPlan(Query query, TermDictionary terms) {
+        QueryExpression expression = query.expression();
+        if (isTyped(query.type())) {
+            expression = new QueryExpression.And(List.of(
+                    expression, new QueryExpression.Term(levelTerm(query.type().trim()))));
         }
-        return words;
+        return QueryPlan.compile(expression, terms);
     }
 
-    // Generic indexer: map each word to the given item index
-    private static void indexWords(Set<String> words, int id, Map<String, Set<Integer>> index) {
-        for (String w : words) {
-            index.computeIfAbsent(w, k -> new HashSet<>()).add(id);
+    // Compiles the query and indexes it for forward matching, under a new id or,
+    // when restoring, under the given one
+    private int install(Query query, int fixedId) {
+        QueryPlan plan = QueryPlan.compile(query.expression(), dictionary);
+        for (String word : query.expression().words()) {
+            int termId = dictionary.lookup(word);
+            if (termId >= termRefs.length) {
+                termRefs = Arrays.copyOf(termRefs, Math.max(termId + 1, termRefs.length * 2));
+            }
+            termRefs[termId]++;
+        }
+        int[] routeTerms = plan.routeTerms();
+        boolean unrouted = plan.isForwardMatchable() && routeTerms == null;
+        int partition = partitionOf(query.type());
+        // Queries without words are only backfilled, as before
+        int[] keys = plan.isForwardMatchable() && !unrouted ? routeKeys(partition, routeTerms) : new int[0];
+        int queryId = fixedId;
+        if (fixedId < 0) {
+            queryId = queryIndex.register(keys);
+        } else {
+            queryIndex.registerAt(fixedId, keys, null);
+        }
+        if (queryId >= queries.length) {
+            int capacity = Math.max(queryId + 1, queries.length * 2);
+            queries = Arrays.copyOf(queries, capacity);
+            plans = Arrays.copyOf(plans, capacity);
+            queryNeededHits = Arrays.copyOf(queryNeededHits, capacity);
+            queryRouteIsExact = Arrays.copyOf(queryRouteIsExact, capacity);
+            queryHitEpoch = Arrays.copyOf(queryHitEpoch, capacity);
+            queryHitCount = Arrays.copyOf(queryHitCount, capacity);
+            queryPartition = Arrays.copyOf(queryPartition, capacity);
+        }
+        queries[queryId] = query;
+        queryPartition[queryId] = partition;
+        plans[queryId] = plan;
+        queryNeededHits[queryId] = plan.routeRequiresAll() ? routeTerms.length : 1;
+        queryRouteIsExact[queryId] = plan.routeIsExact();
+        if (unrouted) {
+            unroutedQueries[partition].add(queryId);
+        }
+        return queryId;
+    }
+
+    /**
+     * Stops forward matching for the query. Its postings are removed incrementally
+     * by later {@link #acceptLog} calls, after which the id is reused. Words no
+     * other live query uses leave the term dictionary right away.
+     *
+     * @return false if no live query has this id
+     */
+    public boolean cancelQuery(int queryId) {
+        if (!queryIndex.cancel(queryId)) {
+            return false;
+        }
+        if (metricsEnabled) {
+            metrics.onQueryCancelled(queryId);
+        }
+        for (String word : queries[queryId].expression().words()) {
+            int termId = dictionary.lookup(word);
+            if (--termRefs[termId] == 0) {
+                // Stale postings under the id only name cancelled queries, which isLive skips
+                dictionary.remove(termId);
+            }
+        }
+        queries[queryId] = null;
+        plans[queryId] = null;
+        IntArrayList unrouted = unroutedQueries[queryPartition[queryId]];
+        for (int i = 0; i < unrouted.size(); i++) {
+            if (unrouted.get(i) == queryId) {
+                unrouted.set(i, unrouted.get(unrouted.size() - 1));
+                unrouted.removeLast();
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Turns on level routing: each line is only checked against untyped queries
+     * (blank or "*" type) and queries whose type equals the line's level.
+     * Typed queries are backfilled only over logs accepted while routing was on.
+     *
+     * @throws IllegalStateException if queries were already accepted
+     */
+    public void setLevelExtractor(LevelExtractor extractor) {
+        if (queryIndex.queryIdLimit() > 0) {
+            throw new IllegalStateException("Set the level extractor before accepting queries");
+        }
+        this.levelExtractor = extractor;
+    }
+
+    // Partition of a query type, created on first use; 0 if routing is off or the type is blank or "*"
+    private int partitionOf(String type) {
+        if (!isTyped(type)) return 0;
+        String key = type.trim();
+        Integer partition = partitionsByType.get(key);
+        if (partition == null) {
+            partition = partitionKeys.length;
+            partitionsByType.put(key, partition);
+            partitionKeys = Arrays.copyOf(partitionKeys, partition + 1);
+            partitionKeys[partition] = new int[0];
+            unroutedQueries = Arrays.copyOf(unroutedQueries, partition + 1);
+            unroutedQueries[partition] = new IntArrayList();
+        }
+        return partition;
+    }
+
+    private boolean isTyped(String type) {
+        if (levelExtractor == null || type == null) return false;
+        String key = type.trim();
+        return !key.isEmpty() && !key.equals("*");
+    }
+
+    // Posting keys of the partition's route terms; term ids themselves while routing is off
+    private int[] routeKeys(int partition, int[] termIds) {
+        if (levelExtractor == null) return termIds;
+        int[] keys = new int[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            int termId = termIds[i];
+            int[] map = partitionKeys[partition];
+            if (termId >= map.length) {
+                int oldLength = map.length;
+                map = Arrays.copyOf(map, Math.max(termId + 1, oldLength * 2));
+                Arrays.fill(map, oldLength, map.length, -1);
+                partitionKeys[partition] = map;
+            }
+            if (map[termId] < 0) {
+                map[termId] = nextRouteKey++;
+            }
+            keys[i] = map[termId];
+        }
+        return keys;
+    }
+
+    // '#' never occurs in a word, so level terms cannot collide with log words
+    private static String levelTerm(String level) {
+        return "#" + level.toLowerCase(Locale.ROOT);
+    }
+
+    public int liveQueryCount() {
+        return queryIndex.liveQueryCount();
+    }
+
+    /**
+     * Reports per-line and per-query work to the given metrics; {@link MatcherMetrics#NOOP} disables it.
+     */
+    public void setMetrics(MatcherMetrics metrics) {
+        this.metrics = metrics;
+        this.metricsEnabled = metrics.enabled();
+    }
+
+    /**
+     * Number of log lines currently retained.
+     */
+    public long retainedLogCount() {
+        return retainedLogs;
+    }
+
+    /**
+     * Approximate heap bytes of retained log lines and their postings.
+     * Stored segments only count their small in-memory handle.
+     */
+    public long retainedBytes() {
+        return retainedBytes;
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    // Words interned matcher-wide: those of live queries; log words live in their segments
+    int termCount() {
+        return dictionary.size();
+    }
+
+    /**
+     * Writes the partly filled head segment to the store, if any, so that it
+     * survives a restart. Without a store this does nothing.
+     */
+    @Override
+    public void close() {
+        if (store != null && head != null && head.size() > 0) {
+            persistHead();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the retained logs, their postings, the query term dictionary,
+     * the live queries with their ids and the log id counter to {@code file}.
+     *
+     * The partly filled head segment is sealed (or persisted, with a store) so that
+     * everything captured is immutable; capturing only copies references and the
+     * term array, and encoding and writing happen on a background thread while
+     * logs and queries keep arriving. Must be called from the owner thread.
+     *
+     * @return completes with {@code file} once the snapshot is durable
+     */
+    public CompletableFuture<Path> snapshot(Path file) {
+        if (head != null && head.size() > 0) {
+            if (store != null) {
+                persistHead();
+            } else {
+                long bytesBefore = head.bytes();
+                head.seal();
+                retainedBytes += head.bytes() - bytesBefore;
+                head = null;
+            }
+        }
+        List<SearchableSegment> captured = new ArrayList<>(segments);
+        if (head != null) {
+            // Empty, and about to receive appends
+            captured.remove(head);
+        }
+        List<String> terms = new ArrayList<>(dictionary.size());
+        for (String term : dictionary.terms()) {
+            if (term != null) terms.add(term);
+        }
+        int idLimit = queryIndex.queryIdLimit();
+        Query[] liveQueries = Arrays.copyOf(queries, idLimit);
+        long logIdCounter = nextLogId;
+
+        return SnapshotFile.writeInBackground(file, SnapshotFile.STREAMING_LOG_MATCHER, out -> {
+            out.block(data -> {
+                data.writeLong(logIdCounter);
+                data.writeInt(terms.size());
+                for (String term : terms) SnapshotFile.writeString(data, term);
+                data.writeInt(idLimit);
+                int live = 0;
+                for (Query q : liveQueries) if (q != null) live++;
+                data.writeInt(live);
+                for (int id = 0; id < idLimit; id++) {
+                    if (liveQueries[id] == null) continue;
+                    data.writeInt(id);
+                    SnapshotFile.writeString(data, liveQueries[id].type());
+                    writeExpression(data, liveQueries[id].expression());
+                }
+            });
+            // Stored segments are copied verbatim; heap segments are encoded in the same format
+            for (SearchableSegment segment : captured) {
+                out.block(segment instanceof MappedLogSegment stored
+                        ? stored.contents()
+                        : MappedLogSegment.encode((LogSegment) segment));
+            }
+        });
+    }
+
+    /**
+     * Restores a matcher from a {@link #snapshot}. Segments stay in the memory-mapped
+     * file and are paged in as queries touch them; queries keep their ids and are
+     * not backfilled again. The matcher keeps new logs on heap.
+     *
+     * @param levelExtractor level routing to resume with, or null
+     */
+    public static StreamingLogMatcher restore(Path file, LogCallback callback, RetentionPolicy retention,
+                                              LevelExtractor levelExtractor) throws IOException {
+        StreamingLogMatcher matcher = new StreamingLogMatcher(callback, retention);
+        matcher.levelExtractor = levelExtractor;
+        try (SnapshotFile.Input in = SnapshotFile.open(file, SnapshotFile.STREAMING_LOG_MATCHER)) {
+            ByteBuffer data = in.nextBlock();
+            long logIdCounter = data.getLong();
+            // Segments resolve terms by word, so query terms are simply interned again by install
+            for (int i = 0, n = data.getInt(); i < n; i++) {
+                SnapshotFile.readString(data);
+            }
+            int idLimit = data.getInt();
+            for (int i = 0, n = data.getInt(); i < n; i++) {
+                int id = data.getInt();
+                String type = SnapshotFile.readString(data);
+                QueryExpression expression = readExpression(data);
+                matcher.install(new Query(type, expression.positiveWords(), expression), id);
+            }
+            matcher.queryIndex.restoreIds(idLimit);
+
+            while (in.hasNext()) {
+                MappedLogSegment segment = MappedLogSegment.embedded(file, in.nextBlock());
+                matcher.segments.addLast(segment);
+                matcher.retainedLogs += segment.size();
+                matcher.retainedBytes += segment.bytes();
+            }
+            matcher.nextLogId = logIdCounter;
+        }
+        matcher.evictExpired(matcher.clock.millis());
+        return matcher;
+    }
+
+    public static StreamingLogMatcher restore(Path file, LogCallback callback) throws IOException {
+        return restore(file, callback, RetentionPolicy.unbounded(), null);
+    }
+
+    // Expression tree in prefix order: a tag byte, then a word or the operands
+    private static void writeExpression(DataOutputStream out, QueryExpression e) throws IOException {
+        if (e instanceof QueryExpression.Term t) {
+            out.writeByte(0);
+            SnapshotFile.writeString(out, t.word());
+        } else if (e instanceof QueryExpression.And a) {
+            out.writeByte(1);
+            writeOperands(out, a.operands());
+        } else if (e instanceof QueryExpression.Or o) {
+            out.writeByte(2);
+            writeOperands(out, o.operands());
+        } else if (e instanceof QueryExpression.Not n) {
+            out.writeByte(3);
+            writeExpression(out, n.operand());
+        }
+    }
+
+    private static void writeOperands(DataOutputStream out, List<QueryExpression> operands) throws IOException {
+        out.writeInt(operands.size());
+        for (QueryExpression o : operands) writeExpression(out, o);
+    }
+
+    private static QueryExpression readExpression(ByteBuffer in) throws IOException {
+        byte tag = in.get();
+        switch (tag) {
+            case 0:
+                return new QueryExpression.Term(SnapshotFile.readString(in));
+            case 1:
+                return new QueryExpression.And(readOperands(in));
+            case 2:
+                return new QueryExpression.Or(readOperands(in));
+            case 3:
+                return new QueryExpression.Not(readExpression(in));
+            default:
+                throw new IOException("Unknown expression tag " + tag + " in snapshot");
+        }
+    }
+
+    private static List<QueryExpression> readOperands(ByteBuffer in) throws IOException {
+        int n = in.getInt();
+        List<QueryExpression> operands = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) operands.add(readExpression(in));
+        return Collections.unmodifiableList(operands);
+    }
+
+    // Replaces the head segment by its on-disk copy
+    private void persistHead() {
+        MappedLogSegment stored;
+        try {
+            stored = store.persist(head);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.pollLast();
+        segments.addLast(stored);
+        retainedBytes += stored.bytes() - head.bytes();
+        head = null;
+    }
+
+    // Drops whole segments from the old end while any retention limit is exceeded.
+    // Each drop is O(1): the segment owns its lines and postings.
+    private void evictExpired(long now) {
+        Duration maxAge = retention.maxAge();
+        while (segments.size() > 1) {
+            SearchableSegment oldest = segments.peekFirst();
+            boolean tooMany = retainedLogs > retention.maxLogs();
+            boolean tooBig = retainedBytes > retention.maxBytes();
+            boolean tooOld = maxAge != null && now - oldest.newestMillis() > maxAge.toMillis();
+            if (!tooMany && !tooBig && !tooOld) {
+                return;
+            }
+            segments.pollFirst();
+            retainedLogs -= oldest.size();
+            retainedBytes -= oldest.bytes();
+            // Segments embedded in a restored snapshot belong to no store
+            if (store != null && oldest instanceof MappedLogSegment stored && stored.file != null) {
+                store.delete(stored);
+            }
+        }
+    }
+
+    // Tokenizes the line (same words as lowercasing and splitting on \W+) into tokens
+    // and collects the distinct term ids of its query words into lineTerms. Starts a new epoch.
+    private void extractTerms(String line) {
+        if (++epoch == 0) {
+            Arrays.fill(termSeenEpoch, 0);
+            Arrays.fill(queryHitEpoch, 0);
+            epoch = 1;
+        }
+        lineTerms.clear();
+        touchedQueries.clear();
+        matchedQueries.clear();
+
+        tokens.clear();
+        Tokenizer.WORDS.tokenize(line, tokens);
+        char[] chars = tokens.chars();
+        for (int t = 0, n = tokens.size(); t < n; t++) {
+            // Words no query uses cannot route or decide a match
+            int termId = dictionary.lookup(chars, tokens.charOffset(t), tokens.length(t));
+            if (termId < 0) continue;
+            if (termId >= termSeenEpoch.length) {
+                termSeenEpoch = Arrays.copyOf(termSeenEpoch, Math.max(termId + 1, termSeenEpoch.length * 2));
+            }
+            if (termSeenEpoch[termId] != epoch) {
+                termSeenEpoch[termId] = epoch;
+                lineTerms.add(termId);
+            }
         }
     }
 
@@ -151,12 +885,6 @@ public class StreamingLogMatcher {
     }
 }
 /*
-Use BitSet for Indexing
-
-Replace Set<Integer> with BitSet for log/query ID sets to save memory and speed up intersections.
-
-Example: BitSet hits = new BitSet(); hits.and(otherBitSet);
-
 Skip Stopwords and Short Words
 
 Ignore common stopwords (e.g., "the", "a") and words below a certain length during indexing to reduce noise and improve relevance.
@@ -167,16 +895,6 @@ Concurrent Data Structures for Thread Safety
 
 Use ConcurrentHashMap for word-to-ID maps and CopyOnWriteArrayList for logs/queries if you need to support concurrent additions.
 
-LRU Cache for Log Storage
-
-Implement a Least Recently Used (LRU) cache for logs to limit memory usage, especially if you only need to match recent logs.
-
-Support Query Types and Boolean Logic
-
-Extend the Query class to support AND/OR logic between keywords for more flexible matching.
-
-Example: public record Query(String type, Set<String> keywords, boolean isAnd) {}
-
 Optimize Word Extraction
 
 Preprocess and normalize words (e.g., lowercase, stemming) to improve matching accuracy and reduce index size.
@@ -0,0 +1,138 @@
+package org.example.logmatcher;
+
+import java.util.Arrays;
+
+/**
+ * Maps distinct terms to dense int ids (0, 1, 2, ...) using an open-addressing
+ * hash table with linear probing.
+ *
+ * Lookups take a {@code char[]} range, so callers can probe with a reusable token
+ * buffer; a {@code String} is created only the first time a term is interned.
+ * Ids stay stable until their term is {@linkplain #remove removed}; freed ids are
+ * handed out again by later interns. Not thread-safe.
+ */
+public class TermDictionary {
+    private String[] terms = new String[16];
+    private int[] hashes = new int[16];
+    // Slot -> id + 1; 0 marks an empty slot
+    private int[] table = new int[32];
+    private int mask = 31;
+    private int size = 0;           // live terms
+    private int idLimit = 0;        // ids handed out so far, live or freed
+    private final IntArrayList freeIds = new IntArrayList();
+
+    /**
+     * Returns the id of the term, or -1 if it has never been interned.
+     */
+    public int lookup(char[] chars, int offset, int length) {
+        int h = hash(chars, offset, length);
+        for (int slot = h & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) return -1;
+            int id = entry - 1;
+            if (hashes[id] == h && matches(terms[id], chars, offset, length)) return id;
+        }
+    }
+
+    /**
+     * Returns the id of the term, assigning the next id if it is new.
+     */
+    public int intern(char[] chars, int offset, int length) {
+        int h = hash(chars, offset, length);
+        int slot = h & mask;
+        for (; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) break;
+            int id = entry - 1;
+            if (hashes[id] == h && matches(terms[id], chars, offset, length)) return id;
+        }
+        int id = freeIds.isEmpty() ? idLimit++ : freeIds.removeLast();
+        if (id == terms.length) {
+            terms = Arrays.copyOf(terms, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        terms[id] = new String(chars, offset, length);
+        hashes[id] = h;
+        table[slot] = id + 1;
+        size++;
+        // Keep the load factor at or below 1/2
+        if (size * 2 > table.length) rehash();
+        return id;
+    }
+
+    public int lookup(String term) {
+        return lookup(term.toCharArray(), 0, term.length());
+    }
+
+    public int intern(String term) {
+        return intern(term.toCharArray(), 0, term.length());
+    }
+
+    /**
+     * Removes the term with this id; the id may then be assigned to another term.
+     *
+     * @throws IllegalArgumentException if no term has this id
+     */
+    public void remove(int id) {
+        if (id < 0 || id >= idLimit || terms[id] == null) {
+            throw new IllegalArgumentException("No term with id " + id);
+        }
+        int hole = hashes[id] & mask;
+        while (table[hole] != id + 1) hole = (hole + 1) & mask;
+        // Backward-shift deletion: pull later entries of the probe run into the hole
+        // unless that would move them before their home slot, so no tombstones are needed
+        for (int slot = (hole + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int home = hashes[table[slot] - 1] & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                table[hole] = table[slot];
+                hole = slot;
+            }
+        }
+        table[hole] = 0;
+        terms[id] = null;
+        freeIds.add(id);
+        size--;
+    }
+
+    public String term(int id) {
+        return terms[id];
+    }
+
+    // Number of live terms
+    public int size() {
+        return size;
+    }
+
+    // Copy of all terms, indexed by id; null for freed ids
+    String[] terms() {
+        return Arrays.copyOf(terms, idLimit);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        mask = table.length - 1;
+        for (int id = 0; id < idLimit; id++) {
+            if (terms[id] == null) continue;
+            int slot = hashes[id] & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+    }
+
+    private static int hash(char[] chars, int offset, int length) {
+        int h = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        // Spread high bits so linear probing sees them
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String term, char[] chars, int offset, int length) {
+        if (term.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (term.charAt(i) != chars[offset + i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,110 @@
+package org.example.logmatcher;
+
+import java.util.Arrays;
+
+/**
+ * Reusable sink for {@link Tokenizer} output: the lowercased chars of all tokens
+ * back to back, plus each token's position in that array and its offsets in the input.
+ * Call {@link #clear()} between lines. Not thread-safe.
+ */
+public final class TokenBuffer {
+    private char[] chars = new char[256];
+    private int charCount;
+
+    // Per token: start and end offset in the input, start in chars
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private int[] charStarts = new int[32];
+    private int size;
+
+    // Token being built: chars up to contentChars / input up to contentEnd survive trimming
+    private int pendingStart = -1;
+    private int pendingCharStart;
+    private int contentChars;
+    private int contentEnd;
+
+    public void clear() {
+        charCount = 0;
+        size = 0;
+        pendingStart = -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Chars of all tokens; valid until the buffer is modified.
+     */
+    public char[] chars() {
+        return chars;
+    }
+
+    /** Index of token i's first char in {@link #chars()}. */
+    public int charOffset(int i) {
+        return charStarts[i];
+    }
+
+    public int length(int i) {
+        return (i + 1 < size ? charStarts[i + 1] : charCount) - charStarts[i];
+    }
+
+    /** Offset of token i's first char (or byte) in the input. */
+    public int start(int i) {
+        return starts[i];
+    }
+
+    /** Offset just past token i in the input. */
+    public int end(int i) {
+        return ends[i];
+    }
+
+    /**
+     * Token i as a String; allocates.
+     */
+    public String token(int i) {
+        return new String(chars, charStarts[i], length(i));
+    }
+
+    boolean inToken() {
+        return pendingStart >= 0;
+    }
+
+    void begin(int start) {
+        pendingStart = start;
+        pendingCharStart = charCount;
+        contentChars = charCount;
+        contentEnd = start;
+    }
+
+    /**
+     * Appends a char of the current token ending at input offset {@code end}.
+     * Chars with {@code content == false} are dropped again if nothing follows them.
+     */
+    void append(char c, boolean content, int end) {
+        if (charCount == chars.length) chars = Arrays.copyOf(chars, charCount * 2);
+        chars[charCount++] = c;
+        if (content) {
+            contentChars = charCount;
+            contentEnd = end;
+        }
+    }
+
+    /** Ends the current token, if any; a token without content is discarded. */
+    void commit() {
+        if (pendingStart < 0) return;
+        charCount = contentChars;
+        if (contentChars > pendingCharStart) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                charStarts = Arrays.copyOf(charStarts, size * 2);
+            }
+            starts[size] = pendingStart;
+            ends[size] = contentEnd;
+            charStarts[size] = pendingCharStart;
+            size++;
+        }
+        pendingStart = -1;
+    }
+}
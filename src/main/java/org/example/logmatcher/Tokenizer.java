@@ -0,0 +1,38 @@
+package org.example.logmatcher;
+
+/**
+ * Splits text into lowercased tokens, appending them to a reusable {@link TokenBuffer}.
+ *
+ * Implementations are stateless and thread-safe; all per-line state lives in the
+ * buffer, so tokenizing a line allocates nothing once the buffer has grown to fit.
+ * Lowercasing is per char ({@link Character#toLowerCase(char)}), with an ASCII fast path.
+ */
+public interface Tokenizer {
+    /**
+     * Runs of {@code [A-Za-z0-9_]}, i.e. the words left by splitting on {@code \W+}.
+     */
+    Tokenizer WORDS = new CharClassTokenizer(CharClassTokenizer.Kind.WORDS, '\0');
+
+    /**
+     * Runs of non-whitespace chars, i.e. the words left by splitting on {@code \s+}.
+     */
+    Tokenizer WHITESPACE = new CharClassTokenizer(CharClassTokenizer.Kind.NON_WHITESPACE, '\0');
+
+    /**
+     * Fields between delimiters, trimmed like {@link String#trim()}; empty fields are skipped.
+     */
+    static Tokenizer delimited(char delimiter) {
+        return new CharClassTokenizer(CharClassTokenizer.Kind.DELIMITED, delimiter);
+    }
+
+    /**
+     * Appends the tokens of the text; offsets are char indexes into it.
+     */
+    void tokenize(CharSequence text, TokenBuffer out);
+
+    /**
+     * Appends the tokens of UTF-8 bytes [from, to); offsets are byte indexes into the array.
+     * Malformed sequences decode to U+FFFD.
+     */
+    void tokenize(byte[] utf8, int from, int to, TokenBuffer out);
+}
@@ -0,0 +1,217 @@
+package org.example.logmatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shared trigram prefilter for regex queries.
+ *
+ * Each query registers the trigram clauses from {@link RegexTrigrams}; a line is a
+ * candidate for a query once it contains every trigram of one of its clauses.
+ * All queries share one trigram table, so a line is scanned once no matter how many
+ * queries there are, and each distinct trigram of the line only touches the clauses
+ * that use it. Queries are numbered 0..n-1 in registration order.
+ */
+final class TrigramFilter {
+    // Packed trigrams use 48 bits; the mark keeps every key distinct from an empty slot
+    private static final long MARK = 1L << 48;
+
+    // Packed trigram (marked) -> trigram id, open addressing
+    private long[] tableKeys = new long[64];
+    private int[] tableIds = new int[64];
+    private int trigramCount;
+
+    // Trigram id -> clauses containing it
+    private final List<IntArrayList> clausesByTrigram = new ArrayList<>();
+    private final IntArrayList clauseQuery = new IntArrayList();
+    private final IntArrayList clauseSize = new IntArrayList();
+    // Queries without any trigram requirement: every line is a candidate
+    private final IntArrayList unfiltered = new IntArrayList();
+    private int queryCount;
+
+    /**
+     * Registers a query's clauses; returns its query number.
+     */
+    int add(List<long[]> clauses) {
+        int query = queryCount++;
+        for (long[] clause : clauses) {
+            if (clause.length == 0) {
+                unfiltered.add(query);
+                return query;
+            }
+        }
+        for (long[] clause : clauses) {
+            int clauseId = clauseQuery.size();
+            clauseQuery.add(query);
+            clauseSize.add(clause.length);
+            for (long trigram : clause) {
+                clausesByTrigram.get(intern(trigram)).add(clauseId);
+            }
+        }
+        return query;
+    }
+
+    int queryCount() {
+        return queryCount;
+    }
+
+    boolean isFiltered(int query) {
+        for (int i = 0; i < unfiltered.size(); i++) {
+            if (unfiltered.get(i) == query) return false;
+        }
+        return true;
+    }
+
+    Scanner newScanner() {
+        return new Scanner();
+    }
+
+    private int intern(long trigram) {
+        long key = trigram | MARK;
+        int slot = find(key);
+        if (tableKeys[slot] == key) return tableIds[slot];
+        if ((trigramCount + 1) * 2 > tableKeys.length) {
+            grow();
+            slot = find(key);
+        }
+        tableKeys[slot] = key;
+        tableIds[slot] = trigramCount;
+        clausesByTrigram.add(new IntArrayList(2));
+        return trigramCount++;
+    }
+
+    // Trigram id, or -1 if no query uses it
+    private int lookup(long trigram) {
+        long key = trigram | MARK;
+        int slot = find(key);
+        return tableKeys[slot] == key ? tableIds[slot] : -1;
+    }
+
+    // Slot holding the key, or the empty slot where it belongs
+    private int find(long key) {
+        int mask = tableKeys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (tableKeys[slot] != 0 && tableKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = tableKeys;
+        int[] oldIds = tableIds;
+        tableKeys = new long[oldKeys.length * 2];
+        tableIds = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = find(oldKeys[i]);
+                tableKeys[slot] = oldKeys[i];
+                tableIds[slot] = oldIds[i];
+            }
+        }
+    }
+
+    /**
+     * Per-line scanner: feed the chars of one line, then {@link #finish()}.
+     * Picks up queries registered after it was created at the next {@link #reset()}.
+     * Not thread-safe; allocation-free after warm-up.
+     */
+    final class Scanner {
+        private int[] trigramEpoch = new int[0];
+        private int[] clauseEpoch = new int[0];
+        private int[] clauseHits = new int[0];
+        private int[] queryEpoch = new int[0];
+        private int epoch = 0;
+
+        private char prev2;
+        private char prev1;
+        private int length;
+
+        private int[] candidates = new int[8];
+        private int candidateCount;
+
+        Scanner() {
+            reset();
+        }
+
+        /** Starts a new line. */
+        void reset() {
+            if (trigramEpoch.length < trigramCount) trigramEpoch = Arrays.copyOf(trigramEpoch, trigramCount * 2);
+            if (clauseEpoch.length < clauseQuery.size()) {
+                clauseEpoch = Arrays.copyOf(clauseEpoch, clauseQuery.size() * 2);
+                clauseHits = Arrays.copyOf(clauseHits, clauseQuery.size() * 2);
+            }
+            if (queryEpoch.length < queryCount) queryEpoch = Arrays.copyOf(queryEpoch, queryCount * 2);
+            if (++epoch == 0) {
+                Arrays.fill(trigramEpoch, 0);
+                Arrays.fill(clauseEpoch, 0);
+                Arrays.fill(queryEpoch, 0);
+                epoch = 1;
+            }
+            length = 0;
+            candidateCount = 0;
+        }
+
+        /** Feeds the next character of the current line. */
+        void feed(char c) {
+            char lower = c < 0x80 ? (c >= 'A' && c <= 'Z' ? (char) (c + 32) : c) : Character.toLowerCase(c);
+            if (++length >= 3 && trigramCount > 0) {
+                int trigram = lookup(RegexTrigrams.pack(prev2, prev1, lower));
+                if (trigram >= 0 && trigramEpoch[trigram] != epoch) {
+                    trigramEpoch[trigram] = epoch;
+                    onTrigram(trigram);
+                }
+            }
+            prev2 = prev1;
+            prev1 = lower;
+        }
+
+        /**
+         * Ends the current line.
+         *
+         * @return the number of candidate queries
+         */
+        int finish() {
+            for (int i = 0, n = unfiltered.size(); i < n; i++) {
+                addCandidate(unfiltered.get(i));
+            }
+            Arrays.sort(candidates, 0, candidateCount);
+            return candidateCount;
+        }
+
+        /** Candidate queries found by the last {@link #finish()}, in ascending order. */
+        int[] candidates() {
+            return candidates;
+        }
+
+        int candidateCount() {
+            return candidateCount;
+        }
+
+        boolean isCandidate(int query) {
+            return queryEpoch[query] == epoch;
+        }
+
+        private void onTrigram(int trigram) {
+            IntArrayList clauses = clausesByTrigram.get(trigram);
+            for (int i = 0, n = clauses.size(); i < n; i++) {
+                int clause = clauses.get(i);
+                if (clauseEpoch[clause] != epoch) {
+                    clauseEpoch[clause] = epoch;
+                    clauseHits[clause] = 0;
+                }
+                if (++clauseHits[clause] == clauseSize.get(clause)) {
+                    addCandidate(clauseQuery.get(clause));
+                }
+            }
+        }
+
+        private void addCandidate(int query) {
+            if (queryEpoch[query] == epoch) return;
+            queryEpoch[query] = epoch;
+            if (candidateCount == candidates.length) candidates = Arrays.copyOf(candidates, candidateCount * 2);
+            candidates[candidateCount++] = query;
+        }
+    }
+}
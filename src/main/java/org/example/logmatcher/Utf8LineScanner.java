@@ -0,0 +1,137 @@
+package org.example.logmatcher;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits raw UTF-8 bytes into lines in place and feeds each line to a
+ * {@link LineConsumer} as it goes, decoding on the fly.
+ *
+ * Line terminators follow {@code BufferedReader.readLine()}: "\n", "\r" or "\r\n".
+ * Decoder state survives across calls, so a buffer may end in the middle of a
+ * line or a multi-byte sequence. A {@code String} is only built for lines the consumer asks for.
+ * Not thread-safe; one instance per input.
+ */
+final class Utf8LineScanner {
+    private static final char REPLACEMENT = '\uFFFD';
+
+    /**
+     * Receives the decoded chars of each line.
+     */
+    interface LineConsumer {
+        void feed(char c);
+
+        /** Ends the current line; returns true if the line's text is needed. */
+        boolean endLine();
+
+        /** Text of a line for which {@link #endLine()} returned true. */
+        void line(String text);
+    }
+
+    private final LineConsumer scanner;
+
+    // Partially decoded multi-byte sequence
+    private int codePoint;
+    private int pendingContinuations;
+    // Last terminator was '\r', so a following '\n' belongs to it
+    private boolean skipLf;
+
+    // Scratch copy for buffers without an accessible array (e.g. memory-mapped)
+    private byte[] lineCopy = new byte[256];
+
+    Utf8LineScanner(LineConsumer scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Scans bytes [pos, limit) of the buffer, reporting every completed line.
+     *
+     * @param lineStart index where the current, unfinished line began
+     * @return index where the now unfinished line begins
+     */
+    int scan(ByteBuffer buf, int lineStart, int pos, int limit) {
+        for (; pos < limit; pos++) {
+            byte b = buf.get(pos);
+            if (b == '\n' || b == '\r') {
+                if (b == '\n' && skipLf) {
+                    skipLf = false;
+                } else {
+                    endLine(buf, lineStart, pos);
+                    skipLf = b == '\r';
+                }
+                lineStart = pos + 1;
+                continue;
+            }
+            skipLf = false;
+            decode(b);
+        }
+        return lineStart;
+    }
+
+    /**
+     * Reports the trailing line without a terminator, if any.
+     */
+    void finish(ByteBuffer buf, int lineStart, int limit) {
+        if (limit > lineStart) {
+            endLine(buf, lineStart, limit);
+        }
+    }
+
+    private void decode(byte b) {
+        if (pendingContinuations == 0) {
+            if (b >= 0) {
+                scanner.feed((char) b);
+            } else if ((b & 0xE0) == 0xC0) {
+                codePoint = b & 0x1F;
+                pendingContinuations = 1;
+            } else if ((b & 0xF0) == 0xE0) {
+                codePoint = b & 0x0F;
+                pendingContinuations = 2;
+            } else if ((b & 0xF8) == 0xF0) {
+                codePoint = b & 0x07;
+                pendingContinuations = 3;
+            } else {
+                scanner.feed(REPLACEMENT);
+            }
+            return;
+        }
+        if ((b & 0xC0) != 0x80) {
+            // Truncated sequence: replace it and decode b on its own
+            pendingContinuations = 0;
+            scanner.feed(REPLACEMENT);
+            decode(b);
+            return;
+        }
+        codePoint = (codePoint << 6) | (b & 0x3F);
+        if (--pendingContinuations == 0) {
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                scanner.feed(Character.highSurrogate(codePoint));
+                scanner.feed(Character.lowSurrogate(codePoint));
+            } else {
+                scanner.feed((char) codePoint);
+            }
+        }
+    }
+
+    private void endLine(ByteBuffer buf, int start, int end) {
+        if (pendingContinuations > 0) {
+            pendingContinuations = 0;
+            scanner.feed(REPLACEMENT);
+        }
+        if (scanner.endLine()) {
+            scanner.line(decodeLine(buf, start, end));
+        }
+    }
+
+    private String decodeLine(ByteBuffer buf, int start, int end) {
+        int length = end - start;
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        if (lineCopy.length < length) {
+            lineCopy = new byte[Math.max(length, lineCopy.length * 2)];
+        }
+        buf.get(start, lineCopy, 0, length);
+        return new String(lineCopy, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,219 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HighPerformanceFilterTest {
+
+    @Test
+    void testSearchTags() {
+        HighPerformanceFilter filter = new HighPerformanceFilter();
+        filter.addTag("apple, facebook, google");
+        filter.addTag("banana, Facebook, facebook");
+        filter.addTag("facebook, google, tesla");
+        filter.addTag("intuit, google, facebook");
+
+        assertEquals(4, filter.size());
+        assertEquals(Set.of("apple", "tesla", "intuit"), filter.searchTags(List.of("facebook", "GOOGLE ")));
+        assertEquals(Set.of("facebook", "google"), filter.searchTags(List.of("apple")));
+        assertEquals(Set.of(), filter.searchTags(List.of("apple", "banana")));
+        assertEquals(Set.of(), filter.searchTags(List.of("unknown")));
+    }
+
+    @Test
+    void testKeywordsFoldLikeTags() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            HighPerformanceFilter filter = new HighPerformanceFilter();
+            filter.addTag("\u0130stanbul, travel");
+            filter.addTag("LINKEDIN, jobs");
+            assertEquals(Set.of("travel"), filter.searchTags(List.of("\u0130stanbul")));
+            assertEquals(Set.of("istanbul"), filter.searchTags(List.of(" TRAVEL ")));
+            // Under tr_TR, String.toLowerCase would turn I into a dotless \u0131
+            assertEquals(Set.of("jobs"), filter.searchTags(List.of("LINKEDIN")));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    void testMatchesReferenceFilter() {
+        Random random = new Random(11);
+        HighPerformanceFilter filter = new HighPerformanceFilter();
+        List<String> stream = new ArrayList<>();
+        // Enough lines for sealed and merged segments as well as a partly filled head
+        for (int d = 0; d < 3_500; d++) {
+            List<String> tags = new ArrayList<>();
+            for (int t = 0, n = 1 + random.nextInt(5); t < n; t++) {
+                tags.add("tag" + random.nextInt(30));
+            }
+            String line = String.join(", ", tags);
+            stream.add(line);
+            filter.addTag(line);
+        }
+        for (int q = 0; q < 100; q++) {
+            List<String> keywords = new ArrayList<>();
+            for (int k = 0, n = 1 + random.nextInt(2); k < n; k++) {
+                keywords.add("tag" + random.nextInt(30));
+            }
+            assertEquals(TagStreamFilter.filterTags(stream, keywords), filter.searchTags(keywords), keywords.toString());
+        }
+    }
+
+    @Test
+    void testCachedSearchesFollowNewLines() {
+        Random random = new Random(5);
+        // Four hot keyword sets share a cache of two, so entries are evicted and rebuilt too
+        HighPerformanceFilter cached = new HighPerformanceFilter(2);
+        HighPerformanceFilter uncached = new HighPerformanceFilter(0);
+        List<List<String>> hot = List.of(List.of("tag1"), List.of("TAG2 ", "tag3"), List.of("tag4"), List.of("tag0", "tag5"));
+        for (int d = 0; d < 3_000; d++) {
+            List<String> tags = new ArrayList<>();
+            for (int t = 0, n = 1 + random.nextInt(4); t < n; t++) {
+                tags.add("tag" + random.nextInt(d < 1_500 ? 20 : 40));
+            }
+            String line = String.join(", ", tags);
+            cached.addTag(line);
+            uncached.addTag(line);
+            List<String> keywords = hot.get(random.nextInt(random.nextBoolean() ? 2 : hot.size()));
+            assertEquals(uncached.searchTags(keywords), cached.searchTags(keywords), d + " " + keywords);
+        }
+        // Unchanged results are handed out again without rebuilding
+        Set<String> first = cached.searchTags(List.of("tag1"));
+        assertSame(first, cached.searchTags(List.of(" TAG1")));
+        assertThrows(UnsupportedOperationException.class, () -> first.add("x"));
+        assertThrows(IllegalArgumentException.class, () -> new HighPerformanceFilter(-1));
+    }
+
+    @Test
+    void testTopRelatedTags() {
+        HighPerformanceFilter filter = new HighPerformanceFilter();
+        filter.addTag("facebook, google, apple");
+        filter.addTag("facebook, google, tesla");
+        filter.addTag("facebook, google, apple");
+        filter.addTag("facebook, intuit");
+        filter.addTag("google, apple");
+        filter.addTag("tesla");
+
+        List<HighPerformanceFilter.RelatedTag> top = filter.topRelatedTags(List.of("FACEBOOK"), 2,
+                HighPerformanceFilter.Ranking.COUNT);
+        assertEquals(List.of(new HighPerformanceFilter.RelatedTag("google", 3, 3),
+                new HighPerformanceFilter.RelatedTag("apple", 2, 2)), top);
+        // Intuit only ever appears with facebook: lift 6 / 4, ahead of apple's (2 * 6) / (4 * 3)
+        top = filter.topRelatedTags(List.of("facebook"), 10, HighPerformanceFilter.Ranking.LIFT);
+        assertEquals(List.of("intuit", "google", "apple", "tesla"), top.stream().map(HighPerformanceFilter.RelatedTag::tag).toList());
+        assertEquals(1.5, top.get(0).score(), 1e-9);
+        top = filter.topRelatedTags(List.of("facebook"), 1, HighPerformanceFilter.Ranking.PMI);
+        assertEquals(Math.log(1.5) / Math.log(2), top.get(0).score(), 1e-9);
+
+        assertEquals(List.of(), filter.topRelatedTags(List.of("unknown"), 3, HighPerformanceFilter.Ranking.COUNT));
+        assertEquals(List.of(), filter.topRelatedTags(List.of("facebook"), 0, HighPerformanceFilter.Ranking.COUNT));
+        assertThrows(IllegalArgumentException.class,
+                () -> filter.topRelatedTags(List.of("facebook"), -1, HighPerformanceFilter.Ranking.COUNT));
+    }
+
+    @Test
+    void testTopRelatedTagsMatchFullRanking() {
+        Random random = new Random(3);
+        HighPerformanceFilter filter = new HighPerformanceFilter();
+        List<Set<String>> lines = new ArrayList<>();
+        for (int d = 0; d < 2_500; d++) {
+            Set<String> tags = new HashSet<>();
+            for (int t = 0, n = 1 + random.nextInt(5); t < n; t++) tags.add("tag" + random.nextInt(40));
+            lines.add(tags);
+            filter.addTag(String.join(", ", tags));
+        }
+        for (HighPerformanceFilter.Ranking ranking : HighPerformanceFilter.Ranking.values()) {
+            for (String keyword : List.of("tag0", "tag7", "tag39")) {
+                // Every related tag ranked by brute force, then cut to k
+                Map<String, Integer> counts = new HashMap<>();
+                Map<String, Integer> lineCounts = new HashMap<>();
+                int matched = 0;
+                for (Set<String> line : lines) {
+                    for (String tag : line) lineCounts.merge(tag, 1, Integer::sum);
+                    if (!line.contains(keyword)) continue;
+                    matched++;
+                    for (String tag : line) {
+                        if (!tag.equals(keyword)) counts.merge(tag, 1, Integer::sum);
+                    }
+                }
+                int m = matched;
+                List<HighPerformanceFilter.RelatedTag> all = new ArrayList<>();
+                counts.forEach((tag, count) -> {
+                    double lift = (double) count * lines.size() / ((double) m * lineCounts.get(tag));
+                    double score = switch (ranking) {
+                        case COUNT -> count;
+                        case LIFT -> lift;
+                        case PMI -> Math.log(lift) / Math.log(2);
+                    };
+                    all.add(new HighPerformanceFilter.RelatedTag(tag, count, score));
+                });
+                all.sort(Comparator.comparingDouble(HighPerformanceFilter.RelatedTag::score).reversed()
+                        .thenComparing(HighPerformanceFilter.RelatedTag::tag));
+                assertEquals(all.subList(0, 5), filter.topRelatedTags(List.of(keyword), 5, ranking), ranking + " " + keyword);
+                assertEquals(all, filter.topRelatedTags(List.of(keyword), 100, ranking));
+            }
+        }
+    }
+
+    @Test
+    void testReadersSeeConsistentPrefixesDuringIngest() throws Exception {
+        HighPerformanceFilter filter = new HighPerformanceFilter();
+        int lines = 5_000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < lines; i++) {
+                filter.addTag("common, t" + i + (i % 2 == 0 ? ", even" : ""));
+            }
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            readers.add(new Thread(() -> {
+                try {
+                    int last = 0;
+                    while (last < lines) {
+                        // Lines are published in order, so a search sees exactly the first n of them
+                        Set<String> all = filter.searchTags(List.of("common"));
+                        int n = all.size() - (all.contains("even") ? 1 : 0);
+                        assertTrue(n >= last, "went back from " + last + " to " + n);
+                        for (int i = 0; i < n; i++) {
+                            assertTrue(all.contains("t" + i), "missing t" + i + " of " + n);
+                        }
+                        Set<String> even = filter.searchTags(List.of("even", "COMMON"));
+                        for (String tag : even) {
+                            assertEquals(0, Integer.parseInt(tag.substring(1)) % 2);
+                        }
+                        last = n;
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        readers.forEach(reader -> {
+            reader.setDaemon(true);
+            reader.start();
+        });
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join(60_000);
+            assertFalse(reader.isAlive());
+        }
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        assertEquals(lines, filter.size());
+    }
+}
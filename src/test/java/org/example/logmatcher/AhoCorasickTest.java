@@ -0,0 +1,66 @@
+package org.example.logmatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AhoCorasickTest {
+
+    @Test
+    void testFindsEveryQueryInOneScan() {
+        AhoCorasick ac = new AhoCorasick(List.of("error", "timeout", "connection refused"), true);
+        assertArrayEquals(new int[]{0, 1, 2}, ac.findAll("ERROR: connection refused after Timeout"));
+    }
+
+    @Test
+    void testWholeWordBoundaries() {
+        AhoCorasick ac = new AhoCorasick(List.of("err", "error"), true);
+        assertArrayEquals(new int[]{1}, ac.findAll("an error occurred"));
+        assertArrayEquals(new int[0], ac.findAll("errors_everywhere"));
+        assertArrayEquals(new int[]{0}, ac.findAll("err"));
+    }
+
+    @Test
+    void testSubstringModeIgnoresBoundaries() {
+        AhoCorasick ac = new AhoCorasick(List.of("fail", "load"), false);
+        assertArrayEquals(new int[]{0, 1}, ac.findAll("Loading snapshot failed"));
+    }
+
+    @Test
+    void testMatchesRegexSemantics() {
+        Random random = new Random(42);
+        String alphabet = "abAB _-.\u00e9";
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            queries.add(randomString(random, alphabet, 1 + random.nextInt(4)));
+        }
+        List<Pattern> patterns = new ArrayList<>();
+        for (String q : queries) {
+            patterns.add(Pattern.compile("\\b" + Pattern.quote(q) + "\\b", Pattern.CASE_INSENSITIVE));
+        }
+        AhoCorasick ac = new AhoCorasick(queries, true);
+
+        for (int n = 0; n < 2000; n++) {
+            String line = randomString(random, alphabet, random.nextInt(30));
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < patterns.size(); i++) {
+                if (patterns.get(i).matcher(line).find()) expected.add(i);
+            }
+            int[] actual = ac.findAll(line);
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), actual);
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
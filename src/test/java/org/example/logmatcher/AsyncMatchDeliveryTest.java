@@ -0,0 +1,136 @@
+package org.example.logmatcher;
+
+import org.example.logmatcher.AsyncMatchDelivery.Match;
+import org.example.logmatcher.AsyncMatchDelivery.OverflowPolicy;
+import org.example.logmatcher.StreamingLogMatcher.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncMatchDeliveryTest {
+
+    @Test
+    void testBlockingSubscriberGetsEveryMatchInOrder() throws InterruptedException {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        try (AsyncMatchDelivery delivery = new AsyncMatchDelivery()) {
+            delivery.subscribe(batch -> {
+                batchSizes.add(batch.size());
+                for (Match m : batch) received.add(m.logLine());
+                sleep(1);
+            }, 8, 5, OverflowPolicy.BLOCK);
+
+            StreamingLogMatcher matcher = new StreamingLogMatcher(delivery);
+            matcher.acceptQuery(Query.parse("ERROR: disk"));
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                matcher.acceptLog("disk line " + i);
+                expected.add("disk line " + i);
+            }
+            delivery.flush();
+            assertEquals(expected, received);
+            assertEquals(0, delivery.droppedCount());
+            assertTrue(batchSizes.stream().allMatch(n -> n >= 1 && n <= 5));
+        }
+    }
+
+    @Test
+    void testDropPoliciesCountDrops() throws InterruptedException {
+        assertEquals(List.of("0", "1", "2", "3", "4"), runOverflow(OverflowPolicy.DROP_NEWEST));
+        assertEquals(List.of("0", "7", "8", "9", "10"), runOverflow(OverflowPolicy.DROP_OLDEST));
+    }
+
+    @Test
+    void testThrowingConsumerKeepsItsWorker() throws InterruptedException {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        try (AsyncMatchDelivery delivery = new AsyncMatchDelivery()) {
+            AsyncMatchDelivery.Subscription subscription = delivery.subscribe(batch -> {
+                for (Match m : batch) {
+                    if (m.logLine().equals("0")) throw new AssertionError("consumer failed");
+                    received.add(m.logLine());
+                }
+            }, 2, 1, OverflowPolicy.BLOCK);
+
+            Query query = Query.parse("T: x");
+            Thread ingest = new Thread(() -> {
+                for (int i = 0; i < 20; i++) delivery.onMatch(query, String.valueOf(i));
+            });
+            ingest.setDaemon(true);
+            ingest.start();
+            ingest.join(5_000);
+            assertFalse(ingest.isAlive(), "ingest blocked on a dead worker");
+            delivery.flush();
+
+            assertEquals(19, received.size());
+            assertEquals(19, subscription.deliveredCount());
+            assertEquals(1, subscription.failedBatchCount());
+            assertTrue(subscription.lastFailure() instanceof AssertionError);
+        }
+    }
+
+    @Test
+    void testInterruptedCloseStillStopsWorkers() throws InterruptedException {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncMatchDelivery delivery = new AsyncMatchDelivery();
+        AsyncMatchDelivery.Subscription subscription = delivery.subscribe(batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Match m : batch) received.add(m.logLine());
+        }, 4, OverflowPolicy.BLOCK);
+        delivery.onMatch(Query.parse("T: x"), "0");
+
+        // close() gives up waiting but keeps the interrupt; the worker still drains and stops
+        Thread.currentThread().interrupt();
+        delivery.close();
+        assertTrue(Thread.interrupted());
+        release.countDown();
+        subscription.cancel();
+        assertEquals(List.of("0"), received);
+        assertThrows(IllegalStateException.class, () -> delivery.onMatch(Query.parse("T: x"), "1"));
+    }
+
+    // Stalls the consumer on the first match, then offers ten more into a queue of four
+    private static List<String> runOverflow(OverflowPolicy policy) throws InterruptedException {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        try (AsyncMatchDelivery delivery = new AsyncMatchDelivery()) {
+            AsyncMatchDelivery.Subscription subscription = delivery.subscribe(batch -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (Match m : batch) received.add(m.logLine());
+            }, 4, policy);
+
+            Query query = Query.parse("T: x");
+            delivery.onMatch(query, "0");
+            while (subscription.pendingCount() > 0) sleep(1);
+            for (int i = 1; i <= 10; i++) {
+                delivery.onMatch(query, String.valueOf(i));
+            }
+            assertEquals(6, subscription.droppedCount());
+            release.countDown();
+            delivery.flush();
+            assertEquals(5, subscription.deliveredCount());
+        }
+        return received;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
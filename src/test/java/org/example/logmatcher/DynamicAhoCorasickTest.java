@@ -0,0 +1,65 @@
+package org.example.logmatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DynamicAhoCorasickTest {
+
+    @Test
+    void testMatchesContainsUnderChurn() {
+        Random random = new Random(7);
+        DynamicAhoCorasick matcher = new DynamicAhoCorasick(false);
+        Map<Integer, String> reference = new TreeMap<>();
+        QueryIdAllocator ids = new QueryIdAllocator(1);
+
+        for (int step = 0; step < 3_000; step++) {
+            int op = random.nextInt(10);
+            if (op < 4) {
+                int id = ids.allocate();
+                String pattern = randomText(random, random.nextInt(4));
+                matcher.add(id, pattern);
+                reference.put(id, pattern);
+            } else if (op < 6 && !reference.isEmpty()) {
+                List<Integer> live = new ArrayList<>(reference.keySet());
+                int id = live.get(random.nextInt(live.size()));
+                assertTrue(matcher.remove(id));
+                assertFalse(matcher.remove(id));
+                reference.remove(id);
+                ids.release(id);
+            } else {
+                String text = randomText(random, random.nextInt(30));
+                List<Integer> expected = new ArrayList<>();
+                reference.forEach((id, pattern) -> {
+                    if (text.contains(pattern)) expected.add(id);
+                });
+                int[] actual = matcher.findAll(text);
+                assertEquals(expected.toString(), Arrays.toString(actual), text);
+            }
+            assertEquals(reference.size(), matcher.size());
+        }
+        assertTrue(matcher.automatonCount() <= 2 * (32 - Integer.numberOfLeadingZeros(matcher.size() + 1)));
+    }
+
+    @Test
+    void testDuplicateIdRejected() {
+        DynamicAhoCorasick matcher = new DynamicAhoCorasick(false);
+        matcher.add(1, "disk");
+        assertThrows(IllegalArgumentException.class, () -> matcher.add(1, "error"));
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append("abc \u00e9".charAt(random.nextInt(5)));
+        }
+        return sb.toString();
+    }
+}
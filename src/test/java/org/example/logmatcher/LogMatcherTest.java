@@ -0,0 +1,193 @@
+package org.example.logmatcher;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogMatcherTest {
+
+    private static final String LOG = "ERROR disk full\r\n"
+            + "all good\n"
+            + "Timeout after 30s \u2014 r\u00e9essayer\r"
+            + "\n"
+            + "connection refused by peer \uD83D\uDE42\n"
+            + "errors are not error_codes\n"
+            + "last line without newline error";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testAutomatonReportsAllQueryIds() {
+        List<String> matches = new ArrayList<>();
+        LogMatcher matcher = newMatcher(matches);
+        assertArrayEquals(new int[]{0, 1}, matcher.matchingQueries("error: Timeout"));
+    }
+
+    @Test
+    void testByteStreamMatchesReaderPath() throws IOException {
+        List<String> expected = new ArrayList<>();
+        newMatcher(expected).processLogStream(new BufferedReader(new StringReader(LOG)));
+
+        List<String> actual = new ArrayList<>();
+        newMatcher(actual).processLogStream(new TrickleInputStream(LOG.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(expected, actual);
+        assertEquals(4, actual.size());
+    }
+
+    @Test
+    void testMemoryMappedFileMatchesReaderPath() throws IOException {
+        Path file = tempDir.resolve("app.log");
+        Files.writeString(file, LOG, StandardCharsets.UTF_8);
+
+        List<String> expected = new ArrayList<>();
+        newMatcher(expected).processLogStream(new BufferedReader(new StringReader(LOG)));
+
+        List<String> actual = new ArrayList<>();
+        newMatcher(actual).processLogFile(file);
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testLineLongerThanReadBuffer() throws IOException {
+        char[] filler = new char[200_000];
+        Arrays.fill(filler, 'x');
+        String log = "short\n" + new String(filler) + " timeout\nerror\n";
+
+        List<String> actual = new ArrayList<>();
+        newMatcher(actual).processLogStream(new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, actual.size());
+        assertTrue(actual.get(0).endsWith(" timeout [1]"));
+        assertEquals("error [0]", actual.get(1));
+    }
+
+    @Test
+    void testRegexQueriesAgreeWithUnfilteredPatterns() throws IOException {
+        String[] regexes = {
+                "disk (full|quota)", "err(or)?s?\\b", "(?i)TIME\\w+OUT", "[0-9]+ms", "a.c|abd",
+                "x{2,}yz", "(?:ab|cd)(ef|gh)ij", "\\Qa.b\\E", "(?=abc)ab", "caf\u00e9", "q(u|v)*z", "^abc$",
+                "\\N{LATIN SMALL LETTER A}bd", "abc\\b{g}def", "\\d{2}ms",
+                "(?iU)stable", "[\\Q]abc\\E]"};
+        String[] words = {"disk", "full", "quota", "error", "errors", "timeout", "TimeOut", "12ms", "abc",
+                "abd", "axc", "xxyz", "xyz", "abefij", "cdghij", "a.b", "axb", "caf\u00e9", "qz", "quvz", "ef",
+                "def", "\u017Fta", "STA", "\u017Ftable", "a"};
+        List<String> sink = new ArrayList<>();
+        LogMatcher matcher = new LogMatcher(LogMatcher.MatchMode.AUTOMATON,
+                (line, ids) -> sink.add(line + " " + Arrays.toString(ids)));
+        List<Pattern> reference = new ArrayList<>();
+        matcher.addSearchQuery("disk");
+        reference.add(Pattern.compile("\\bdisk\\b", Pattern.CASE_INSENSITIVE));
+        for (String regex : regexes) {
+            matcher.addRegexQuery(regex);
+            reference.add(Pattern.compile(regex));
+        }
+        // Unicode case folding maps \u017F (long s) to s, which plain lowercasing does not
+        int unicodeLiteral = Pattern.LITERAL | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        matcher.addRegexQuery("sta", unicodeLiteral);
+        reference.add(Pattern.compile("sta", unicodeLiteral));
+        int unicodeClasses = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CHARACTER_CLASS;
+        matcher.addRegexQuery("stable", unicodeClasses);
+        reference.add(Pattern.compile("stable", unicodeClasses));
+
+        Random random = new Random(5);
+        StringBuilder log = new StringBuilder();
+        for (int l = 0; l < 2_000; l++) {
+            StringBuilder line = new StringBuilder();
+            for (int w = 0, n = random.nextInt(4); w <= n; w++) {
+                if (w > 0) line.append(random.nextBoolean() ? " " : "");
+                line.append(words[random.nextInt(words.length)]);
+            }
+            List<Integer> expected = new ArrayList<>();
+            for (int q = 0; q < reference.size(); q++) {
+                if (reference.get(q).matcher(line).find()) expected.add(q);
+            }
+            assertEquals(expected.toString(), Arrays.toString(matcher.matchingQueries(line.toString())), line.toString());
+            log.append(line).append('\n');
+        }
+
+        // The byte path runs the same filter over decoded chars
+        List<String> expected = new ArrayList<>();
+        matcher.processLogStream(new BufferedReader(new StringReader(log.toString())));
+        expected.addAll(sink);
+        sink.clear();
+        matcher.processLogStream(new TrickleInputStream(log.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(expected, sink);
+    }
+
+    @Test
+    void testRegexFilterStats() throws IOException {
+        List<String> sink = new ArrayList<>();
+        LogMatcher matcher = new LogMatcher(LogMatcher.MatchMode.REGEX, (line, ids) -> sink.add(line));
+        matcher.processLogStream(new BufferedReader(new StringReader("before registration\n")));
+        int disk = matcher.addRegexQuery("disk (full|quota)");
+        int any = matcher.addRegexQuery("\\d+");
+        assertEquals(0, disk);
+        assertEquals(1, any);
+        for (String line : List.of("disk full", "disk quota", "disk fun, full", "network down", "full disk", "retry 3")) {
+            matcher.matchingQueries(line);
+        }
+
+        List<LogMatcher.RegexQueryStats> stats = matcher.regexQueryStats();
+        LogMatcher.RegexQueryStats diskStats = stats.get(0);
+        assertTrue(diskStats.filtered());
+        assertEquals(6, diskStats.lines());
+        // "disk fun, full" has every trigram of "disk full" but not the phrase
+        assertEquals(3, diskStats.candidates());
+        assertEquals(2, diskStats.matches());
+        assertFalse(stats.get(1).filtered());
+        assertEquals(6, stats.get(1).candidates());
+        assertEquals(1, stats.get(1).matches());
+    }
+
+    private static LogMatcher newMatcher(List<String> sink) {
+        LogMatcher matcher = new LogMatcher(LogMatcher.MatchMode.AUTOMATON,
+                (line, ids) -> sink.add(line + " " + Arrays.toString(ids)));
+        matcher.addSearchQuery("error");
+        matcher.addSearchQuery("Timeout");
+        matcher.addSearchQuery("connection refused");
+        matcher.addSearchQuery("r\u00e9essayer");
+        return matcher;
+    }
+
+    // Returns at most a few bytes per read to split lines and UTF-8 sequences across reads
+    private static final class TrickleInputStream extends InputStream {
+        private final byte[] data;
+        private int pos;
+
+        TrickleInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return pos < data.length ? data[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos >= data.length) return -1;
+            int n = Math.min(Math.min(len, 1 + pos % 3), data.length - pos);
+            System.arraycopy(data, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.logmatcher;
+
+import org.example.logmatcher.StreamingLogMatcher.Query;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsRecorderTest {
+
+    @Test
+    void testHistogramBucketsAndPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 90; i++) histogram.record(3);
+        for (int i = 0; i < 10; i++) histogram.record(1_000);
+        histogram.record(-5);
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(101, snapshot.count());
+        assertEquals(90 * 3 + 10 * 1_000, snapshot.sum());
+        assertEquals(1, snapshot.bucketCount(0));
+        assertEquals(3, snapshot.percentile(0.5));
+        assertEquals(1_023, snapshot.percentile(0.99));
+        assertEquals(0, snapshot.percentile(0));
+        assertEquals(0, new Histogram().snapshot().percentile(0.5));
+    }
+
+    @Test
+    void testStreamingLogMatcherReportsLinesQueriesAndHits() {
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> { });
+        MetricsRecorder metrics = new MetricsRecorder();
+        matcher.setMetrics(metrics);
+
+        matcher.acceptLog("disk full");
+        int disk = matcher.acceptQuery(Query.parse("DISK: disk"));
+        int error = matcher.acceptQuery(Query.parse("ERROR: error"));
+        matcher.acceptLog("disk error");
+        matcher.acceptLog("disk ok");
+        matcher.acceptLog("nothing");
+
+        MetricsRecorder.Snapshot snapshot = metrics.snapshot();
+        assertEquals(4, snapshot.lines());
+        assertEquals(2, snapshot.matchedLines());
+        assertEquals(3, snapshot.queryHits());
+        assertEquals(2, snapshot.queries());
+        assertEquals(1, snapshot.backfillMatches());
+        assertEquals(2, snapshot.hitsByQuery()[disk]);
+        assertEquals(1, snapshot.hitsByQuery()[error]);
+        assertEquals(4, snapshot.lineNanos().count());
+        assertEquals(3, snapshot.candidates().sum());
+    }
+
+    @Test
+    void testStreamAndLogMatchersShareRecorder() throws IOException {
+        MetricsRecorder metrics = new MetricsRecorder();
+        StreamMatcher stream = new StreamMatcher();
+        stream.setMetrics(metrics);
+        stream.processStream(List.of("Q: disk", "L: disk full", "L: idle"));
+
+        LogMatcher logs = new LogMatcher(LogMatcher.MatchMode.REGEX, (line, ids) -> { });
+        logs.setMetrics(metrics);
+        logs.addSearchQuery("error");
+        logs.processLogStream(new BufferedReader(new StringReader("error one\nfine\n")));
+
+        MetricsRecorder.Snapshot snapshot = metrics.snapshot();
+        assertEquals(4, snapshot.lines());
+        assertEquals(2, snapshot.matchedLines());
+        assertEquals(1, snapshot.queries());
+        // StreamMatcher ids start at 1, LogMatcher ids at 0
+        assertArrayEquals(new long[]{1, 1}, snapshot.hitsByQuery());
+    }
+
+    @Test
+    void testReusedQueryIdStartsFromZeroHits() {
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> { });
+        MetricsRecorder metrics = new MetricsRecorder();
+        matcher.setMetrics(metrics);
+
+        int disk = matcher.acceptQuery(Query.parse("DISK: disk"));
+        for (int i = 0; i < 5; i++) matcher.acceptLog("disk " + i);
+        assertTrue(matcher.cancelQuery(disk));
+        assertEquals(0, metrics.snapshot().hitsByQuery()[disk]);
+        // Compaction frees the id for the next query
+        for (int i = 0; i < 5; i++) matcher.acceptLog("idle " + i);
+        assertEquals(disk, matcher.acceptQuery(Query.parse("ERROR: error")));
+        matcher.acceptLog("error");
+        assertEquals(1, metrics.snapshot().hitsByQuery()[disk]);
+        assertEquals(6, metrics.snapshot().queryHits());
+    }
+
+    @Test
+    void testByteStreamLineTimeExcludesWaitingForInput() throws IOException {
+        MetricsRecorder metrics = new MetricsRecorder();
+        LogMatcher logs = new LogMatcher(LogMatcher.MatchMode.AUTOMATON, (line, ids) -> { });
+        logs.setMetrics(metrics);
+        logs.addSearchQuery("error");
+        // Each line arrives 50 ms after the previous one
+        byte[][] lines = {"error one\n".getBytes(), "fine\n".getBytes(), "error two\n".getBytes()};
+        logs.processLogStream(new InputStream() {
+            private int next = 0;
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (next == lines.length) return -1;
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] line = lines[next++];
+                System.arraycopy(line, 0, b, off, line.length);
+                return line.length;
+            }
+        });
+
+        Histogram.Snapshot lineNanos = metrics.snapshot().lineNanos();
+        assertEquals(3, lineNanos.count());
+        assertTrue(lineNanos.sum() < 50_000_000L, lineNanos.sum() + " ns");
+    }
+
+    @Test
+    void testMetricsEnabledMidStreamApplyFromTheNextStream() throws IOException {
+        MetricsRecorder metrics = new MetricsRecorder();
+        LogMatcher[] holder = new LogMatcher[1];
+        holder[0] = new LogMatcher(LogMatcher.MatchMode.AUTOMATON, (line, ids) -> holder[0].setMetrics(metrics));
+        holder[0].addSearchQuery("error");
+
+        // Lines of a stream that started unmeasured are neither timed nor recorded
+        holder[0].processLogStream(new ByteArrayInputStream("error one\nfine\nerror two\n".getBytes()));
+        assertEquals(0, metrics.snapshot().lineNanos().count());
+
+        holder[0].processLogStream(new ByteArrayInputStream("error three\nfine\n".getBytes()));
+        assertEquals(2, metrics.snapshot().lineNanos().count());
+        assertTrue(metrics.snapshot().lineNanos().sum() > 0);
+    }
+
+    @Test
+    void testNoopIsDisabled() {
+        assertFalse(MatcherMetrics.NOOP.enabled());
+        assertTrue(new MetricsRecorder().enabled());
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.logmatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoaringBitmapTest {
+
+    @Test
+    void testAddContainsAcrossContainerTypes() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        // Sparse chunk, dense chunk, a long run, then out-of-order inserts
+        for (int i = 0; i < 100; i++) add(bitmap, expected, i * 37);
+        for (int i = 0; i < 20_000; i++) add(bitmap, expected, 65_536 + i * 3);
+        for (int i = 0; i < 65_536; i++) add(bitmap, expected, 3 * 65_536 + i);
+        add(bitmap, expected, 5);
+        add(bitmap, expected, 65_537);
+        bitmap.runOptimize();
+        add(bitmap, expected, 3 * 65_536 - 1);
+
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), bitmap.toArray());
+        assertFalse(bitmap.contains(6));
+        assertTrue(bitmap.contains(3 * 65_536 + 1000));
+    }
+
+    @Test
+    void testIntersectionMatchesTreeSet() {
+        Random random = new Random(11);
+        for (int round = 0; round < 30; round++) {
+            RoaringBitmap[] bitmaps = new RoaringBitmap[3];
+            TreeSet<Integer> expected = null;
+            for (int b = 0; b < bitmaps.length; b++) {
+                bitmaps[b] = new RoaringBitmap();
+                TreeSet<Integer> values = new TreeSet<>();
+                int density = 1 + random.nextInt(40);
+                int runStart = random.nextInt(200_000);
+                for (int v = 0; v < 250_000; v++) {
+                    boolean inRun = v >= runStart && v < runStart + 30_000 && b % 2 == 0;
+                    if (inRun || random.nextInt(density) == 0) {
+                        bitmaps[b].add(v);
+                        values.add(v);
+                    }
+                }
+                if (random.nextBoolean()) bitmaps[b].runOptimize();
+                if (expected == null) expected = values;
+                else expected.retainAll(values);
+            }
+            RoaringBitmap result = RoaringBitmap.and(List.of(bitmaps));
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), result.toArray());
+        }
+    }
+
+    @Test
+    void testUnionDifferenceAndSerializationMatchTreeSet() {
+        Random random = new Random(5);
+        for (int round = 0; round < 20; round++) {
+            RoaringBitmap a = new RoaringBitmap(), b = new RoaringBitmap();
+            TreeSet<Integer> sa = new TreeSet<>(), sb = new TreeSet<>();
+            fill(random, a, sa);
+            fill(random, b, sb);
+
+            TreeSet<Integer> union = new TreeSet<>(sa);
+            union.addAll(sb);
+            TreeSet<Integer> difference = new TreeSet<>(sa);
+            difference.removeAll(sb);
+            assertArrayEquals(toArray(union), a.or(b).toArray());
+            assertArrayEquals(toArray(difference), a.andNot(b).toArray());
+
+            ByteBuffer buffer = ByteBuffer.allocate(a.serializedSizeInBytes());
+            a.serialize(buffer);
+            assertFalse(buffer.hasRemaining());
+            buffer.flip();
+            assertArrayEquals(toArray(sa), RoaringBitmap.deserialize(buffer).toArray());
+            buffer.flip();
+            assertEquals(sa.size(), RoaringBitmap.serializedCardinality(buffer));
+            assertFalse(buffer.hasRemaining());
+        }
+        assertArrayEquals(new int[]{65_534, 65_535, 65_536}, RoaringBitmap.range(65_534, 65_537).toArray());
+    }
+
+    private static void fill(Random random, RoaringBitmap bitmap, TreeSet<Integer> values) {
+        int density = 1 + random.nextInt(40);
+        int runStart = random.nextInt(150_000);
+        for (int v = 0; v < 200_000; v++) {
+            if ((v >= runStart && v < runStart + 20_000) || random.nextInt(density) == 0) {
+                bitmap.add(v);
+                values.add(v);
+            }
+        }
+        if (random.nextBoolean()) bitmap.runOptimize();
+    }
+
+    private static int[] toArray(TreeSet<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void add(RoaringBitmap bitmap, TreeSet<Integer> expected, int value) {
+        bitmap.add(value);
+        expected.add(value);
+    }
+}
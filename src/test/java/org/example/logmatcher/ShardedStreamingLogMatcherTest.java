@@ -0,0 +1,196 @@
+package org.example.logmatcher;
+
+import org.example.logmatcher.ShardedStreamingLogMatcher.DeliveryOrder;
+import org.example.logmatcher.StreamingLogMatcher.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedStreamingLogMatcherTest {
+
+    private static final String[] VOCABULARY = {"disk", "error", "memory", "service", "timeout", "user", "db"};
+
+    @Test
+    void testGlobalOrderMatchesSequentialSemantics() throws InterruptedException {
+        Random random = new Random(7);
+        List<String> expected = new ArrayList<>();
+        List<String> actual = Collections.synchronizedList(new ArrayList<>());
+
+        List<String> logs = new ArrayList<>();
+        List<Query> queries = new ArrayList<>();
+        try (ShardedStreamingLogMatcher matcher = new ShardedStreamingLogMatcher(3, DeliveryOrder.GLOBAL, 16,
+                (q, l) -> actual.add(q.keywords() + " " + l))) {
+            for (int i = 0; i < 2000; i++) {
+                if (random.nextInt(10) == 0) {
+                    Query q = Query.parse("ERROR: " + randomWords(random, 1 + random.nextInt(2)));
+                    // Backfill in log order, then becomes a forward query
+                    for (String log : logs) {
+                        if (matches(q, log)) expected.add(q.keywords() + " " + log);
+                    }
+                    queries.add(q);
+                    matcher.acceptQuery(q);
+                } else {
+                    String log = i + " " + randomWords(random, 3);
+                    for (Query q : queries) {
+                        if (matches(q, log)) expected.add(q.keywords() + " " + log);
+                    }
+                    logs.add(log);
+                    matcher.acceptLog(log);
+                }
+            }
+            matcher.flush();
+            // Logs arrive in global order; queries matching the same log may come in any order
+            assertEquals(logsOf(expected), logsOf(actual));
+            assertEquals(sorted(expected), sorted(actual));
+        }
+    }
+
+    @Test
+    void testPerShardDeliversSameMatches() throws InterruptedException {
+        List<String> actual = Collections.synchronizedList(new ArrayList<>());
+        try (ShardedStreamingLogMatcher matcher = new ShardedStreamingLogMatcher(4, DeliveryOrder.PER_SHARD,
+                (q, l) -> actual.add(l))) {
+            for (int i = 0; i < 100; i++) {
+                matcher.acceptLog(i + " disk error");
+            }
+            matcher.acceptQuery(Query.parse("ERROR: disk"));
+            for (int i = 100; i < 150; i++) {
+                matcher.acceptLog(i + " disk error");
+            }
+            matcher.flush();
+            assertEquals(150, new HashSet<>(actual).size());
+        }
+    }
+
+    @Test
+    void testInterruptedShardStillDeliversItsResult() throws Exception {
+        List<String> actual = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ShardedStreamingLogMatcher matcher = new ShardedStreamingLogMatcher(1, DeliveryOrder.GLOBAL, 1,
+                (q, l) -> {
+                    delivering.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    actual.add(l);
+                })) {
+            matcher.acceptQuery(Query.parse("ERROR: disk"));
+            matcher.acceptLog("1 disk error");
+            assertTrue(delivering.await(5, TimeUnit.SECONDS));
+            // The delivery thread is stuck in the callback: log 2 fills the result queue,
+            // and the shard blocks handing over log 3 until it is interrupted
+            matcher.acceptLog("2 disk error");
+            matcher.acceptLog("3 disk error");
+            Thread shard = shardThread();
+            while (!inAccept(shard)) {
+                Thread.sleep(1);
+            }
+            shard.interrupt();
+            release.countDown();
+
+            Thread flusher = new Thread(() -> {
+                try {
+                    matcher.flush();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            flusher.start();
+            flusher.join(5000);
+            assertFalse(flusher.isAlive(), "delivery stalled on a dropped result");
+            assertEquals(List.of("1 disk error", "2 disk error", "3 disk error"), actual);
+        }
+    }
+
+    @Test
+    void testConcurrentCloseDeliversEverythingOnce() throws InterruptedException {
+        List<String> actual = Collections.synchronizedList(new ArrayList<>());
+        ShardedStreamingLogMatcher matcher = new ShardedStreamingLogMatcher(3, DeliveryOrder.GLOBAL, 4,
+                (q, l) -> actual.add(l));
+        matcher.acceptQuery(Query.parse("ERROR: disk"));
+        for (int i = 0; i < 500; i++) {
+            matcher.acceptLog(i + " disk error");
+        }
+        List<Thread> closers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread closer = new Thread(matcher::close);
+            closers.add(closer);
+            closer.start();
+        }
+        for (Thread closer : closers) {
+            closer.join(5000);
+            assertFalse(closer.isAlive());
+        }
+        // The first close delivers everything; the others return without draining again
+        while (actual.size() < 500) {
+            Thread.sleep(1);
+        }
+        assertEquals(500, new HashSet<>(actual).size());
+        assertThrows(IllegalStateException.class, () -> matcher.acceptLog("late disk error"));
+
+        // An interrupted close keeps the flag and does not throw
+        ShardedStreamingLogMatcher other = new ShardedStreamingLogMatcher(1, DeliveryOrder.GLOBAL, (q, l) -> { });
+        Thread.currentThread().interrupt();
+        other.close();
+        assertTrue(Thread.interrupted());
+    }
+
+    private static Thread shardThread() {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("log-matcher-shard-0") && t.isAlive()) return t;
+        }
+        throw new AssertionError("no shard thread");
+    }
+
+    private static boolean inAccept(Thread shard) {
+        for (StackTraceElement frame : shard.getStackTrace()) {
+            if (frame.getClassName().endsWith("$Shard") && frame.getMethodName().equals("accept")) {
+                return shard.getState() == Thread.State.WAITING;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> logsOf(List<String> matches) {
+        List<String> logs = new ArrayList<>();
+        for (String m : matches) {
+            logs.add(m.substring(m.indexOf(']') + 2));
+        }
+        return logs;
+    }
+
+    private static List<String> sorted(List<String> matches) {
+        List<String> copy = new ArrayList<>(matches);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private static boolean matches(Query q, String log) {
+        Set<String> words = new HashSet<>();
+        for (String w : log.toLowerCase().split("\\W+")) {
+            if (!w.isEmpty()) words.add(w);
+        }
+        return words.containsAll(q.keywords());
+    }
+
+    private static String randomWords(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+        }
+        return sb.toString();
+    }
+}
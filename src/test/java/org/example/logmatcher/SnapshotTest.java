@@ -0,0 +1,131 @@
+package org.example.logmatcher;
+
+import org.example.HighPerformanceFilter;
+import org.example.logmatcher.StreamingLogMatcher.Query;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStreamingLogMatcherRoundTrip() throws Exception {
+        List<String> matches = new ArrayList<>();
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(q.type() + " " + l),
+                RetentionPolicy.unbounded(), 100, Clock.systemUTC());
+        for (int i = 0; i < 250; i++) {
+            matcher.acceptLog("line " + i + (i % 5 == 0 ? " disk error" : " ok") + " caf\u00e9");
+        }
+        int disk = matcher.acceptQuery(Query.parse("DISK: disk"));
+        int gone = matcher.acceptQuery(Query.parse("GONE: ok"));
+        int complex = matcher.acceptQuery(Query.parse("C: (error OR caf) NOT ok"));
+        assertTrue(matcher.cancelQuery(gone));
+
+        Path file = tempDir.resolve("matcher.snap");
+        var written = matcher.snapshot(file);
+        // Ingest continues while the snapshot is written
+        matcher.acceptLog("line 250 disk after snapshot");
+        assertEquals(file, written.get());
+
+        matches.clear();
+        StreamingLogMatcher restored = StreamingLogMatcher.restore(file, (q, l) -> matches.add(q.type() + " " + l));
+        assertEquals(250, restored.retainedLogCount());
+        assertEquals(2, restored.liveQueryCount());
+
+        // Forward matches use the restored queries; the freed id is reused
+        restored.acceptLog("line 250 disk error");
+        assertEquals(List.of("DISK line 250 disk error", "C line 250 disk error"), matches);
+        assertEquals(gone, restored.acceptQuery(Query.parse("ALL:")));
+        assertEquals(251, matches.size() - 2);
+        assertEquals("ALL line 0 disk error caf\u00e9", matches.get(2));
+        assertEquals("ALL line 250 disk error", matches.get(matches.size() - 1));
+        assertTrue(restored.cancelQuery(disk));
+        assertTrue(restored.cancelQuery(complex));
+    }
+
+    @Test
+    void testStreamingLogMatcherRestoresLevelRouting() throws Exception {
+        List<String> matches = new ArrayList<>();
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(q.type() + " " + l));
+        matcher.setLevelExtractor(LevelExtractor.standard());
+        matcher.acceptLog("ERROR disk full");
+        matcher.acceptLog("INFO disk ok");
+        matcher.acceptQuery(Query.parse("ERROR: disk"));
+        Path file = matcher.snapshot(tempDir.resolve("levels.snap")).get();
+
+        matches.clear();
+        StreamingLogMatcher restored = StreamingLogMatcher.restore(file, (q, l) -> matches.add(q.type() + " " + l),
+                RetentionPolicy.unbounded(), LevelExtractor.standard());
+        restored.acceptLog("INFO disk slow");
+        restored.acceptLog("ERROR disk gone");
+        restored.acceptQuery(Query.parse("INFO: disk"));
+        assertEquals(List.of("ERROR ERROR disk gone", "INFO INFO disk ok", "INFO INFO disk slow"), matches);
+    }
+
+    @Test
+    void testStreamMatcherRoundTrip() throws Exception {
+        StreamMatcher matcher = new StreamMatcher();
+        matcher.processStream(List.of(
+                "Q: disk error",
+                "Q: \"loading failed\" snapshot",
+                "Q: memory",
+                "U: 1",
+                "L: loading failed"));
+        Path file = matcher.snapshot(tempDir.resolve("stream.snap")).get();
+
+        StreamMatcher restored = StreamMatcher.restore(file);
+        assertEquals(2, restored.liveQueryCount());
+        List<String> logs = List.of("disk error", "snapshot loading failed", "failed loading snapshot", "memory");
+        StreamMatcher.MatchBatch expected = matcher.matchBatch(logs);
+        StreamMatcher.MatchBatch actual = restored.matchBatch(logs);
+        assertEquals(expected.size(), actual.size());
+        for (int m = 0; m < expected.size(); m++) {
+            assertEquals(expected.lineIndex(m), actual.lineIndex(m));
+            assertArrayEquals(expected.queryIds(m), actual.queryIds(m));
+        }
+        // The cancelled id is free again after restore
+        restored.processStream(List.of("Q: disk"));
+        assertEquals("ACK: disk; ID=1", restored.getOutput().get(0));
+    }
+
+    @Test
+    void testTagFilterRoundTrip() throws Exception {
+        HighPerformanceFilter filter = new HighPerformanceFilter();
+        filter.addTag("apple, facebook, google");
+        filter.addTag("banana, facebook");
+        filter.addTag("facebook, google, tesla");
+        Path file = filter.snapshot(tempDir.resolve("tags.snap")).get();
+
+        HighPerformanceFilter restored = HighPerformanceFilter.restore(file);
+        assertEquals(filter.searchTags(List.of("facebook")), restored.searchTags(List.of("facebook")));
+        restored.addTag("intuit, google, facebook");
+        assertEquals(Set.of("apple", "tesla", "intuit"), restored.searchTags(List.of("facebook", "google")));
+    }
+
+    @Test
+    void testRejectsWrongKindAndTruncatedFiles() throws Exception {
+        StreamMatcher matcher = new StreamMatcher();
+        matcher.processStream(List.of("Q: disk"));
+        Path file = matcher.snapshot(tempDir.resolve("stream.snap")).get();
+        assertThrows(IOException.class, () -> HighPerformanceFilter.restore(file));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 1);
+        }
+        assertThrows(IOException.class, () -> StreamMatcher.restore(file));
+    }
+}
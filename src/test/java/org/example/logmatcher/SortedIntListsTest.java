@@ -0,0 +1,50 @@
+package org.example.logmatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SortedIntListsTest {
+
+    @Test
+    void testGallop() {
+        int[] a = {1, 3, 5, 7, 9, 11, 13};
+        assertEquals(0, SortedIntLists.gallop(a, 0, a.length, 0));
+        assertEquals(0, SortedIntLists.gallop(a, 0, a.length, 1));
+        assertEquals(3, SortedIntLists.gallop(a, 0, a.length, 6));
+        assertEquals(6, SortedIntLists.gallop(a, 2, a.length, 13));
+        assertEquals(7, SortedIntLists.gallop(a, 0, a.length, 14));
+        assertEquals(4, SortedIntLists.gallop(a, 0, 4, 100));
+        assertEquals(5, SortedIntLists.gallop(a, 5, a.length, 2));
+    }
+
+    @Test
+    void testIntersectMatchesTreeSet() {
+        Random random = new Random(13);
+        IntArrayList out = new IntArrayList();
+        for (int round = 0; round < 200; round++) {
+            int count = 1 + random.nextInt(4);
+            int[][] lists = new int[count][];
+            int[] sizes = new int[count];
+            TreeSet<Integer> expected = null;
+            for (int l = 0; l < count; l++) {
+                TreeSet<Integer> values = new TreeSet<>();
+                int density = 1 + random.nextInt(l == 0 ? 200 : 4);
+                for (int v = 0; v < 5_000; v++) {
+                    if (random.nextInt(density) == 0) values.add(v);
+                }
+                // Spare capacity past the size must be ignored
+                lists[l] = Arrays.copyOf(values.stream().mapToInt(Integer::intValue).toArray(), values.size() + 3);
+                sizes[l] = values.size();
+                if (expected == null) expected = values;
+                else expected.retainAll(values);
+            }
+            assertEquals(expected.size(), SortedIntLists.intersect(lists, sizes, count, out));
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), out.toArray());
+        }
+    }
+}
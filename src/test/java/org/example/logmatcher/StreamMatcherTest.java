@@ -0,0 +1,203 @@
+package org.example.logmatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamMatcherTest {
+
+    private static final List<String> STREAM = List.of(
+            "Q: database",
+            "Q: Stacktrace",
+            "Q: loading failed",
+            "L: Database service started",
+            "Q: snapshot loading",
+            "Q: fail",
+            "L: Started processing events",
+            "L: Loading main DB snapshot",
+            "L: Loading snapshot failed no stacktrace available"
+    );
+
+    @Test
+    void testProcessStreamOutput() {
+        StreamMatcher matcher = new StreamMatcher();
+        matcher.processStream(STREAM);
+        assertEquals(List.of(
+                "ACK: database; ID=1",
+                "ACK: Stacktrace; ID=2",
+                "ACK: loading failed; ID=3",
+                "M: Database service started; Q=1",
+                "ACK: snapshot loading; ID=4",
+                "ACK: fail; ID=5",
+                "M: Loading main DB snapshot; Q=4",
+                "M: Loading snapshot failed no stacktrace available; Q=2,3,4"), matcher.getOutput());
+    }
+
+    @Test
+    void testMatchedIdsAreNumericallyOrdered() {
+        List<String> stream = new ArrayList<>();
+        for (int i = 1; i <= 12; i++) {
+            stream.add("Q: common word" + i);
+        }
+        stream.add("L: word2 COMMON word10 word2");
+        StreamMatcher matcher = new StreamMatcher();
+        matcher.processStream(stream);
+        assertEquals("M: word2 COMMON word10 word2; Q=2,10", matcher.getOutput().get(12));
+    }
+
+    @Test
+    void testMatchBatch() {
+        StreamMatcher matcher = new StreamMatcher();
+        matcher.processStream(STREAM.subList(0, 6));
+
+        StreamMatcher.MatchBatch batch = matcher.matchBatch(List.of(
+                "nothing here",
+                "database loading failed",
+                "fail",
+                "unrelated"));
+
+        assertEquals(2, batch.size());
+        assertEquals(1, batch.lineIndex(0));
+        assertArrayEquals(new int[]{1, 3}, batch.queryIds(0));
+        assertEquals(2, batch.lineIndex(1));
+        assertEquals(1, batch.queryCount(1));
+        assertEquals(5, batch.queryId(1, 0));
+        // Batch matching leaves the stream output alone
+        assertEquals(6, matcher.getOutput().size());
+    }
+
+    @Test
+    void testUnsubscribeRecyclesIdAfterCompaction() {
+        StreamMatcher matcher = new StreamMatcher();
+        matcher.processStream(List.of(
+                "Q: disk error",
+                "Q: disk",
+                "U: 1",
+                "U: 1",
+                "L: disk error on sda",
+                "Q: memory"));
+        assertEquals(List.of(
+                "ACK: disk error; ID=1",
+                "ACK: disk; ID=2",
+                "UNSUB: ID=1",
+                "M: disk error on sda; Q=2",
+                "ACK: memory; ID=1"), matcher.getOutput());
+        assertEquals(2, matcher.liveQueryCount());
+
+        // The recycled ID does not inherit the cancelled query's words
+        StreamMatcher.MatchBatch batch = matcher.matchBatch(List.of("disk error", "memory"));
+        assertEquals(2, batch.size());
+        assertArrayEquals(new int[]{2}, batch.queryIds(0));
+        assertArrayEquals(new int[]{1}, batch.queryIds(1));
+    }
+
+    @Test
+    void testCompactionKeepsLiveQueries() {
+        StreamMatcher matcher = new StreamMatcher();
+        List<String> stream = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            stream.add("Q: shared word" + i);
+        }
+        matcher.processStream(stream);
+        for (int i = 1; i <= 100; i += 2) {
+            assertTrue(matcher.cancelQuery(i));
+        }
+        assertFalse(matcher.cancelQuery(1));
+
+        List<String> logs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            logs.add("shared word" + (i + 1) + " word" + (i % 10 + 1));
+        }
+        for (int round = 0; round < 3; round++) {
+            StreamMatcher.MatchBatch batch = matcher.matchBatch(logs);
+            assertEquals(50, batch.size());
+            for (int m = 0; m < batch.size(); m++) {
+                for (int id : batch.queryIds(m)) {
+                    assertEquals(0, id % 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testPhraseQueries() {
+        StreamMatcher matcher = new StreamMatcher();
+        matcher.processStream(List.of(
+                "Q: \"loading failed\"",
+                "Q: loading failed",
+                "Q: \"error error\"",
+                "Q: \"a b a\" snapshot",
+                "L: Loading failed again",
+                "L: failed loading",
+                "L: loading snapshot failed",
+                "L: error ERROR",
+                "L: error x error",
+                "L: a b a b a snapshot",
+                "L: a b b a snapshot"));
+        assertEquals(List.of(
+                "M: Loading failed again; Q=1,2",
+                "M: failed loading; Q=2",
+                "M: loading snapshot failed; Q=2",
+                "M: error ERROR; Q=3",
+                "M: a b a b a snapshot; Q=4"), matcher.getOutput().subList(4, 9));
+        assertEquals(9, matcher.getOutput().size());
+    }
+
+    @Test
+    void testPhrasesMatchReference() {
+        Random random = new Random(3);
+        String[] vocabulary = {"a", "b", "c", "d"};
+        StreamMatcher matcher = new StreamMatcher();
+        List<List<List<String>>> queries = new ArrayList<>();
+        List<String> stream = new ArrayList<>();
+        for (int q = 0; q < 200; q++) {
+            List<List<String>> phrases = new ArrayList<>();
+            StringBuilder text = new StringBuilder("Q:");
+            for (int p = 0, n = 1 + random.nextInt(2); p < n; p++) {
+                List<String> phrase = new ArrayList<>();
+                for (int w = 0, len = 1 + random.nextInt(3); w < len; w++) {
+                    phrase.add(vocabulary[random.nextInt(vocabulary.length)]);
+                }
+                phrases.add(phrase);
+                text.append(" \"").append(String.join(" ", phrase)).append('"');
+            }
+            queries.add(phrases);
+            stream.add(text.toString());
+        }
+        matcher.processStream(stream);
+
+        List<String> lines = new ArrayList<>();
+        for (int l = 0; l < 300; l++) {
+            StringBuilder line = new StringBuilder();
+            for (int w = 0, n = 1 + random.nextInt(8); w < n; w++) {
+                if (w > 0) line.append(' ');
+                line.append(random.nextInt(6) == 0 ? "z" : vocabulary[random.nextInt(vocabulary.length)]);
+            }
+            lines.add(line.toString());
+        }
+        StreamMatcher.MatchBatch batch = matcher.matchBatch(lines);
+        int m = 0;
+        for (int l = 0; l < lines.size(); l++) {
+            List<String> words = List.of(lines.get(l).split(" "));
+            List<Integer> expected = new ArrayList<>();
+            for (int q = 0; q < queries.size(); q++) {
+                boolean all = true;
+                for (List<String> phrase : queries.get(q)) {
+                    all &= Collections.indexOfSubList(words, phrase) >= 0;
+                }
+                if (all) expected.add(q + 1);
+            }
+            if (expected.isEmpty()) continue;
+            assertEquals(l, batch.lineIndex(m));
+            assertEquals(expected.toString(), Arrays.toString(batch.queryIds(m)));
+            m++;
+        }
+        assertEquals(m, batch.size());
+    }
+}
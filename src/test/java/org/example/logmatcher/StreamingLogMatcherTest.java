@@ -0,0 +1,387 @@
+package org.example.logmatcher;
+
+import org.example.logmatcher.StreamingLogMatcher.Query;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingLogMatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testForwardAndBackfillMatches() {
+        List<String> matches = new ArrayList<>();
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(q.type() + " " + l));
+
+        matcher.acceptLog("2025-04-19 INFO Service started");
+        matcher.acceptLog("2025-04-19 ERROR Disk failure on /dev/sda");
+        matcher.acceptQuery(Query.parse("ERROR: disk"));
+        matcher.acceptLog("2025-04-19 ERROR disk full");
+        matcher.acceptLog("2025-04-19 WARN High memory usage");
+
+        assertEquals(List.of(
+                "ERROR 2025-04-19 ERROR Disk failure on /dev/sda",
+                "ERROR 2025-04-19 ERROR disk full"), matches);
+    }
+
+    @Test
+    void testForwardMatchesDeliveredInQueryOrder() {
+        List<String> matches = new ArrayList<>();
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(q.type()));
+        for (int i = 0; i < 300; i++) {
+            matcher.acceptQuery(Query.parse("Q" + i + ": word" + i));
+        }
+        matcher.acceptQuery(Query.parse("BOTH: disk DISK error"));
+        matcher.acceptQuery(Query.parse("DISK: disk"));
+        matcher.acceptQuery(Query.parse("NONE: disk missing"));
+
+        matcher.acceptLog("Disk_0 disk ERROR disk word7 word250");
+        assertEquals(List.of("Q7", "Q250", "BOTH", "DISK"), matches);
+    }
+
+    @Test
+    void testRetentionByCountEvictsWholeSegments() {
+        List<String> matches = new ArrayList<>();
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(l),
+                RetentionPolicy.maxLogs(100), 10, Clock.systemUTC());
+
+        for (int i = 0; i < 1_000; i++) {
+            matcher.acceptLog("line " + i + " disk");
+        }
+        assertTrue(matcher.retainedLogCount() <= 100);
+        assertEquals(10, matcher.segmentCount());
+
+        // Backfill only sees retained segments
+        matcher.acceptQuery(Query.parse("ERROR: disk"));
+        assertEquals(100, matches.size());
+        assertEquals("line 900 disk", matches.get(0));
+    }
+
+    @Test
+    void testRetentionByAgeAndBytes() {
+        MutableClock clock = new MutableClock();
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> { },
+                RetentionPolicy.maxAge(Duration.ofMinutes(5)).withMaxBytes(64 * 1024), 50, clock);
+
+        for (int i = 0; i < 200; i++) {
+            matcher.acceptLog("old line " + i);
+        }
+        clock.advance(Duration.ofMinutes(10));
+        matcher.acceptLog("fresh line");
+        assertEquals(1, matcher.retainedLogCount());
+
+        // Heap stays flat under an endless stream
+        for (int i = 0; i < 50_000; i++) {
+            matcher.acceptLog("steady stream line number " + i + " with some words");
+            assertTrue(matcher.retainedBytes() <= 64 * 1024 + 16 * 1024);
+        }
+    }
+
+    @Test
+    void testVocabularyStaysBoundedUnderRetention() {
+        List<String> matches = new ArrayList<>();
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(l),
+                RetentionPolicy.maxLogs(1_000), 100, Clock.systemUTC());
+        matcher.acceptQuery(Query.parse("SLOW: took 999ms"));
+
+        // Every line has words of its own; only the query's words are interned matcher-wide
+        for (int i = 0; i < 50_000; i++) {
+            matcher.acceptLog("request id=" + i + " took " + (i % 1_000) + "ms");
+        }
+        assertTrue(matcher.retainedLogCount() <= 1_000);
+        assertEquals(2, matcher.termCount());
+        assertEquals(50, matches.size());
+
+        // Evicted words are gone, retained ones still backfill
+        matches.clear();
+        matcher.acceptQuery(Query.parse("ID: 49999"));
+        matcher.acceptQuery(Query.parse("ID: 100"));
+        assertEquals(List.of("request id=49999 took 999ms"), matches);
+    }
+
+    @Test
+    void testCancelQueryStopsForwardMatchesAndReusesId() {
+        List<String> matches = new ArrayList<>();
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(q.type() + " " + l));
+
+        int disk = matcher.acceptQuery(Query.parse("DISK: disk"));
+        int error = matcher.acceptQuery(Query.parse("ERROR: error"));
+        assertEquals(0, disk);
+        assertEquals(1, error);
+        matcher.acceptLog("disk error");
+        assertTrue(matcher.cancelQuery(disk));
+        assertFalse(matcher.cancelQuery(disk));
+        matcher.acceptLog("disk error again");
+
+        // Compaction ran on the previous log, so the id is free again
+        assertEquals(disk, matcher.acceptQuery(Query.parse("MEM: memory")));
+        matcher.acceptLog("disk memory");
+        assertEquals(2, matcher.liveQueryCount());
+        assertEquals(List.of(
+                "DISK disk error",
+                "ERROR disk error",
+                "ERROR disk error again",
+                "MEM disk memory"), matches);
+    }
+
+    @Test
+    void testCancelledQueryWordsLeaveTheDictionary() {
+        List<String> matches = new ArrayList<>();
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(q.type() + " " + l));
+        int disk = matcher.acceptQuery(Query.parse("DISK: disk full"));
+        matcher.acceptQuery(Query.parse("FULL: full NOT tmp"));
+
+        // Subscribe/cancel churn with fresh words keeps only the live queries' words
+        for (int i = 0; i < 1_000; i++) {
+            int id = matcher.acceptQuery(Query.parse("USER: user" + i + " NOT bot" + i));
+            matcher.acceptLog("user" + i + " logged in");
+            assertTrue(matcher.cancelQuery(id));
+        }
+        assertEquals(3, matcher.termCount());
+        assertTrue(matcher.cancelQuery(disk));
+        assertEquals(2, matcher.termCount());
+
+        // Freed term ids are reused without reviving the cancelled queries
+        matches.clear();
+        matcher.acceptQuery(Query.parse("NEW: quota"));
+        matcher.acceptLog("disk full quota");
+        matcher.acceptLog("user5 logged in");
+        assertEquals(List.of("FULL disk full quota", "NEW disk full quota"), matches);
+    }
+
+    @Test
+    void testSegmentStoreSurvivesRestart() throws IOException {
+        List<String> matches = new ArrayList<>();
+        try (StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(l),
+                RetentionPolicy.unbounded(), 100, Clock.systemUTC(), SegmentStore.open(tempDir))) {
+            for (int i = 0; i < 1_050; i++) {
+                matcher.acceptLog("line " + i + (i % 3 == 0 ? " Disk error" : " ok") + " caf\u00e9");
+            }
+            // Full segments live on disk; only their handles stay on heap
+            assertTrue(matcher.retainedBytes() < 20 * 1024);
+            matcher.acceptQuery(Query.parse("ERROR: disk error"));
+            assertEquals(350, matches.size());
+        }
+
+        matches.clear();
+        StreamingLogMatcher restarted = new StreamingLogMatcher((q, l) -> matches.add(l),
+                RetentionPolicy.unbounded(), SegmentStore.open(tempDir));
+        assertEquals(1_050, restarted.retainedLogCount());
+        assertEquals(11, restarted.segmentCount());
+        restarted.acceptLog("line 1050 disk error");
+        restarted.acceptQuery(Query.parse("ERROR: disk error"));
+        assertEquals(351, matches.size());
+        assertEquals("line 0 Disk error caf\u00e9", matches.get(0));
+        assertEquals("line 1050 disk error", matches.get(350));
+
+        matches.clear();
+        restarted.acceptQuery(Query.parse("CAFE: caf"));
+        restarted.acceptQuery(Query.parse("ALL:"));
+        assertEquals(1_050 + 1_051, matches.size());
+    }
+
+    @Test
+    void testRetentionDeletesStoredSegments() throws IOException {
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> { },
+                RetentionPolicy.maxLogs(200), 100, Clock.systemUTC(), SegmentStore.open(tempDir));
+        for (int i = 0; i < 1_000; i++) {
+            matcher.acceptLog("line " + i);
+        }
+        try (var files = Files.list(tempDir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void testBooleanQueriesForwardAndBackfill() {
+        List<String> logs = List.of(
+                "ERROR disk full on sda",
+                "ERROR disk quota exceeded for tmp",
+                "WARN disk slow",
+                "ERROR network timeout",
+                "INFO debug heartbeat",
+                "INFO service started");
+        List<String> raw = List.of(
+                "A: error disk",
+                "B: disk AND (full OR quota) NOT tmp",
+                "C: timeout OR slow",
+                "D: NOT debug NOT error",
+                "E: (error OR warn) AND NOT (quota OR network)",
+                "F: NOT NOT heartbeat");
+        List<String> expected = List.of(
+                "A 0", "B 0", "E 0",
+                "A 1",
+                "C 2", "D 2", "E 2",
+                "C 3",
+                "F 4",
+                "D 5");
+
+        // Half the logs before the queries (backfill), half after (forward)
+        for (int split : new int[]{0, 3, 6}) {
+            List<String> matches = new ArrayList<>();
+            StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(q.type() + " " + logs.indexOf(l)),
+                    RetentionPolicy.unbounded(), 2, Clock.systemUTC());
+            for (int i = 0; i < split; i++) matcher.acceptLog(logs.get(i));
+            for (String q : raw) matcher.acceptQuery(Query.parse(q));
+            for (int i = split; i < logs.size(); i++) matcher.acceptLog(logs.get(i));
+
+            // Backfill is delivered per query, so compare in (log, query) order
+            matches.sort(Comparator.comparing((String m) -> m.charAt(2)).thenComparing(m -> m.charAt(0)));
+            assertEquals(expected, matches, "split " + split);
+        }
+    }
+
+    @Test
+    void testLevelRoutingForwardAndBackfill() {
+        List<String> logs = List.of(
+                "2025-04-19 12:00:01 ERROR disk full",
+                "2025-04-19 12:00:02 warn disk slow",
+                "2025-04-19 12:00:03 INFO disk ok",
+                "disk without level",
+                "2025-04-19 12:00:04 ERROR network down");
+        for (int split : new int[]{0, 5}) {
+            List<String> matches = new ArrayList<>();
+            StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(q.type() + " " + logs.indexOf(l)));
+            matcher.setLevelExtractor(LevelExtractor.standard());
+            for (int i = 0; i < split; i++) matcher.acceptLog(logs.get(i));
+            matcher.acceptQuery(Query.parse("ERROR: disk"));
+            matcher.acceptQuery(Query.parse("Warn: disk"));
+            matcher.acceptQuery(Query.parse("*: disk"));
+            matcher.acceptQuery(Query.parse("ERROR: NOT disk"));
+            for (int i = split; i < logs.size(); i++) matcher.acceptLog(logs.get(i));
+
+            matches.sort(Comparator.comparing((String m) -> m.charAt(m.length() - 1)).thenComparing(m -> m));
+            assertEquals(List.of("* 0", "ERROR 0", "* 1", "Warn 1", "* 2", "* 3", "ERROR 4"), matches, "split " + split);
+            // Level terms of typed backfills stay out of the query dictionary
+            assertEquals(1, matcher.termCount());
+        }
+    }
+
+    @Test
+    void testLevelRoutingSkipsOtherTypes() {
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> { });
+        matcher.setLevelExtractor(LevelExtractor.standard());
+        MetricsRecorder metrics = new MetricsRecorder();
+        matcher.setMetrics(metrics);
+        for (String type : List.of("ERROR", "WARN", "INFO", "DEBUG", "TRACE")) {
+            matcher.acceptQuery(Query.parse(type + ": disk"));
+        }
+        matcher.acceptLog("INFO disk ok");
+        matcher.acceptLog("DEBUG disk ok");
+        assertEquals(2, metrics.snapshot().candidates().sum());
+        assertEquals(2, metrics.snapshot().queryHits());
+        assertThrows(IllegalStateException.class, () -> matcher.setLevelExtractor(LevelExtractor.standard()));
+    }
+
+    @Test
+    void testPagedBackfillNewestFirst() throws IOException {
+        List<String> matches = new ArrayList<>();
+        StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(l),
+                RetentionPolicy.unbounded(), 100, Clock.systemUTC(), SegmentStore.open(tempDir));
+        for (int i = 0; i < 350; i++) {
+            matcher.acceptLog("line " + i + (i % 3 == 0 ? " disk error" : " disk ok"));
+        }
+        Query query = Query.parse("ERROR: disk error");
+        assertEquals(117, matcher.countBackfill(query));
+        long estimate = matcher.estimateBackfill(query);
+        assertTrue(estimate >= 117 && estimate <= 350, "estimate " + estimate);
+        assertEquals(350, matcher.estimateBackfill(Query.parse("ALL: disk")));
+        // Counting and estimating intern nothing
+        assertEquals(0, matcher.termCount());
+
+        StreamingLogMatcher.BackfillPage page = matcher.acceptQuery(query, 50);
+        matcher.acceptLog("line 350 disk error");
+        List<Long> ids = new ArrayList<>();
+        while (true) {
+            for (StreamingLogMatcher.Hit hit : page.hits()) {
+                assertEquals("line " + hit.logId() + " disk error", hit.logLine());
+                ids.add(hit.logId());
+            }
+            if (!page.hasMore()) break;
+            assertEquals(50, page.hits().size());
+            page = matcher.backfill(page.next(), 50);
+        }
+        // Newest first, every past hit once; the later log arrives as a forward match only
+        assertEquals(117, ids.size());
+        assertEquals(348, (long) ids.get(0));
+        assertEquals(0, (long) ids.get(116));
+        for (int i = 1; i < ids.size(); i++) {
+            assertEquals(ids.get(i - 1) - 3, (long) ids.get(i));
+        }
+        assertEquals(List.of("line 350 disk error"), matches);
+
+        StreamingLogMatcher.BackfillPage none = matcher.acceptQuery(Query.parse("X: disk"), 0);
+        assertTrue(none.hits().isEmpty());
+        assertEquals(10, matcher.backfill(none.next(), 10).hits().size());
+    }
+
+    @Test
+    void testQueryWordsFoldIndependentOfLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            List<String> matches = new ArrayList<>();
+            StreamingLogMatcher matcher = new StreamingLogMatcher((q, l) -> matches.add(l));
+            Query q = Query.parse("ERROR: FAILED");
+            assertEquals(Set.of("failed"), q.keywords());
+            matcher.acceptQuery(q);
+            matcher.acceptLog("upload FAILED");
+            assertEquals(List.of("upload FAILED"), matches);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    void testQueryParseSyntax() {
+        Query q = Query.parse("ERROR: Disk (full OR quota) NOT tmp");
+        assertEquals("ERROR", q.type());
+        // Negated words are not keywords
+        assertEquals(Set.of("disk", "full", "quota"), q.keywords());
+        assertEquals(Set.of("disk", "full", "quota", "tmp"), q.expression().words());
+        assertThrows(IllegalArgumentException.class, () -> new Query("T", Set.of("tmp"), q.expression()));
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("X: (disk"));
+        assertThrows(IllegalArgumentException.class, () -> Query.parse("X: disk OR"));
+        assertEquals(new Query("T", Set.of("a")).expression(), Query.parse("T: a").expression());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2025-04-19T00:00:00Z");
+
+        void advance(Duration d) {
+            now = now.plus(d);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.logmatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenizerTest {
+    private static final String ALPHABET = "aB_9 ,\t-\u00C9\u00E9\uD83D\uDE42x";
+
+    @Test
+    void testMatchesSplitting() {
+        Random random = new Random(11);
+        Tokenizer tags = Tokenizer.delimited(',');
+        TokenBuffer buffer = new TokenBuffer();
+        for (int round = 0; round < 2_000; round++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0, n = random.nextInt(20); i < n; i++) {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            String line = sb.toString();
+
+            List<String> words = new ArrayList<>();
+            for (String w : line.split("\\W+")) if (!w.isEmpty()) words.add(lower(w));
+            assertEquals(words, tokens(Tokenizer.WORDS, line, buffer), line);
+
+            List<String> fields = new ArrayList<>();
+            for (String w : line.split("\\s+")) if (!w.isEmpty()) fields.add(lower(w));
+            assertEquals(fields, tokens(Tokenizer.WHITESPACE, line, buffer), line);
+
+            List<String> tagList = new ArrayList<>();
+            for (String w : line.split(",")) if (!w.trim().isEmpty()) tagList.add(lower(w.trim()));
+            assertEquals(tagList, tokens(tags, line, buffer), line);
+        }
+    }
+
+    @Test
+    void testOffsetsForCharsAndBytes() {
+        String line = "  Caf\u00E9, Na\u00EFve ,\uD83D\uDE42 ,";
+        Tokenizer tags = Tokenizer.delimited(',');
+        TokenBuffer buffer = new TokenBuffer();
+        tags.tokenize(line, buffer);
+        assertEquals(3, buffer.size());
+        assertEquals("caf\u00E9", buffer.token(0));
+        assertEquals("Caf\u00E9", line.substring(buffer.start(0), buffer.end(0)));
+        assertEquals("Na\u00EFve", line.substring(buffer.start(1), buffer.end(1)));
+
+        byte[] utf8 = ("xx" + line).getBytes(StandardCharsets.UTF_8);
+        buffer.clear();
+        tags.tokenize(utf8, 2, utf8.length, buffer);
+        assertEquals(3, buffer.size());
+        assertEquals("na\u00EFve", buffer.token(1));
+        assertEquals("Na\u00EFve", new String(utf8, buffer.start(1), buffer.end(1) - buffer.start(1), StandardCharsets.UTF_8));
+        assertEquals("\uD83D\uDE42", new String(utf8, buffer.start(2), buffer.end(2) - buffer.start(2), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testMalformedBytesBecomeReplacementChars() {
+        byte[] bytes = {'a', (byte) 0xC3, 'b', ' ', (byte) 0xFF, 'c', (byte) 0xE2, (byte) 0x82};
+        TokenBuffer buffer = new TokenBuffer();
+        Tokenizer.WHITESPACE.tokenize(bytes, 0, bytes.length, buffer);
+        assertEquals("a\uFFFDb", buffer.token(0));
+        assertEquals("\uFFFDc\uFFFD", buffer.token(1));
+    }
+
+    @Test
+    void testTokenizingAllocatesNothingAfterWarmUp() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String line = "2025-04-19 ERROR Disk failure on /dev/sda after 30s, retrying";
+        byte[] utf8 = line.getBytes(StandardCharsets.UTF_8);
+        TokenBuffer buffer = new TokenBuffer();
+        for (int i = 0; i < 1_000; i++) {
+            buffer.clear();
+            Tokenizer.WORDS.tokenize(line, buffer);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 10_000; i++) {
+            buffer.clear();
+            Tokenizer.WORDS.tokenize(line, buffer);
+            buffer.clear();
+            Tokenizer.WHITESPACE.tokenize(utf8, 0, utf8.length, buffer);
+        }
+        assertTrue(threads.getCurrentThreadAllocatedBytes() - before < 1024);
+    }
+
+    private static List<String> tokens(Tokenizer tokenizer, String line, TokenBuffer buffer) {
+        buffer.clear();
+        tokenizer.tokenize(line, buffer);
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            String token = buffer.token(i);
+            assertEquals(token, new String(buffer.chars(), buffer.charOffset(i), buffer.length(i)));
+            assertEquals(token, lower(line.substring(buffer.start(i), buffer.end(i))));
+            out.add(token);
+        }
+        return out;
+    }
+
+    private static String lower(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) chars[i] = Character.toLowerCase(chars[i]);
+        return new String(chars);
+    }
+}